@@ -0,0 +1,18 @@
+package com.sp.demo.api.request;
+
+import java.util.List;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class BulkGenerateDraftsRequest {
+
+  private UUID userId;
+  private List<UUID> emailIds;    // gmail_email ids; empty = every unread inbox email without a draft
+  private String tone;
+  private Integer concurrency;    // parallel LLM calls, capped by draft.bulk.workers
+  private Integer limit;          // cap for the unread selection, at most draft.bulk.max-emails
+  private boolean regenerate;
+}
@@ -13,5 +13,6 @@ public class GenerateDraftRequest {
   private String threadId;
   private String emailContent;
   private String tone;
+  private boolean regenerate;   // ignore a cached reply for the same email and tone
 }
 
@@ -0,0 +1,18 @@
+package com.sp.demo.api.request;
+
+import java.util.List;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class GenerateDraftVariantsRequest {
+
+  private UUID userId;
+  private String gmailMessageId;
+  private String threadId;
+  private String emailContent;
+  private List<String> tones;   // e.g. formal, friendly, concise; at most draft.variants.max-tones
+  private boolean regenerate;   // ignore cached replies for the same email and tones
+}
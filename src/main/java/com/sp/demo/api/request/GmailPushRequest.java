@@ -0,0 +1,24 @@
+package com.sp.demo.api.request;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Pub/Sub push envelope. {@code message.data} is Base64 JSON:
+ * {@code {"emailAddress": "...", "historyId": "..."}}.
+ */
+@Getter
+@Setter
+public class GmailPushRequest {
+
+  private PushMessage message;
+  private String subscription;
+
+  @Getter
+  @Setter
+  public static class PushMessage {
+    private String data;
+    private String messageId;
+    private String publishTime;
+  }
+}
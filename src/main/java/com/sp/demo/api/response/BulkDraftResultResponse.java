@@ -0,0 +1,19 @@
+package com.sp.demo.api.response;
+
+import java.util.UUID;
+import lombok.Builder;
+import lombok.Getter;
+
+@Builder
+@Getter
+public class BulkDraftResultResponse {
+
+  private UUID emailId;
+  private String gmailMessageId;
+  private UUID draftId;
+  private String status;
+  private String error;
+  private String provider;
+  private String route;
+  private Long latencyMs;
+}
@@ -0,0 +1,14 @@
+package com.sp.demo.api.response;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Builder
+@Getter
+public class BulkDraftSummaryResponse {
+  private int requested;
+  private int generated;
+  private int failed;
+  private long elapsedMs;
+  private long slowestMs;
+}
@@ -14,5 +14,6 @@ public class DraftResponse {
   private String tone;
   private String status;
   private Instant createdAt;
+  private UUID variantGroupId;   // shared by tone variants generated together
 }
 
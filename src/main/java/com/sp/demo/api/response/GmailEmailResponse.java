@@ -1,11 +1,13 @@
 package com.sp.demo.api.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.time.Instant;
 import lombok.Builder;
 import lombok.Getter;
 
 @Builder
 @Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class GmailEmailResponse {
   private String gmailMessageId;
   private String threadId;
@@ -0,0 +1,14 @@
+package com.sp.demo.api.response;
+
+import lombok.Builder;
+import lombok.Getter;
+
+@Builder
+@Getter
+public class GmailSyncResponse {
+  private String mode;
+  private int added;
+  private int updated;
+  private int removed;
+  private String historyId;
+}
@@ -0,0 +1,31 @@
+package com.sp.demo.config;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.v2.ApacheHttpTransport;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class GmailConfig {
+
+  /**
+   * One pooled, keep-alive transport shared by every Gmail client in the process,
+   * so TLS sessions and connections are reused instead of rebuilt on each call.
+   */
+  @Bean(destroyMethod = "shutdown")
+  public HttpTransport gmailHttpTransport(
+      @Value("${gmail.http.max-connections:100}") int maxConnections,
+      @Value("${gmail.http.max-connections-per-route:20}") int maxConnectionsPerRoute,
+      @Value("${gmail.http.idle-timeout-seconds:30}") long idleTimeoutSeconds) {
+
+    return new ApacheHttpTransport(
+        ApacheHttpTransport.newDefaultHttpClientBuilder()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnectionsPerRoute)
+            .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+            .build()
+    );
+  }
+}
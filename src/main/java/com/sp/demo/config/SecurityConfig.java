@@ -1,17 +1,27 @@
 package com.sp.demo.config;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.authority.mapping.GrantedAuthoritiesMapper;
 import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.security.oauth2.client.web.DefaultOAuth2AuthorizationRequestResolver;
 import org.springframework.security.oauth2.client.web.OAuth2AuthorizationRequestResolver;
 import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.user.OAuth2UserAuthority;
 import org.springframework.security.web.SecurityFilterChain;
 
 @Configuration
@@ -20,7 +30,8 @@ public class SecurityConfig {
 
   @Bean
   public SecurityFilterChain filterChain(HttpSecurity http,
-      ClientRegistrationRepository clientRegistrationRepository) throws Exception {
+      ClientRegistrationRepository clientRegistrationRepository,
+      @Value("${admin.emails:}") List<String> adminEmails) throws Exception {
 
     OAuth2AuthorizationRequestResolver authorizationRequestResolver =
         authorizationRequestResolver(clientRegistrationRepository);
@@ -29,23 +40,51 @@ public class SecurityConfig {
         .csrf(AbstractHttpConfigurer::disable)
         .authorizeHttpRequests(auth -> auth
             .requestMatchers("/auth/**", "/test/**").permitAll()
+            .requestMatchers("/api/gmail/push").permitAll() // Pub/Sub push; authenticated by PubSubPushVerifier
             .requestMatchers(
                 "/swagger-ui.html",
                 "/swagger-ui/**",
                 "/v3/api-docs/**"
             ).permitAll()
+            .requestMatchers("/api/admin/**").hasRole("ADMIN")
             .anyRequest().authenticated() // TODO: Secure with JWT or session before production
         )
         .oauth2Login(oauth -> oauth
             .authorizationEndpoint(authorization -> authorization
                 .authorizationRequestResolver(authorizationRequestResolver)
             )
+            .userInfoEndpoint(userInfo -> userInfo
+                .userAuthoritiesMapper(adminAuthorities(adminEmails))
+            )
             .defaultSuccessUrl("/auth/success", true)
         );
 
     return http.build();
   }
 
+  /**
+   * Adds ROLE_ADMIN for the Google accounts listed in {@code admin.emails}. With the list empty,
+   * nobody can reach {@code /api/admin/**}.
+   */
+  static GrantedAuthoritiesMapper adminAuthorities(List<String> adminEmails) {
+    Set<String> admins = adminEmails.stream()
+        .map(e -> e.trim().toLowerCase(Locale.ROOT))
+        .filter(e -> !e.isEmpty())
+        .collect(Collectors.toSet());
+
+    return authorities -> {
+      Set<GrantedAuthority> mapped = new HashSet<>(authorities);
+      for (GrantedAuthority authority : authorities) {
+        if (authority instanceof OAuth2UserAuthority user
+            && user.getAttributes().get("email") instanceof String email
+            && admins.contains(email.toLowerCase(Locale.ROOT))) {
+          mapped.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
+        }
+      }
+      return mapped;
+    };
+  }
+
   private OAuth2AuthorizationRequestResolver authorizationRequestResolver(
       ClientRegistrationRepository clientRegistrationRepository) {
 
@@ -0,0 +1,36 @@
+package com.sp.demo.controller;
+
+import com.sp.demo.service.TokenReencryptionService;
+import com.sp.demo.service.TokenReencryptionService.ReencryptionProgress;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/admin")
+public class AdminController {
+
+  private final TokenReencryptionService tokenReencryptionService;
+
+  /**
+   * Starts re-encrypting stored refresh tokens under {@code token.crypto.active-key-id}.
+   */
+  @PostMapping("/token-keys/reencrypt")
+  public ReencryptionProgress startReencryption() {
+    return tokenReencryptionService.start();
+  }
+
+  @GetMapping("/token-keys/reencrypt")
+  public ReencryptionProgress reencryptionProgress() {
+    return tokenReencryptionService.progress();
+  }
+
+  @DeleteMapping("/token-keys/reencrypt")
+  public ReencryptionProgress cancelReencryption() {
+    return tokenReencryptionService.cancel();
+  }
+}
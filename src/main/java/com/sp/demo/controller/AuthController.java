@@ -3,6 +3,7 @@ package com.sp.demo.controller;
 import com.sp.demo.domain.entity.OAuthToken;
 import com.sp.demo.domain.entity.User;
 import com.sp.demo.domain.enums.AuthProvider;
+import com.sp.demo.external.google.AccessTokenCache;
 import com.sp.demo.repository.OAuthTokenRepository;
 import com.sp.demo.repository.UserRepository;
 import com.sp.demo.service.TokenCryptoService;
@@ -26,6 +27,7 @@ public class AuthController {
   private final UserRepository userRepository;
   private final OAuth2AuthorizedClientService clientService;
   private final TokenCryptoService tokenCryptoService;
+  private final AccessTokenCache accessTokenCache;
 
   @GetMapping("/success")
   public String success(OAuth2AuthenticationToken authentication) {
@@ -65,6 +67,7 @@ public class AuthController {
         .build();
 
     tokenRepository.save(token);
+    accessTokenCache.evict(user.getId());
 
     return "OAuth login successful for " + email;
   }
@@ -81,6 +84,7 @@ public class AuthController {
           token.setRevokedAt(Instant.now());
           tokenRepository.save(token);
         });
+    accessTokenCache.evict(user.getId());
 
     return "Logged out";
   }
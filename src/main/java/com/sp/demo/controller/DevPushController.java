@@ -0,0 +1,39 @@
+package com.sp.demo.controller;
+
+import com.sp.demo.service.GmailPushIngestionService;
+import java.math.BigInteger;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Local stand-in for the Pub/Sub publisher. Only registered with the {@code dev} profile, and
+ * like the rest of {@code /api/**} it needs a login.
+ */
+@Profile("dev")
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/dev/gmail")
+public class DevPushController {
+
+  private final GmailPushIngestionService gmailPushIngestionService;
+
+  /**
+   * Queues {@code count} push notifications for {@code emailAddress}, as if Pub/Sub had
+   * delivered them to {@code /api/gmail/push}.
+   */
+  @PostMapping("/push")
+  public String publishPush(
+      @RequestParam String emailAddress,
+      @RequestParam(required = false) Long historyId,
+      @RequestParam(defaultValue = "1") int count) {
+
+    for (int i = 0; i < count; i++) {
+      gmailPushIngestionService.accept(emailAddress, historyId == null ? null : BigInteger.valueOf(historyId + i));
+    }
+    return "QUEUED " + count;
+  }
+}
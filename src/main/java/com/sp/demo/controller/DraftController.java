@@ -1,19 +1,35 @@
 package com.sp.demo.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sp.demo.api.request.BulkGenerateDraftsRequest;
 import com.sp.demo.api.request.GenerateDraftRequest;
+import com.sp.demo.api.request.GenerateDraftVariantsRequest;
 import com.sp.demo.api.request.EditDraftRequest;
+import com.sp.demo.api.response.BulkDraftSummaryResponse;
 import com.sp.demo.api.response.DraftResponse;
 import com.sp.demo.domain.entity.Draft;
 import com.sp.demo.domain.entity.User;
 import com.sp.demo.domain.enums.DraftStatus;
+import com.sp.demo.external.gmail.GmailRateLimitedException;
 import com.sp.demo.repository.UserRepository;
+import com.sp.demo.service.workflow.BulkDraftService;
+import com.sp.demo.service.workflow.DraftGenerationRejectedException;
+import com.sp.demo.service.workflow.DraftStreamListener;
 import com.sp.demo.service.workflow.DraftWorkflowService;
+import java.io.IOException;
+import java.net.URI;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -21,6 +37,8 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/drafts")
@@ -29,6 +47,11 @@ public class DraftController {
 
   private final DraftWorkflowService draftWorkflowService;
   private final UserRepository userRepository;
+  private final BulkDraftService bulkDraftService;
+  private final ObjectMapper objectMapper;
+
+  @Value("${draft.generation.stream-timeout-ms:120000}")
+  private long streamTimeoutMs;
 
   @GetMapping("/users")
   public List<User> getAllUsers() {
@@ -61,6 +84,7 @@ public class DraftController {
             .tone(d.getTone())
             .status(d.getStatus().name())
             .createdAt(d.getCreatedAt())
+            .variantGroupId(d.getVariantGroupId())
             .build())
         .toList();
   }
@@ -74,9 +98,29 @@ public class DraftController {
         .tone(d.getTone())
         .status(d.getStatus().name())
         .createdAt(d.getCreatedAt())
+        .variantGroupId(d.getVariantGroupId())
         .build();
   }
 
+  /**
+   * The tone variants generated together with this draft, itself included. Switching tone in
+   * the UI reads these instead of generating again.
+   */
+  @GetMapping("/{draftId}/variants")
+  public List<DraftResponse> listVariants(@PathVariable UUID draftId) {
+    return draftWorkflowService.listVariants(draftId)
+        .stream()
+        .map(d -> DraftResponse.builder()
+            .id(d.getId())
+            .draftText(d.getDraftText())
+            .tone(d.getTone())
+            .status(d.getStatus().name())
+            .createdAt(d.getCreatedAt())
+            .variantGroupId(d.getVariantGroupId())
+            .build())
+        .toList();
+  }
+
   @PostMapping("/{draftId}/edit")
   public DraftResponse editDraft(
       @PathVariable UUID draftId,
@@ -98,25 +142,197 @@ public class DraftController {
     return ResponseEntity.ok().build();
   }
 
+  /**
+   * Creates a GENERATING draft and returns 202 right away; the reply is written by a background
+   * worker and the draft moves to PENDING (or GENERATION_FAILED). Poll {@code GET /api/drafts/{id}}.
+   * With {@code async=false} the request waits for the reply and returns 200 with the text.
+   */
   @PostMapping("/generate")
-  public DraftResponse generateDraft(
-      @RequestBody GenerateDraftRequest request) {
+  public ResponseEntity<DraftResponse> generateDraft(
+      @RequestBody GenerateDraftRequest request,
+      @RequestParam(defaultValue = "true") boolean async) {
 
-    Draft draft = draftWorkflowService.generateDraft(
-        request.getUserId(),
-        request.getGmailMessageId(),
-        request.getThreadId(),
-        request.getEmailContent(),
-        request.getTone()
-    );
+    Draft draft;
+    if (async) {
+      draft = draftWorkflowService.generateDraftAsync(
+          request.getUserId(),
+          request.getGmailMessageId(),
+          request.getThreadId(),
+          request.getEmailContent(),
+          request.getTone(),
+          request.isRegenerate()
+      );
+    } else {
+      draft = draftWorkflowService.generateDraft(
+          request.getUserId(),
+          request.getGmailMessageId(),
+          request.getThreadId(),
+          request.getEmailContent(),
+          request.getTone(),
+          request.isRegenerate()
+      );
+    }
 
-    return DraftResponse.builder()
+    DraftResponse body = DraftResponse.builder()
         .id(draft.getId())
         .draftText(draft.getDraftText())
         .tone(draft.getTone())
         .status(draft.getStatus().name())
         .createdAt(draft.getCreatedAt())
         .build();
+
+    if (!async) {
+      return ResponseEntity.ok(body);
+    }
+    return ResponseEntity.accepted()
+        .location(URI.create("/api/drafts/" + draft.getId()))
+        .body(body);
+  }
+
+  /**
+   * Generates one sibling draft per tone from a single provider call. Like {@code /generate},
+   * returns 202 with the GENERATING drafts (poll {@code GET /api/drafts/{id}/variants}), or with
+   * {@code async=false} waits and returns 200 with the texts.
+   */
+  @PostMapping("/generate/variants")
+  public ResponseEntity<List<DraftResponse>> generateVariants(
+      @RequestBody GenerateDraftVariantsRequest request,
+      @RequestParam(defaultValue = "true") boolean async) {
+
+    List<Draft> drafts;
+    if (async) {
+      drafts = draftWorkflowService.generateVariantsAsync(
+          request.getUserId(),
+          request.getGmailMessageId(),
+          request.getThreadId(),
+          request.getEmailContent(),
+          request.getTones(),
+          request.isRegenerate()
+      );
+    } else {
+      drafts = draftWorkflowService.generateVariants(
+          request.getUserId(),
+          request.getGmailMessageId(),
+          request.getThreadId(),
+          request.getEmailContent(),
+          request.getTones(),
+          request.isRegenerate()
+      );
+    }
+
+    List<DraftResponse> body = drafts.stream()
+        .map(d -> DraftResponse.builder()
+            .id(d.getId())
+            .draftText(d.getDraftText())
+            .tone(d.getTone())
+            .status(d.getStatus().name())
+            .createdAt(d.getCreatedAt())
+            .variantGroupId(d.getVariantGroupId())
+            .build())
+        .toList();
+
+    if (!async) {
+      return ResponseEntity.ok(body);
+    }
+    return ResponseEntity.accepted()
+        .location(URI.create("/api/drafts/" + drafts.get(0).getId() + "/variants"))
+        .body(body);
+  }
+
+  /**
+   * Streams the reply as it is generated: a {@code draft} event with the new id, {@code token}
+   * events with partial text as {@code {"text": ...}}, then {@code done} or {@code error}. The
+   * draft is stored once, at completion; a client that disconnects early does not stop the
+   * generation.
+   */
+  @PostMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter generateDraftStream(@RequestBody GenerateDraftRequest request) {
+    SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+
+    draftWorkflowService.generateDraftStreaming(
+        request.getUserId(),
+        request.getGmailMessageId(),
+        request.getThreadId(),
+        request.getEmailContent(),
+        request.getTone(),
+        request.isRegenerate(),
+        new DraftStreamListener() {
+          private volatile boolean clientGone;
+
+          @Override
+          public void onStarted(Draft draft) {
+            send(SseEmitter.event().name("draft").data(Map.of("id", draft.getId())));
+          }
+
+          @Override
+          public void onToken(String text) {
+            // as JSON: SSE clients strip one leading space from a raw data line, and tokens often start with one
+            send(SseEmitter.event().name("token").data(Map.of("text", text)));
+          }
+
+          @Override
+          public void onCompleted(Draft draft) {
+            send(SseEmitter.event().name("done")
+                .data(Map.of("id", draft.getId(), "status", draft.getStatus().name())));
+            emitter.complete();
+          }
+
+          @Override
+          public void onFailed(UUID draftId, Exception error) {
+            send(SseEmitter.event().name("error")
+                .data(Map.of("id", draftId, "error", String.valueOf(error.getMessage()))));
+            emitter.complete();
+          }
+
+          private void send(SseEmitter.SseEventBuilder event) {
+            if (clientGone) {
+              return;
+            }
+            try {
+              emitter.send(event);
+            } catch (IOException | IllegalStateException e) {
+              // keep generating; the result is still stored on the draft
+              clientGone = true;
+            }
+          }
+        });
+
+    return emitter;
+  }
+
+  /**
+   * Generates drafts for the given {@code gmail_email} ids, or for every unread inbox email
+   * without a draft, and streams one NDJSON line per email as it is stored, then a summary line.
+   * One failed email does not stop the others.
+   */
+  @PostMapping(value = "/generate/bulk", produces = "application/x-ndjson")
+  public ResponseEntity<StreamingResponseBody> generateDrafts(@RequestBody BulkGenerateDraftsRequest request) {
+    StreamingResponseBody body = out -> {
+      boolean[] clientGone = {false};
+      BulkDraftSummaryResponse summary = bulkDraftService.generate(request, result -> {
+        if (clientGone[0]) {
+          return;
+        }
+        try {
+          // writeValueAsBytes: writeValue(OutputStream) would close the response stream
+          out.write(objectMapper.writeValueAsBytes(result));
+          out.write('\n');
+          out.flush();
+        } catch (IOException e) {
+          // the drafts are stored either way
+          clientGone[0] = true;
+        }
+      });
+      if (!clientGone[0]) {
+        out.write(objectMapper.writeValueAsBytes(summary));
+        out.write('\n');
+        out.flush();
+      }
+    };
+
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType("application/x-ndjson"))
+        .body(body);
   }
 
   @PostMapping("/{draftId}/approve")
@@ -137,6 +353,26 @@ public class DraftController {
     return ResponseEntity.ok().build();
   }
 
+  @ExceptionHandler(DraftGenerationRejectedException.class)
+  public ResponseEntity<Map<String, String>> generationRejected(DraftGenerationRejectedException e) {
+    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+        .header(HttpHeaders.RETRY_AFTER, "5")
+        .body(Map.of("error", e.getMessage()));
+  }
+
+  @ExceptionHandler(IllegalArgumentException.class)
+  public ResponseEntity<Map<String, String>> badRequest(IllegalArgumentException e) {
+    return ResponseEntity.badRequest()
+        .body(Map.of("error", String.valueOf(e.getMessage())));
+  }
+
+  @ExceptionHandler(GmailRateLimitedException.class)
+  public ResponseEntity<Map<String, String>> rateLimited(GmailRateLimitedException e) {
+    long seconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(seconds))
+        .body(Map.of("error", e.getMessage()));
+  }
 
 }
 
@@ -1,22 +1,34 @@
 package com.sp.demo.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.services.gmail.model.WatchResponse;
 import com.sp.demo.api.response.GmailEmailResponse;
-import com.sp.demo.domain.entity.GmailEmail;
+import com.sp.demo.api.response.GmailSyncResponse;
 import com.sp.demo.domain.entity.OAuthToken;
 import com.sp.demo.domain.entity.User;
-import com.sp.demo.domain.enums.AuthProvider;
 import com.sp.demo.external.gmail.GmailClient;
+import com.sp.demo.external.google.TokenRefreshService;
 import com.sp.demo.repository.GmailEmailRepository;
-import com.sp.demo.repository.OAuthTokenRepository;
 import com.sp.demo.repository.UserRepository;
-import java.time.Instant;
+import com.sp.demo.service.GmailEmailCacheService;
+import com.sp.demo.service.GmailMessageBodyService;
+import com.sp.demo.service.GmailSyncService;
+import com.sp.demo.service.UnreadSnapshotCache;
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequiredArgsConstructor
@@ -24,42 +36,36 @@ import org.springframework.web.bind.annotation.RestController;
 public class GmailController {
 
   private final GmailClient gmailClient;
-  private final OAuthTokenRepository tokenRepository;
+  private final TokenRefreshService tokenRefreshService;
   private final UserRepository userRepository;
   private final GmailEmailRepository gmailEmailRepository;
+  private final GmailEmailCacheService gmailEmailCacheService;
+  private final GmailSyncService gmailSyncService;
+  private final GmailMessageBodyService gmailMessageBodyService;
+  private final UnreadSnapshotCache unreadSnapshotCache;
+  private final ObjectMapper objectMapper;
+
+  @Value("${gmail.push.topic:}")
+  private String pushTopic;
+
+  @Value("${gmail.unread.stream-max-limit:10000}")
+  private int streamMaxLimit;
 
   @GetMapping("/unread")
   public List<GmailEmailResponse> fetchUnread(
       OAuth2AuthenticationToken authentication,
       @RequestParam(defaultValue = "10") long maxResults) throws Exception {
 
-    String email = authentication.getPrincipal().getAttribute("email");
-    User user = userRepository.findByEmail(email)
-        .orElseThrow(() -> new RuntimeException("User not found"));
+    User user = currentUser(authentication);
 
-    OAuthToken token = tokenRepository
-        .findByUserIdAndProvider(user.getId(), AuthProvider.GOOGLE)
-        .orElseThrow(() -> new RuntimeException("OAuth token not found"));
-
-    var messages = gmailClient.fetchUnread(token, maxResults);
-
-    Instant now = Instant.now();
-
-    for (var m : messages) {
-      gmailEmailRepository.findByUserIdAndGmailMessageId(user.getId(), m.gmailMessageId())
-          .orElseGet(() -> gmailEmailRepository.save(
-              GmailEmail.builder()
-                  .user(user)
-                  .gmailMessageId(m.gmailMessageId())
-                  .threadId(m.threadId())
-                  .fromAddress(m.from())
-                  .subject(m.subject())
-                  .snippet(m.snippet())
-                  .labelIds(new String[]{"INBOX", "UNREAD"})
-                  .receivedAt(now)
-                  .build()
-          ));
-    }
+    // tabs and pollers asking at the same time share one Gmail fetch
+    var messages = unreadSnapshotCache.get(user.getId(), maxResults, () -> {
+      OAuthToken token = tokenRefreshService.validTokenFor(user.getId());
+
+      var fetched = gmailClient.fetchUnread(token, maxResults);
+      gmailEmailCacheService.upsert(user, fetched);
+      return fetched;
+    });
 
     return messages.stream()
         .map(m -> GmailEmailResponse.builder()
@@ -69,8 +75,157 @@ public class GmailController {
             .subject(m.subject())
             .snippet(m.snippet())
             .bodyText(m.bodyText())
-            .receivedAt(now)
+            .receivedAt(m.receivedAt())
+            .build())
+        .toList();
+  }
+
+  /**
+   * Streams the whole unread inbox as NDJSON, one {@link GmailEmailResponse} per line.
+   * Pages are fetched with {@code nextPageToken} and written as they arrive, so only
+   * one page is held in memory. {@code limit} must be positive and is capped at
+   * {@code gmail.unread.stream-max-limit}.
+   */
+  @GetMapping(value = "/unread/stream", produces = "application/x-ndjson")
+  public ResponseEntity<StreamingResponseBody> streamUnread(
+      OAuth2AuthenticationToken authentication,
+      @RequestParam(defaultValue = "5000") int limit,
+      @RequestParam(defaultValue = "100") long pageSize) {
+
+    if (limit <= 0) {
+      return ResponseEntity.badRequest().build();
+    }
+    int effectiveLimit = Math.min(limit, streamMaxLimit);
+
+    User user = currentUser(authentication);
+
+    OAuthToken token = tokenRefreshService.validTokenFor(user.getId());
+
+    long effectivePageSize = Math.max(1, Math.min(pageSize, 500));
+
+    StreamingResponseBody body = out -> {
+      int written = 0;
+      String pageToken = null;
+      try {
+        do {
+          GmailClient.UnreadPage page = gmailClient.fetchUnreadPage(
+              token, pageToken, Math.min(effectivePageSize, effectiveLimit - written));
+
+          gmailEmailCacheService.upsert(user, page.messages());
+
+          for (var m : page.messages()) {
+            // writeValueAsBytes: writeValue(OutputStream) would close the response stream
+            out.write(objectMapper.writeValueAsBytes(GmailEmailResponse.builder()
+                .gmailMessageId(m.gmailMessageId())
+                .threadId(m.threadId())
+                .from(m.from())
+                .subject(m.subject())
+                .snippet(m.snippet())
+                .receivedAt(m.receivedAt())
+                .build()));
+            out.write('\n');
+            written++;
+          }
+          out.flush();
+
+          pageToken = page.nextPageToken();
+        } while (pageToken != null && written < effectiveLimit);
+      } catch (IOException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException("Unread stream failed after " + written + " messages", e);
+      }
+    };
+
+    return ResponseEntity.ok()
+        .contentType(MediaType.parseMediaType("application/x-ndjson"))
+        .body(body);
+  }
+
+  /**
+   * Brings the {@code gmail_email} cache up to date using the stored history cursor.
+   */
+  @PostMapping("/sync")
+  public GmailSyncResponse sync(OAuth2AuthenticationToken authentication) throws Exception {
+    User user = currentUser(authentication);
+
+    GmailSyncService.SyncResult result = gmailSyncService.sync(user.getId());
+
+    return GmailSyncResponse.builder()
+        .mode(result.mode().name())
+        .added(result.added())
+        .updated(result.updated())
+        .removed(result.removed())
+        .historyId(result.historyId() == null ? null : result.historyId().toString())
+        .build();
+  }
+
+  /**
+   * Unread inbox served from the cache after an incremental sync. No message bodies.
+   */
+  @GetMapping("/inbox")
+  public List<GmailEmailResponse> inbox(
+      OAuth2AuthenticationToken authentication,
+      @RequestParam(defaultValue = "50") int maxResults) throws Exception {
+
+    User user = currentUser(authentication);
+
+    gmailSyncService.sync(user.getId());
+
+    return gmailEmailRepository.findUnreadInbox(user.getId(), maxResults)
+        .stream()
+        .map(e -> GmailEmailResponse.builder()
+            .gmailMessageId(e.getGmailMessageId())
+            .threadId(e.getThreadId())
+            .from(e.getFromAddress())
+            .subject(e.getSubject())
+            .snippet(e.getSnippet())
+            .receivedAt(e.getReceivedAt())
             .build())
         .toList();
   }
+
+  /**
+   * Body of a single message, downloaded from Gmail on first use and cached afterwards.
+   */
+  @GetMapping("/messages/{gmailMessageId}/body")
+  public GmailEmailResponse messageBody(
+      OAuth2AuthenticationToken authentication,
+      @PathVariable String gmailMessageId) throws Exception {
+
+    User user = currentUser(authentication);
+
+    String bodyText = gmailMessageBodyService.loadBody(user.getId(), gmailMessageId);
+
+    return GmailEmailResponse.builder()
+        .gmailMessageId(gmailMessageId)
+        .bodyText(bodyText)
+        .build();
+  }
+
+  /**
+   * Registers a Gmail watch so new inbox mail arrives through {@code /api/gmail/push}.
+   */
+  @PostMapping("/watch")
+  public Map<String, String> watch(OAuth2AuthenticationToken authentication) throws Exception {
+    if (pushTopic == null || pushTopic.isBlank()) {
+      throw new IllegalStateException("gmail.push.topic is not configured");
+    }
+
+    User user = currentUser(authentication);
+
+    OAuthToken token = tokenRefreshService.validTokenFor(user.getId());
+
+    WatchResponse response = gmailClient.watchInbox(token, pushTopic);
+
+    return Map.of(
+        "historyId", String.valueOf(response.getHistoryId()),
+        "expiration", String.valueOf(response.getExpiration()));
+  }
+
+  private User currentUser(OAuth2AuthenticationToken authentication) {
+    String email = authentication.getPrincipal().getAttribute("email");
+    return userRepository.findByEmail(email)
+        .orElseThrow(() -> new RuntimeException("User not found"));
+  }
 }
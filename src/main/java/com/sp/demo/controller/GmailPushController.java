@@ -0,0 +1,68 @@
+package com.sp.demo.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sp.demo.api.request.GmailPushRequest;
+import com.sp.demo.external.google.PubSubPushVerifier;
+import com.sp.demo.service.GmailPushIngestionService;
+import java.math.BigInteger;
+import java.util.Base64;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Receiver for Gmail watch notifications delivered by a Pub/Sub push subscription.
+ * Notifications are only queued here; the sync runs later on the ingestion workers.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/gmail/push")
+public class GmailPushController {
+
+  private final GmailPushIngestionService ingestionService;
+  private final ObjectMapper objectMapper;
+
+  private final PubSubPushVerifier pushVerifier;
+
+  @PostMapping
+  public ResponseEntity<Void> receive(
+      @RequestParam(required = false) String token,
+      @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+      @RequestBody GmailPushRequest request) {
+
+    // fails closed: with no token and no OIDC audience configured, nothing is accepted
+    if (!pushVerifier.verify(token, authorization)) {
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+    }
+
+    if (request.getMessage() == null || request.getMessage().getData() == null) {
+      return ResponseEntity.badRequest().build();
+    }
+
+    String emailAddress;
+    BigInteger historyId;
+    try {
+      JsonNode data = objectMapper.readTree(Base64.getDecoder().decode(request.getMessage().getData()));
+      emailAddress = data.path("emailAddress").asText(null);
+      historyId = data.hasNonNull("historyId") ? new BigInteger(data.get("historyId").asText()) : null;
+    } catch (Exception e) {
+      return ResponseEntity.badRequest().build();
+    }
+
+    if (emailAddress == null || emailAddress.isBlank()) {
+      return ResponseEntity.badRequest().build();
+    }
+
+    ingestionService.accept(emailAddress, historyId);
+
+    return ResponseEntity.noContent().build();
+  }
+}
@@ -0,0 +1,103 @@
+package com.sp.demo.controller;
+
+import com.sp.demo.external.gmail.GmailQuotaLimiter;
+import com.sp.demo.external.gmail.GmailQuotaLimiter.QuotaSnapshot;
+import com.sp.demo.external.gmail.GmailRetryExecutor;
+import com.sp.demo.external.gmail.GmailRetryExecutor.RetryStats;
+import com.sp.demo.external.google.AccessTokenCache;
+import com.sp.demo.external.http.OutboundHttpClients;
+import com.sp.demo.external.http.OutboundHttpClients.TargetStats;
+import com.sp.demo.service.AiServiceRouter;
+import com.sp.demo.service.AiServiceRouter.ProviderStats;
+import com.sp.demo.service.ReplyCache;
+import com.sp.demo.service.UnreadSnapshotCache;
+import com.sp.demo.service.compaction.PromptCompactor;
+import com.sp.demo.service.compaction.PromptCompactor.CompactionStats;
+import com.sp.demo.service.UnreadSnapshotCache.CacheStats;
+import com.sp.demo.service.workflow.DraftGenerationExecutor;
+import com.sp.demo.service.workflow.DraftGenerationExecutor.GenerationStats;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+  private final GmailQuotaLimiter gmailQuotaLimiter;
+  private final GmailRetryExecutor gmailRetryExecutor;
+  private final UnreadSnapshotCache unreadSnapshotCache;
+  private final AccessTokenCache accessTokenCache;
+  private final DraftGenerationExecutor draftGenerationExecutor;
+  private final ReplyCache replyCache;
+  private final PromptCompactor promptCompactor;
+  private final AiServiceRouter aiServiceRouter;
+  private final OutboundHttpClients outboundHttpClients;
+
+  /**
+   * Global Gmail quota bucket plus the {@code top} busiest user buckets.
+   */
+  @GetMapping("/gmail/quota")
+  public QuotaSnapshot gmailQuota(@RequestParam(defaultValue = "20") int top) {
+    return gmailQuotaLimiter.snapshot(top);
+  }
+
+  /**
+   * Gmail call failures by category, plus retries, token refreshes and calls that ran out of attempts.
+   */
+  @GetMapping("/gmail/errors")
+  public RetryStats gmailErrors() {
+    return gmailRetryExecutor.stats();
+  }
+
+  @GetMapping("/gmail/unread-cache")
+  public CacheStats unreadCache() {
+    return unreadSnapshotCache.stats();
+  }
+
+  @GetMapping("/tokens/cache")
+  public AccessTokenCache.CacheStats accessTokenCache() {
+    return accessTokenCache.stats();
+  }
+
+  @GetMapping("/drafts/generation")
+  public GenerationStats draftGeneration() {
+    return draftGenerationExecutor.stats();
+  }
+
+  /**
+   * AI reply cache hit rate and the provider latency the hits avoided.
+   */
+  @GetMapping("/ai/reply-cache")
+  public ReplyCache.CacheStats aiReplyCache() {
+    return replyCache.stats();
+  }
+
+  /**
+   * Estimated prompt tokens before and after compaction, and what each stage removed.
+   */
+  @GetMapping("/ai/compaction")
+  public CompactionStats aiCompaction() {
+    return promptCompactor.stats();
+  }
+
+  /**
+   * Per-provider latency percentiles, error rate, breaker state, hedges and failovers.
+   */
+  @GetMapping("/ai/providers")
+  public List<ProviderStats> aiProviders() {
+    return aiServiceRouter.stats();
+  }
+
+  /**
+   * Requests in flight per outbound target against its limit, waits and rejections.
+   */
+  @GetMapping("/http/outbound")
+  public List<TargetStats> outboundHttp() {
+    return outboundHttpClients.stats();
+  }
+}
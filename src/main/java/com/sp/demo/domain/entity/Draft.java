@@ -59,6 +59,27 @@ public class Draft {
   @Column(columnDefinition = "TEXT")
   private String lastError;
 
+  // reply envelope captured at approval time (see DraftWorkflowService.approveDraft)
+  private String replyTo;
+
+  @Column(columnDefinition = "TEXT")
+  private String replySubject;
+
+  @Column(columnDefinition = "TEXT")
+  private String replyInReplyTo;
+
+  @Column(columnDefinition = "TEXT")
+  private String replyReferences;
+
+  // which provider answered and how it was chosen (see AiServiceRouter)
+  private String aiProvider;
+  private String aiModel;
+  private String aiRoute;
+  private Long aiLatencyMs;
+
+  // sibling drafts generated together as tone variants (see DraftWorkflowService.generateVariants)
+  private UUID variantGroupId;
+
   @CreationTimestamp
   private Instant createdAt;
   @UpdateTimestamp
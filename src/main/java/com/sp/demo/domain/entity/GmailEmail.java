@@ -58,6 +58,18 @@ public class GmailEmail {
   @Column(columnDefinition = "TEXT[]")
   private String[] labelIds;
 
+  @Column(columnDefinition = "TEXT")
+  private String messageIdHeader;
+
+  @Column(columnDefinition = "TEXT")
+  private String referencesHeader;
+
+  // loaded on demand, see GmailMessageBodyService
+  @Column(columnDefinition = "TEXT")
+  private String bodyText;
+
+  private Instant bodyFetchedAt;
+
   private Instant receivedAt;
 
   @CreationTimestamp
@@ -2,6 +2,7 @@ package com.sp.demo.domain.enums;
 
 public enum DraftAction {
   GENERATED,
+  GENERATION_FAILED,
   EDITED,
   APPROVED,
   REJECTED,
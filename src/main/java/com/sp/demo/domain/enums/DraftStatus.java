@@ -1,6 +1,8 @@
 package com.sp.demo.domain.enums;
 
 public enum DraftStatus {
+  GENERATING,
+  GENERATION_FAILED,
   PENDING,
   EDITED,
   APPROVED,
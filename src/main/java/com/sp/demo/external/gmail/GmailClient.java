@@ -1,30 +1,36 @@
 package com.sp.demo.external.gmail;
 
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.HttpRequestInitializer;
-import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
 import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.History;
+import com.google.api.services.gmail.model.HistoryLabelAdded;
+import com.google.api.services.gmail.model.HistoryLabelRemoved;
+import com.google.api.services.gmail.model.HistoryMessageAdded;
+import com.google.api.services.gmail.model.HistoryMessageDeleted;
+import com.google.api.services.gmail.model.ListHistoryResponse;
+import com.google.api.services.gmail.model.ListMessagesResponse;
 import com.google.api.services.gmail.model.Message;
 import com.google.api.services.gmail.model.MessagePart;
-import com.google.api.services.gmail.model.MessagePartBody;
 import com.google.api.services.gmail.model.MessagePartHeader;
-import com.google.auth.http.HttpCredentialsAdapter;
-import com.google.auth.oauth2.AccessToken;
-import com.google.auth.oauth2.GoogleCredentials;
+import com.google.api.services.gmail.model.WatchRequest;
+import com.google.api.services.gmail.model.WatchResponse;
 import com.sp.demo.domain.entity.OAuthToken;
-import com.sp.demo.external.google.TokenRefreshService;
+import com.sp.demo.external.gmail.GmailMessageFetcher.MessageView;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Session;
 import jakarta.mail.internet.MimeMessage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.security.GeneralSecurityException;
-import java.util.Base64;
-import java.util.Date;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
@@ -32,7 +38,16 @@ import org.springframework.stereotype.Service;
 @RequiredArgsConstructor
 public class GmailClient {
 
-  private final TokenRefreshService tokenRefreshService;
+  // JavaMail sessions are thread-safe; no SMTP settings are needed to build messages
+  private static final Session MAIL_SESSION = Session.getInstance(new Properties());
+
+  private static final List<String> HISTORY_TYPES =
+      List.of("messageAdded", "messageDeleted", "labelAdded", "labelRemoved");
+
+  private final GmailRetryExecutor retryExecutor;
+  private final GmailServiceFactory gmailServiceFactory;
+  private final GmailMessageFetcher messageFetcher;
+  private final MimeTextExtractor mimeTextExtractor;
 
   public record GmailMessageDetails(
       String gmailMessageId,
@@ -42,151 +57,113 @@ public class GmailClient {
       String messageIdHeader,
       String referencesHeader,
       String bodyText,
-      String snippet
+      String snippet,
+      List<String> labelIds,
+      Instant receivedAt
   ) {
   }
 
-  public String sendEmail(OAuthToken token,
+  /**
+   * One page of unread inbox mail (metadata only) and the token for the next page, if any.
+   */
+  public record UnreadPage(List<GmailMessageDetails> messages, String nextPageToken) {
+  }
+
+  /**
+   * Everything needed to send a threaded reply, without looking at the original message again.
+   */
+  public record ReplyEnvelope(
       String to,
       String subject,
-      String body) throws Exception {
+      String inReplyTo,
+      String references,
+      String threadId
+  ) {
 
-    try {
-      return sendWithAccessToken(
-          token,
-          to,
-          subject,
-          body
-      );
-
-    } catch (Exception ex) {
-
-      // ⭐ refresh token
-      token = tokenRefreshService.refreshToken(token);
-
-      // ⭐ retry ONCE
-      return sendWithAccessToken(
-          token,
-          to,
-          subject,
-          body
-      );
+    public static ReplyEnvelope of(GmailMessageDetails original) {
+      String inReplyTo = original.messageIdHeader();
+      String refs = null;
+      if (inReplyTo != null && !inReplyTo.isBlank()) {
+        refs = original.referencesHeader();
+        if (refs == null || refs.isBlank()) {
+          refs = inReplyTo;
+        } else if (!refs.contains(inReplyTo)) {
+          refs = refs + " " + inReplyTo;
+        }
+      }
+
+      return new ReplyEnvelope(
+          extractEmailAddress(original.from()),
+          ensureRePrefix(original.subject()),
+          inReplyTo,
+          refs,
+          original.threadId());
     }
   }
 
-  public String sendReply(OAuthToken token, GmailMessageDetails original, String replyBody) throws Exception {
-    try {
-      return sendReplyWithAccessToken(token, original, replyBody);
-    } catch (Exception ex) {
-      token = tokenRefreshService.refreshToken(token);
-      return sendReplyWithAccessToken(token, original, replyBody);
-    }
+  /**
+   * Mailbox changes since a history cursor. {@code labelsById} holds the latest label set seen
+   * for every added or relabelled message.
+   */
+  public record GmailHistoryChanges(
+      BigInteger historyId,
+      Set<String> addedIds,
+      Set<String> deletedIds,
+      Map<String, List<String>> labelsById
+  ) {
   }
 
-  public List<GmailMessageDetails> fetchUnread(OAuthToken token, long maxResults) throws Exception {
-    try {
-      return fetchUnreadWithAccessToken(token, maxResults);
-    } catch (Exception ex) {
-      token = tokenRefreshService.refreshToken(token);
-      return fetchUnreadWithAccessToken(token, maxResults);
-    }
+  public String sendEmail(OAuthToken token,
+      String to,
+      String subject,
+      String body) throws Exception {
+    return retryExecutor.executeNonIdempotent(token, t -> sendWithAccessToken(t, to, subject, body));
   }
 
+  public String sendReply(OAuthToken token, ReplyEnvelope envelope, String replyBody) throws Exception {
+    return retryExecutor.executeNonIdempotent(token, t -> sendReplyWithAccessToken(t, envelope, replyBody));
+  }
 
-  private Gmail gmailService(OAuthToken token) {
-    GoogleCredentials credentials = GoogleCredentials.create(
-        new AccessToken(token.getAccessToken(), token.getExpiresAt() == null ? null : Date.from(token.getExpiresAt())));
+  /**
+   * Lists unread inbox mail with headers and snippet only; {@code bodyText} is null.
+   * Use {@link #getMessageDetails(OAuthToken, String)} to load a body.
+   */
+  public List<GmailMessageDetails> fetchUnread(OAuthToken token, long maxResults) throws Exception {
+    return retryExecutor.execute(token, t -> fetchUnreadWithAccessToken(t, maxResults));
+  }
 
-    HttpRequestInitializer requestInitializer = new HttpCredentialsAdapter(credentials);
 
-    try {
-      return new Gmail.Builder(
-          GoogleNetHttpTransport.newTrustedTransport(),
-          GsonFactory.getDefaultInstance(),
-          requestInitializer
-      ).setApplicationName("draftly-ai").build();
-    } catch (GeneralSecurityException | IOException e) {
-      throw new RuntimeException(e);
-    }
+  private Gmail gmailService(OAuthToken token) {
+    return gmailServiceFactory.forToken(token);
   }
 
   private String sendWithAccessToken(OAuthToken token,
       String to,
       String subject,
-      String body ){
-
-    Gmail gmail = gmailService(token);
-
-    Session session = Session.getInstance(new Properties());
-    MimeMessage mimeMessage = new MimeMessage(session);
+      String body) {
 
-    try {
-      mimeMessage.setRecipients(
-          jakarta.mail.Message.RecipientType.TO, to);
-    } catch (MessagingException e) {
-      throw new RuntimeException(e);
-    }
+    MimeMessage mimeMessage = new MimeMessage(MAIL_SESSION);
 
     try {
+      mimeMessage.setRecipients(jakarta.mail.Message.RecipientType.TO, to);
       mimeMessage.setSubject(subject);
-    } catch (MessagingException e) {
-      throw new RuntimeException(e);
-    }
-    try {
       mimeMessage.setText(body);
     } catch (MessagingException e) {
       throw new RuntimeException(e);
     }
 
-    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-    try {
-      mimeMessage.writeTo(buffer);
-    } catch (IOException | MessagingException e) {
-      throw new RuntimeException(e);
-    }
-
-    String encodedEmail =
-        Base64.getUrlEncoder().encodeToString(buffer.toByteArray());
-
-    Message message = new Message();
-    message.setRaw(encodedEmail);
-
-    Message sentMessage =
-        null;
-    try {
-      sentMessage = gmail.users()
-          .messages()
-          .send("me", message)
-          .execute();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-
-    return sentMessage.getId();
+    return send(gmailService(token), mimeMessage, null);
   }
 
-  private String sendReplyWithAccessToken(OAuthToken token, GmailMessageDetails original, String replyBody) {
-    Gmail gmail = gmailService(token);
-
-    Session session = Session.getInstance(new Properties());
-    MimeMessage mimeMessage = new MimeMessage(session);
-
-    String to = extractEmailAddress(original.from());
-    String subject = ensureRePrefix(original.subject());
+  private String sendReplyWithAccessToken(OAuthToken token, ReplyEnvelope envelope, String replyBody) {
+    MimeMessage mimeMessage = new MimeMessage(MAIL_SESSION);
 
     try {
-      mimeMessage.setRecipients(jakarta.mail.Message.RecipientType.TO, to);
-      mimeMessage.setSubject(subject);
-      if (original.messageIdHeader() != null && !original.messageIdHeader().isBlank()) {
-        mimeMessage.setHeader("In-Reply-To", original.messageIdHeader());
-
-        String refs = original.referencesHeader();
-        if (refs == null || refs.isBlank()) {
-          refs = original.messageIdHeader();
-        } else if (!refs.contains(original.messageIdHeader())) {
-          refs = refs + " " + original.messageIdHeader();
-        }
-        mimeMessage.setHeader("References", refs);
+      mimeMessage.setRecipients(jakarta.mail.Message.RecipientType.TO, envelope.to());
+      mimeMessage.setSubject(envelope.subject());
+      if (envelope.inReplyTo() != null && !envelope.inReplyTo().isBlank()) {
+        mimeMessage.setHeader("In-Reply-To", envelope.inReplyTo());
+        mimeMessage.setHeader("References", envelope.references());
       }
 
       mimeMessage.setText(replyBody);
@@ -194,27 +171,61 @@ public class GmailClient {
       throw new RuntimeException(e);
     }
 
-    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    return send(gmailService(token), mimeMessage, envelope.threadId());
+  }
+
+  /**
+   * Sends through the media-upload form of {@code messages.send}: the raw RFC 822 message is
+   * written directly into the request body, so there is no byte[] copy and no Base64 string.
+   */
+  private String send(Gmail gmail, MimeMessage mimeMessage, String threadId) {
+    Message metadata = new Message();
+    if (threadId != null && !threadId.isBlank()) {
+      metadata.setThreadId(threadId);
+    }
+
     try {
-      mimeMessage.writeTo(buffer);
-    } catch (IOException | MessagingException e) {
+      Gmail.Users.Messages.Send request = gmail.users()
+          .messages()
+          .send("me", metadata, new MimeMessageContent(mimeMessage));
+      request.getMediaHttpUploader().setDirectUploadEnabled(true);
+
+      return request.execute().getId();
+    } catch (IOException e) {
       throw new RuntimeException(e);
     }
+  }
 
-    String encodedEmail = Base64.getUrlEncoder().encodeToString(buffer.toByteArray());
+  /**
+   * Fetches a single page of unread inbox mail. Pass the previous page's
+   * {@code nextPageToken} to continue, or null for the first page.
+   */
+  public UnreadPage fetchUnreadPage(OAuthToken token, String pageToken, long pageSize) throws Exception {
+    return retryExecutor.execute(token, t -> fetchUnreadPageWithAccessToken(t, pageToken, pageSize));
+  }
 
-    Message message = new Message();
-    message.setRaw(encodedEmail);
-    if (original.threadId() != null && !original.threadId().isBlank()) {
-      message.setThreadId(original.threadId());
-    }
+  private UnreadPage fetchUnreadPageWithAccessToken(OAuthToken token, String pageToken, long pageSize) {
+    Gmail gmail = gmailService(token);
 
     try {
-      Message sentMessage = gmail.users()
+      ListMessagesResponse listResp = gmail.users()
           .messages()
-          .send("me", message)
+          .list("me")
+          .setQ("is:unread in:inbox")
+          .setMaxResults(pageSize)
+          .setPageToken(pageToken)
           .execute();
-      return sentMessage.getId();
+
+      List<Message> messages = listResp.getMessages();
+      if (messages == null || messages.isEmpty()) {
+        return new UnreadPage(List.of(), listResp.getNextPageToken());
+      }
+
+      List<String> ids = messages.stream().map(Message::getId).toList();
+      List<GmailMessageDetails> details = messageFetcher.fetch(gmail, ids, MessageView.METADATA).stream()
+          .map(m -> toDetails(m, false))
+          .toList();
+      return new UnreadPage(details, listResp.getNextPageToken());
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -236,106 +247,215 @@ public class GmailClient {
         return List.of();
       }
 
-      return messages.stream().map(m -> getMessageDetails(gmail, m.getId())).toList();
+      List<String> ids = messages.stream().map(Message::getId).toList();
+      return messageFetcher.fetch(gmail, ids, MessageView.METADATA).stream()
+          .map(m -> toDetails(m, false))
+          .toList();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
-  public GmailMessageDetails getMessageDetails(OAuthToken token, String gmailMessageId) throws Exception {
-    try {
-      return getMessageDetails(gmailService(token), gmailMessageId);
-    } catch (Exception ex) {
-      token = tokenRefreshService.refreshToken(token);
-      return getMessageDetails(gmailService(token), gmailMessageId);
-    }
+  /**
+   * Starts (or renews) Gmail push notifications for the inbox to the given Pub/Sub topic.
+   * Gmail expires a watch after 7 days, so this has to be called again before then.
+   */
+  public WatchResponse watchInbox(OAuthToken token, String topicName) throws Exception {
+    WatchRequest request = new WatchRequest()
+        .setTopicName(topicName)
+        .setLabelIds(List.of("INBOX"));
+    return retryExecutor.execute(token, t -> gmailService(t).users().watch("me", request).execute());
   }
 
-  private GmailMessageDetails getMessageDetails(Gmail gmail, String gmailMessageId) {
+  public BigInteger currentHistoryId(OAuthToken token) throws Exception {
+    return retryExecutor.execute(token, t -> gmailService(t).users().getProfile("me").execute().getHistoryId());
+  }
+
+  /**
+   * Lists mailbox changes after {@code startHistoryId}.
+   *
+   * @throws GmailHistoryExpiredException when Gmail no longer has history that far back
+   */
+  public GmailHistoryChanges listHistory(OAuthToken token, BigInteger startHistoryId) throws Exception {
+    return retryExecutor.execute(token, t -> listHistoryWithAccessToken(t, startHistoryId));
+  }
+
+  /**
+   * Lists up to {@code limit} message ids matching {@code query}, following page tokens.
+   */
+  public List<String> listMessageIds(OAuthToken token, String query, int limit) throws Exception {
+    return retryExecutor.execute(token, t -> listMessageIdsWithAccessToken(t, query, limit));
+  }
+
+  /**
+   * Fetches header-level details (no body) for the given ids, in order.
+   */
+  public List<GmailMessageDetails> getMessageMetadata(OAuthToken token, List<String> gmailMessageIds) throws Exception {
+    return retryExecutor.execute(token, t -> getMessageMetadataWithAccessToken(t, gmailMessageIds));
+  }
+
+  private GmailHistoryChanges listHistoryWithAccessToken(OAuthToken token, BigInteger startHistoryId) {
+    Gmail gmail = gmailService(token);
+
+    Set<String> added = new LinkedHashSet<>();
+    Set<String> deleted = new LinkedHashSet<>();
+    Map<String, List<String>> labelsById = new LinkedHashMap<>();
+    BigInteger historyId = startHistoryId;
+    String pageToken = null;
+
     try {
-      Message msg = gmail.users()
-          .messages()
-          .get("me", gmailMessageId)
-          .setFormat("full")
-          .execute();
+      do {
+        ListHistoryResponse page = gmail.users()
+            .history()
+            .list("me")
+            .setStartHistoryId(startHistoryId)
+            .setHistoryTypes(HISTORY_TYPES)
+            .setPageToken(pageToken)
+            .execute();
+
+        if (page.getHistory() != null) {
+          for (History h : page.getHistory()) {
+            if (h.getMessagesAdded() != null) {
+              for (HistoryMessageAdded a : h.getMessagesAdded()) {
+                added.add(a.getMessage().getId());
+                deleted.remove(a.getMessage().getId());
+                trackLabels(labelsById, a.getMessage());
+              }
+            }
+            if (h.getMessagesDeleted() != null) {
+              for (HistoryMessageDeleted d : h.getMessagesDeleted()) {
+                String id = d.getMessage().getId();
+                deleted.add(id);
+                added.remove(id);
+                labelsById.remove(id);
+              }
+            }
+            if (h.getLabelsAdded() != null) {
+              for (HistoryLabelAdded l : h.getLabelsAdded()) {
+                trackLabels(labelsById, l.getMessage());
+              }
+            }
+            if (h.getLabelsRemoved() != null) {
+              for (HistoryLabelRemoved l : h.getLabelsRemoved()) {
+                trackLabels(labelsById, l.getMessage());
+              }
+            }
+          }
+        }
 
-      String threadId = msg.getThreadId();
-      String snippet = msg.getSnippet();
-
-      MessagePart payload = msg.getPayload();
-      String from = header(payload, "From").orElse(null);
-      String subject = header(payload, "Subject").orElse("");
-      String messageIdHeader = header(payload, "Message-Id").orElseGet(() -> header(payload, "Message-ID").orElse(null));
-      String referencesHeader = header(payload, "References").orElse(null);
-
-      String bodyText = extractText(payload);
-
-      return new GmailMessageDetails(
-          gmailMessageId,
-          threadId,
-          from,
-          subject,
-          messageIdHeader,
-          referencesHeader,
-          bodyText,
-          snippet
-      );
+        if (page.getHistoryId() != null) {
+          historyId = page.getHistoryId();
+        }
+        pageToken = page.getNextPageToken();
+      } while (pageToken != null);
+    } catch (GoogleJsonResponseException e) {
+      if (e.getStatusCode() == 404) {
+        throw new GmailHistoryExpiredException(startHistoryId, e);
+      }
+      throw new RuntimeException(e);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+
+    return new GmailHistoryChanges(historyId, added, deleted, labelsById);
   }
 
-  private Optional<String> header(MessagePart payload, String name) {
-    if (payload == null || payload.getHeaders() == null) {
-      return Optional.empty();
+  private void trackLabels(Map<String, List<String>> labelsById, Message message) {
+    if (message == null || message.getId() == null) {
+      return;
     }
-
-    for (MessagePartHeader h : payload.getHeaders()) {
-      if (h.getName() != null && h.getName().equalsIgnoreCase(name)) {
-        return Optional.ofNullable(h.getValue());
-      }
-    }
-    return Optional.empty();
+    labelsById.put(message.getId(), message.getLabelIds() == null ? List.of() : message.getLabelIds());
   }
 
-  private String extractText(MessagePart part) {
-    if (part == null) {
-      return "";
-    }
+  private List<String> listMessageIdsWithAccessToken(OAuthToken token, String query, int limit) {
+    Gmail gmail = gmailService(token);
 
-    String mimeType = part.getMimeType();
-    if (mimeType != null && mimeType.toLowerCase(Locale.ROOT).startsWith("text/plain")) {
-      return decodeBody(part.getBody());
+    List<String> ids = new ArrayList<>();
+    String pageToken = null;
+    try {
+      do {
+        ListMessagesResponse page = gmail.users()
+            .messages()
+            .list("me")
+            .setQ(query)
+            .setMaxResults((long) Math.min(500, limit - ids.size()))
+            .setPageToken(pageToken)
+            .execute();
+
+        if (page.getMessages() != null) {
+          page.getMessages().forEach(m -> ids.add(m.getId()));
+        }
+        pageToken = page.getNextPageToken();
+      } while (pageToken != null && ids.size() < limit);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
+    return ids;
+  }
 
-    if (mimeType != null && mimeType.toLowerCase(Locale.ROOT).startsWith("text/html")) {
-      String html = decodeBody(part.getBody());
-      if (html != null && !html.isBlank()) {
-        return html.replaceAll("<[^>]*>", " ").replaceAll("\\s+", " ").trim();
-      }
+  private List<GmailMessageDetails> getMessageMetadataWithAccessToken(OAuthToken token, List<String> ids) {
+    try {
+      return messageFetcher.fetch(gmailService(token), ids, MessageView.METADATA).stream()
+          .map(m -> toDetails(m, false))
+          .toList();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
+  }
 
-    if (part.getParts() != null) {
-      for (MessagePart p : part.getParts()) {
-        String nested = extractText(p);
-        if (nested != null && !nested.isBlank()) {
-          return nested;
-        }
-      }
+  public GmailMessageDetails getMessageDetails(OAuthToken token, String gmailMessageId) throws Exception {
+    return retryExecutor.execute(token, t -> getMessageDetails(gmailService(t), gmailMessageId));
+  }
+
+  private GmailMessageDetails getMessageDetails(Gmail gmail, String gmailMessageId) {
+    try {
+      return toDetails(messageFetcher.get(gmail, gmailMessageId, MessageView.FULL), true);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
+  }
 
-    return "";
+  private GmailMessageDetails toDetails(Message msg, boolean withBody) {
+    String threadId = msg.getThreadId();
+    String snippet = msg.getSnippet();
+
+    MessagePart payload = msg.getPayload();
+    String from = header(payload, "From").orElse(null);
+    String subject = header(payload, "Subject").orElse("");
+    String messageIdHeader = header(payload, "Message-Id").orElseGet(() -> header(payload, "Message-ID").orElse(null));
+    String referencesHeader = header(payload, "References").orElse(null);
+
+    String bodyText = withBody ? mimeTextExtractor.extract(payload) : null;
+    Instant receivedAt = msg.getInternalDate() == null ? null : Instant.ofEpochMilli(msg.getInternalDate());
+
+    return new GmailMessageDetails(
+        msg.getId(),
+        threadId,
+        from,
+        subject,
+        messageIdHeader,
+        referencesHeader,
+        bodyText,
+        snippet,
+        msg.getLabelIds() == null ? List.of() : msg.getLabelIds(),
+        receivedAt
+    );
   }
 
-  private String decodeBody(MessagePartBody body) {
-    if (body == null || body.getData() == null) {
-      return "";
+  private Optional<String> header(MessagePart payload, String name) {
+    if (payload == null || payload.getHeaders() == null) {
+      return Optional.empty();
     }
-    byte[] decoded = Base64.getUrlDecoder().decode(body.getData());
-    return new String(decoded);
+
+    for (MessagePartHeader h : payload.getHeaders()) {
+      if (h.getName() != null && h.getName().equalsIgnoreCase(name)) {
+        return Optional.ofNullable(h.getValue());
+      }
+    }
+    return Optional.empty();
   }
 
-  private String extractEmailAddress(String fromHeader) {
+  private static String extractEmailAddress(String fromHeader) {
     if (fromHeader == null) {
       return "";
     }
@@ -347,7 +467,7 @@ public class GmailClient {
     return fromHeader.trim();
   }
 
-  private String ensureRePrefix(String subject) {
+  private static String ensureRePrefix(String subject) {
     if (subject == null) {
       return "Re:";
     }
@@ -0,0 +1,15 @@
+package com.sp.demo.external.gmail;
+
+/**
+ * How a failed Gmail call should be handled.
+ */
+public enum GmailErrorCategory {
+  /** 401: refresh the access token and try again. */
+  AUTH_EXPIRED,
+  /** 429, or 403 with a rate-limit reason: let the quota limiter pace the retry. */
+  RATE_LIMITED,
+  /** 5xx, 408 and network errors: back off and try again. */
+  TRANSIENT,
+  /** Anything else (400, 403, 404, bad input): retrying will not help. */
+  PERMANENT
+}
@@ -0,0 +1,61 @@
+package com.sp.demo.external.gmail;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Maps exceptions from the Gmail client library to a {@link GmailErrorCategory}.
+ */
+public final class GmailErrorClassifier {
+
+  private static final Set<String> RATE_LIMIT_REASONS = Set.of("rateLimitExceeded", "userRateLimitExceeded");
+
+  private GmailErrorClassifier() {
+  }
+
+  public static GmailErrorCategory classify(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof GmailRateLimitedException) {
+        return GmailErrorCategory.RATE_LIMITED;
+      }
+      if (t instanceof GmailHistoryExpiredException) {
+        return GmailErrorCategory.PERMANENT;
+      }
+      if (t instanceof GoogleJsonResponseException g) {
+        return byStatus(g.getStatusCode(), g.getDetails());
+      }
+      if (t instanceof HttpResponseException h) {
+        return byStatus(h.getStatusCode(), null);
+      }
+      if (t instanceof IOException) {
+        // socket timeouts, resets, refused connections: the request never got a response
+        return GmailErrorCategory.TRANSIENT;
+      }
+    }
+    return GmailErrorCategory.PERMANENT;
+  }
+
+  public static boolean isRateLimited(Throwable e) {
+    return classify(e) == GmailErrorCategory.RATE_LIMITED;
+  }
+
+  private static GmailErrorCategory byStatus(int status, GoogleJsonError details) {
+    if (status == 401) {
+      return GmailErrorCategory.AUTH_EXPIRED;
+    }
+    if (status == 429) {
+      return GmailErrorCategory.RATE_LIMITED;
+    }
+    if (status == 403 && details != null && details.getErrors() != null
+        && details.getErrors().stream().anyMatch(err -> RATE_LIMIT_REASONS.contains(err.getReason()))) {
+      return GmailErrorCategory.RATE_LIMITED;
+    }
+    if (status == 408 || status >= 500) {
+      return GmailErrorCategory.TRANSIENT;
+    }
+    return GmailErrorCategory.PERMANENT;
+  }
+}
@@ -0,0 +1,13 @@
+package com.sp.demo.external.gmail;
+
+import java.math.BigInteger;
+
+/**
+ * Gmail no longer keeps history starting at the stored cursor; a full resync is needed.
+ */
+public class GmailHistoryExpiredException extends RuntimeException {
+
+  public GmailHistoryExpiredException(BigInteger startHistoryId, Throwable cause) {
+    super("Gmail history expired for startHistoryId " + startHistoryId, cause);
+  }
+}
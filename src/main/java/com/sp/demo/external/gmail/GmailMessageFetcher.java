@@ -0,0 +1,173 @@
+package com.sp.demo.external.gmail;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.Message;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fetches many messages by id. Results always come back in the order of the ids passed in.
+ *
+ * <ul>
+ *   <li>{@code batch}: groups {@code messages.get} calls into Gmail HTTP batch requests.</li>
+ *   <li>{@code parallel}: one request per message, at most {@code gmail.fetch.concurrency} at a time.</li>
+ *   <li>{@code sequential}: one request after another (old behaviour).</li>
+ * </ul>
+ */
+@Component
+public class GmailMessageFetcher {
+
+  public enum FetchMode {
+    BATCH,
+    PARALLEL,
+    SEQUENTIAL
+  }
+
+  /**
+   * How much of each message to download.
+   */
+  public enum MessageView {
+    /** Whole MIME tree, needed to read the body. */
+    FULL,
+    /** Threading headers, labels and snippet only, trimmed with a field mask. */
+    METADATA
+  }
+
+  private static final List<String> METADATA_HEADERS =
+      List.of("From", "Subject", "Message-Id", "References", "In-Reply-To");
+  private static final String METADATA_FIELDS = "id,threadId,labelIds,snippet,internalDate,payload/headers";
+
+  private final ThreadPoolTaskExecutor executor;
+  private final FetchMode mode;
+  private final int batchSize;
+
+  public GmailMessageFetcher(
+      @Value("${gmail.fetch.mode:batch}") String mode,
+      @Value("${gmail.fetch.batch-size:50}") int batchSize,
+      @Value("${gmail.fetch.concurrency:8}") int concurrency) {
+    this.executor = new ThreadPoolTaskExecutor();
+    this.executor.setCorePoolSize(concurrency);
+    this.executor.setMaxPoolSize(concurrency);
+    this.executor.setThreadNamePrefix("gmail-fetch-");
+    this.executor.initialize();
+    this.mode = FetchMode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+    this.batchSize = Math.max(1, Math.min(batchSize, 100)); // Gmail rejects batches over 100
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  public List<Message> fetch(Gmail gmail, List<String> ids, MessageView view) throws IOException {
+    if (ids == null || ids.isEmpty()) {
+      return List.of();
+    }
+    if (ids.size() == 1) {
+      return List.of(get(gmail, ids.get(0), view));
+    }
+
+    return switch (mode) {
+      case BATCH -> fetchBatched(gmail, ids, view);
+      case PARALLEL -> fetchParallel(gmail, ids, view);
+      case SEQUENTIAL -> fetchSequential(gmail, ids, view);
+    };
+  }
+
+  public Message get(Gmail gmail, String id, MessageView view) throws IOException {
+    return request(gmail, id, view).execute();
+  }
+
+  private Gmail.Users.Messages.Get request(Gmail gmail, String id, MessageView view) throws IOException {
+    Gmail.Users.Messages.Get get = gmail.users().messages().get("me", id);
+    if (view == MessageView.METADATA) {
+      return get.setFormat("metadata")
+          .setMetadataHeaders(METADATA_HEADERS)
+          .setFields(METADATA_FIELDS);
+    }
+    return get.setFormat("full");
+  }
+
+  private List<Message> fetchSequential(Gmail gmail, List<String> ids, MessageView view) throws IOException {
+    List<Message> result = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      result.add(get(gmail, id, view));
+    }
+    return result;
+  }
+
+  private List<Message> fetchBatched(Gmail gmail, List<String> ids, MessageView view) throws IOException {
+    Message[] results = new Message[ids.size()];
+    IOException[] failure = new IOException[1];
+
+    for (int from = 0; from < ids.size(); from += batchSize) {
+      int to = Math.min(from + batchSize, ids.size());
+      BatchRequest batch = gmail.batch();
+
+      for (int i = from; i < to; i++) {
+        final int slot = i;
+        request(gmail, ids.get(i), view)
+            .queue(batch, new JsonBatchCallback<Message>() {
+              @Override
+              public void onSuccess(Message message, HttpHeaders responseHeaders) {
+                results[slot] = message;
+              }
+
+              @Override
+              public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                if (failure[0] == null) {
+                  failure[0] = new GoogleJsonResponseException(
+                      new HttpResponseException.Builder(error.getCode(), error.getMessage(), responseHeaders),
+                      error);
+                }
+              }
+            });
+      }
+
+      batch.execute();
+      if (failure[0] != null) {
+        throw failure[0];
+      }
+    }
+
+    return Arrays.asList(results);
+  }
+
+  private List<Message> fetchParallel(Gmail gmail, List<String> ids, MessageView view) throws IOException {
+    List<CompletableFuture<Message>> futures = ids.stream()
+        .map(id -> CompletableFuture.supplyAsync(() -> {
+          try {
+            return get(gmail, id, view);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }, executor))
+        .toList();
+
+    try {
+      return futures.stream().map(CompletableFuture::join).toList();
+    } catch (CompletionException e) {
+      futures.forEach(f -> f.cancel(true));
+      if (e.getCause() instanceof UncheckedIOException io) {
+        throw io.getCause();
+      }
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.sp.demo.external.gmail;
+
+import com.google.api.client.http.HttpRequest;
+
+/**
+ * Gmail API operations with their documented quota-unit cost.
+ */
+public enum GmailOperation {
+  MESSAGES_LIST(5),
+  MESSAGES_GET(5),
+  MESSAGES_SEND(100),
+  MESSAGES_MODIFY(5),
+  MESSAGES_BATCH_MODIFY(50),
+  HISTORY_LIST(2),
+  GET_PROFILE(1),
+  WATCH(100),
+  // the batch envelope itself is free; each part is charged on its own
+  BATCH(0),
+  OTHER(5);
+
+  private final int quotaUnits;
+
+  GmailOperation(int quotaUnits) {
+    this.quotaUnits = quotaUnits;
+  }
+
+  public int quotaUnits() {
+    return quotaUnits;
+  }
+
+  public static GmailOperation of(HttpRequest request) {
+    String path = request.getUrl().getRawPath();
+    if (path == null) {
+      return OTHER;
+    }
+    if (path.startsWith("/batch")) {
+      return BATCH;
+    }
+    if (path.endsWith("/messages/send")) {
+      return MESSAGES_SEND;
+    }
+    if (path.endsWith("/messages/batchModify")) {
+      return MESSAGES_BATCH_MODIFY;
+    }
+    if (path.endsWith("/modify")) {
+      return MESSAGES_MODIFY;
+    }
+    if (path.endsWith("/messages")) {
+      return MESSAGES_LIST;
+    }
+    if (path.contains("/messages/")) {
+      return MESSAGES_GET;
+    }
+    if (path.endsWith("/history")) {
+      return HISTORY_LIST;
+    }
+    if (path.endsWith("/profile")) {
+      return GET_PROFILE;
+    }
+    if (path.endsWith("/watch")) {
+      return WATCH;
+    }
+    return OTHER;
+  }
+}
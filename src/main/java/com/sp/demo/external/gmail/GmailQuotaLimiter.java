@@ -0,0 +1,187 @@
+package com.sp.demo.external.gmail;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token buckets in Gmail quota units, one per user and one for the whole project.
+ *
+ * <p>Each call reserves its {@link GmailOperation} cost from both buckets and waits until the
+ * reservation is covered. When Gmail answers 429, the user's bucket is paused for the
+ * {@code Retry-After} delay plus random jitter. Callers that would wait longer than
+ * {@code gmail.quota.max-wait-ms} get a {@link GmailRateLimitedException} instead.
+ */
+@Component
+public class GmailQuotaLimiter {
+
+  public record BucketSnapshot(String key, double availableUnits, double capacityUnits, long blockedForMs) {
+
+    public double utilization() {
+      return capacityUnits <= 0 ? 0 : 1.0 - Math.max(0, availableUnits) / capacityUnits;
+    }
+  }
+
+  public record QuotaSnapshot(BucketSnapshot global, List<BucketSnapshot> users) {
+  }
+
+  private final double perUserUnitsPerSecond;
+  private final long maxWaitNanos;
+  private final long jitterMs;
+  private final Bucket global;
+  private final Map<UUID, Bucket> users = new ConcurrentHashMap<>();
+
+  public GmailQuotaLimiter(
+      @Value("${gmail.quota.per-user-units-per-second:250}") double perUserUnitsPerSecond,
+      @Value("${gmail.quota.global-units-per-second:20000}") double globalUnitsPerSecond,
+      @Value("${gmail.quota.max-wait-ms:10000}") long maxWaitMs,
+      @Value("${gmail.quota.backoff-jitter-ms:500}") long jitterMs) {
+    this.perUserUnitsPerSecond = perUserUnitsPerSecond;
+    this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+    this.jitterMs = jitterMs;
+    this.global = new Bucket(globalUnitsPerSecond);
+  }
+
+  /**
+   * Blocks until {@code op} may run for {@code userId} (null charges the global bucket only).
+   */
+  public void acquire(UUID userId, GmailOperation op) {
+    int cost = op.quotaUnits();
+    if (cost == 0) {
+      return;
+    }
+
+    Bucket user = userId == null ? null : users.computeIfAbsent(userId, id -> new Bucket(perUserUnitsPerSecond));
+    long now = System.nanoTime();
+
+    long projected = Math.max(global.waitNanos(cost, now), user == null ? 0 : user.waitNanos(cost, now));
+    if (projected > maxWaitNanos) {
+      throw new GmailRateLimitedException(
+          "Gmail quota exhausted" + (userId == null ? "" : " for user " + userId),
+          Duration.ofNanos(projected));
+    }
+
+    long wait = Math.max(global.reserve(cost, now), user == null ? 0 : user.reserve(cost, now));
+    if (wait > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new GmailRateLimitedException("Interrupted while waiting for Gmail quota", Duration.ofNanos(wait));
+      }
+    }
+  }
+
+  /**
+   * Gmail asked us to back off: pause this user (or everyone, for a null user) for
+   * {@code retryAfter} plus jitter.
+   */
+  public void backoff(UUID userId, Duration retryAfter) {
+    long jitter = jitterMs <= 0 ? 0 : ThreadLocalRandom.current().nextLong(jitterMs + 1);
+    long until = System.nanoTime() + retryAfter.toNanos() + TimeUnit.MILLISECONDS.toNanos(jitter);
+
+    Bucket bucket = userId == null ? global : users.computeIfAbsent(userId, id -> new Bucket(perUserUnitsPerSecond));
+    bucket.blockUntil(until);
+  }
+
+  /**
+   * Parses a {@code Retry-After} value in seconds, or returns {@code fallback} when it is absent or
+   * in HTTP-date form.
+   */
+  public static Duration parseRetryAfter(String value, Duration fallback) {
+    if (value != null) {
+      try {
+        return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+      } catch (NumberFormatException ignored) {
+        // HTTP-date form; use the fallback
+      }
+    }
+    return fallback;
+  }
+
+  public QuotaSnapshot snapshot(int topUsers) {
+    long now = System.nanoTime();
+    List<BucketSnapshot> userSnapshots = users.entrySet().stream()
+        .map(e -> e.getValue().snapshot(e.getKey().toString(), now))
+        .sorted(Comparator.comparingDouble(BucketSnapshot::utilization).reversed())
+        .limit(topUsers)
+        .toList();
+    return new QuotaSnapshot(global.snapshot("global", now), userSnapshots);
+  }
+
+  public BucketSnapshot snapshot(UUID userId) {
+    Bucket bucket = users.get(userId);
+    long now = System.nanoTime();
+    return bucket == null
+        ? new BucketSnapshot(userId.toString(), perUserUnitsPerSecond, perUserUnitsPerSecond, 0)
+        : bucket.snapshot(userId.toString(), now);
+  }
+
+  /**
+   * Drops buckets of idle users; a full, unblocked bucket carries no state worth keeping.
+   */
+  @Scheduled(fixedDelay = 60000)
+  public void evictIdle() {
+    long now = System.nanoTime();
+    users.entrySet().removeIf(e -> e.getValue().idle(now));
+  }
+
+  private static final class Bucket {
+
+    private final double unitsPerSecond;
+    private double available;
+    private long lastRefillNanos;
+    private long blockedUntilNanos;
+
+    Bucket(double unitsPerSecond) {
+      this.unitsPerSecond = unitsPerSecond;
+      this.available = unitsPerSecond;
+      this.lastRefillNanos = System.nanoTime();
+    }
+
+    synchronized long waitNanos(int cost, long now) {
+      refill(now);
+      return waitFor(available - cost, now);
+    }
+
+    synchronized long reserve(int cost, long now) {
+      refill(now);
+      available -= cost;
+      return waitFor(available, now);
+    }
+
+    synchronized void blockUntil(long until) {
+      blockedUntilNanos = Math.max(blockedUntilNanos, until);
+    }
+
+    synchronized boolean idle(long now) {
+      refill(now);
+      return available >= unitsPerSecond && blockedUntilNanos - now <= 0;
+    }
+
+    synchronized BucketSnapshot snapshot(String key, long now) {
+      refill(now);
+      return new BucketSnapshot(key, available, unitsPerSecond,
+          TimeUnit.NANOSECONDS.toMillis(Math.max(0, blockedUntilNanos - now)));
+    }
+
+    private long waitFor(double balance, long now) {
+      long deficit = balance >= 0 ? 0 : (long) (-balance / unitsPerSecond * 1_000_000_000L);
+      return Math.max(deficit, blockedUntilNanos - now);
+    }
+
+    private void refill(long now) {
+      double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000.0;
+      available = Math.min(unitsPerSecond, available + elapsedSeconds * unitsPerSecond);
+      lastRefillNanos = now;
+    }
+  }
+}
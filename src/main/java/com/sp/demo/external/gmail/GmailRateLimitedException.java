@@ -0,0 +1,21 @@
+package com.sp.demo.external.gmail;
+
+import java.time.Duration;
+
+/**
+ * A Gmail call was not made because the quota limiter would have had to wait longer than
+ * {@code gmail.quota.max-wait-ms}.
+ */
+public class GmailRateLimitedException extends RuntimeException {
+
+  private final Duration retryAfter;
+
+  public GmailRateLimitedException(String message, Duration retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
@@ -0,0 +1,147 @@
+package com.sp.demo.external.gmail;
+
+import com.google.api.client.http.HttpResponseException;
+import com.sp.demo.domain.entity.OAuthToken;
+import com.sp.demo.external.google.TokenRefreshService;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs a Gmail call and retries it according to {@link GmailErrorClassifier}.
+ *
+ * <ul>
+ *   <li>{@code AUTH_EXPIRED}: refresh the token once, then retry.</li>
+ *   <li>{@code TRANSIENT}: retry with full-jitter exponential backoff, idempotent calls only.</li>
+ *   <li>{@code RATE_LIMITED}: retry a Gmail 429, with {@link GmailQuotaLimiter} doing the
+ *       waiting; a 403 {@code rateLimitExceeded}/{@code userRateLimitExceeded} carries no
+ *       Retry-After, so it is retried after an equal-jitter backoff that never drops to zero.
+ *       A local {@link GmailRateLimitedException} is rethrown at once.</li>
+ *   <li>{@code PERMANENT}: rethrow at once.</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class GmailRetryExecutor {
+
+  @FunctionalInterface
+  public interface GmailCall<T> {
+    T apply(OAuthToken token) throws Exception;
+  }
+
+  public record RetryStats(Map<GmailErrorCategory, Long> errors, long retries, long tokenRefreshes, long exhausted) {
+  }
+
+  private final TokenRefreshService tokenRefreshService;
+  private final int maxAttempts;
+  private final long baseBackoffMs;
+  private final long maxBackoffMs;
+
+  private final Map<GmailErrorCategory, LongAdder> errors = new EnumMap<>(GmailErrorCategory.class);
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder tokenRefreshes = new LongAdder();
+  private final LongAdder exhausted = new LongAdder();
+
+  public GmailRetryExecutor(TokenRefreshService tokenRefreshService,
+      @Value("${gmail.retry.max-attempts:4}") int maxAttempts,
+      @Value("${gmail.retry.base-backoff-ms:200}") long baseBackoffMs,
+      @Value("${gmail.retry.max-backoff-ms:5000}") long maxBackoffMs) {
+    this.tokenRefreshService = tokenRefreshService;
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.baseBackoffMs = baseBackoffMs;
+    this.maxBackoffMs = maxBackoffMs;
+    for (GmailErrorCategory c : GmailErrorCategory.values()) {
+      errors.put(c, new LongAdder());
+    }
+  }
+
+  /**
+   * For reads and other calls that are safe to repeat.
+   */
+  public <T> T execute(OAuthToken token, GmailCall<T> call) throws Exception {
+    return run(token, call, true);
+  }
+
+  /**
+   * For sends: a timed-out request may still have gone through, so transient errors are not
+   * retried here. Auth and Gmail rate-limit rejections are, since Gmail did not accept the call.
+   */
+  public <T> T executeNonIdempotent(OAuthToken token, GmailCall<T> call) throws Exception {
+    return run(token, call, false);
+  }
+
+  public RetryStats stats() {
+    Map<GmailErrorCategory, Long> counts = new EnumMap<>(GmailErrorCategory.class);
+    errors.forEach((c, n) -> counts.put(c, n.sum()));
+    return new RetryStats(counts, retries.sum(), tokenRefreshes.sum(), exhausted.sum());
+  }
+
+  private <T> T run(OAuthToken token, GmailCall<T> call, boolean idempotent) throws Exception {
+    boolean refreshed = false;
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return call.apply(token);
+      } catch (Exception e) {
+        GmailErrorCategory category = GmailErrorClassifier.classify(e);
+        errors.get(category).increment();
+
+        boolean retry = switch (category) {
+          case AUTH_EXPIRED -> !refreshed;
+          case RATE_LIMITED -> !(e instanceof GmailRateLimitedException);
+          case TRANSIENT -> idempotent;
+          case PERMANENT -> false;
+        };
+        if (!retry) {
+          throw e;
+        }
+        if (attempt >= maxAttempts) {
+          exhausted.increment();
+          throw e;
+        }
+
+        retries.increment();
+        if (category == GmailErrorCategory.AUTH_EXPIRED) {
+          token = tokenRefreshService.refreshToken(token);
+          tokenRefreshes.increment();
+          refreshed = true;
+        } else if (category == GmailErrorCategory.TRANSIENT) {
+          sleep(backoffMs(attempt));
+        } else if (category == GmailErrorCategory.RATE_LIMITED && !isTooManyRequests(e)) {
+          sleep(rateLimitBackoffMs(attempt));
+        }
+        log.debug("Retrying Gmail call after {} (attempt {}): {}", category, attempt, e.getMessage());
+      }
+    }
+  }
+
+  private long backoffMs(int attempt) {
+    long ceiling = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempt - 1, 20));
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  /** At least half the exponential ceiling, so back-to-back retries cannot feed the throttling. */
+  private long rateLimitBackoffMs(int attempt) {
+    long ceiling = Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempt - 1, 20));
+    return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+  }
+
+  /** A 429 already paused the user's bucket in {@link GmailQuotaLimiter}. */
+  private static boolean isTooManyRequests(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof HttpResponseException h) {
+        return h.getStatusCode() == 429;
+      }
+    }
+    return false;
+  }
+
+  private static void sleep(long ms) throws InterruptedException {
+    if (ms > 0) {
+      Thread.sleep(ms);
+    }
+  }
+}
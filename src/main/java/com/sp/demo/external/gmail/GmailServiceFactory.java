@@ -0,0 +1,127 @@
+package com.sp.demo.external.gmail;
+
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpUnsuccessfulResponseHandler;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.gmail.Gmail;
+import com.google.auth.http.HttpCredentialsAdapter;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.sp.demo.domain.entity.OAuthToken;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hands out {@link Gmail} clients bound to a user's current access token.
+ * All clients share one transport; a small LRU keeps the last client per user
+ * and is dropped whenever the access token changes.
+ *
+ * <p>Every request a client makes is charged to {@link GmailQuotaLimiter} before it goes out,
+ * and a 429 from Gmail pauses that user's bucket for the {@code Retry-After} delay.
+ */
+@Component
+public class GmailServiceFactory {
+
+  private static final String APPLICATION_NAME = "draftly-ai";
+
+  private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+
+  private final HttpTransport httpTransport;
+  private final GmailQuotaLimiter quotaLimiter;
+  private final Map<UUID, CachedClient> clients;
+
+  private record CachedClient(String accessToken, Gmail gmail) {
+  }
+
+  public GmailServiceFactory(HttpTransport gmailHttpTransport, GmailQuotaLimiter quotaLimiter,
+      @Value("${gmail.client.cache-size:1000}") int maxCachedClients) {
+    this.httpTransport = gmailHttpTransport;
+    this.quotaLimiter = quotaLimiter;
+    this.clients = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<UUID, CachedClient> eldest) {
+        return size() > maxCachedClients;
+      }
+    };
+  }
+
+  public Gmail forToken(OAuthToken token) {
+    UUID userId = token.getUser() != null ? token.getUser().getId() : null;
+    if (userId == null) {
+      return build(token);
+    }
+
+    synchronized (clients) {
+      CachedClient cached = clients.get(userId);
+      if (cached != null && Objects.equals(cached.accessToken(), token.getAccessToken())) {
+        return cached.gmail();
+      }
+    }
+
+    Gmail gmail = build(token);
+    synchronized (clients) {
+      clients.put(userId, new CachedClient(token.getAccessToken(), gmail));
+    }
+    return gmail;
+  }
+
+  public void invalidate(UUID userId) {
+    if (userId == null) {
+      return;
+    }
+    synchronized (clients) {
+      clients.remove(userId);
+    }
+  }
+
+  private Gmail build(OAuthToken token) {
+    GoogleCredentials credentials = GoogleCredentials.create(
+        new AccessToken(token.getAccessToken(), token.getExpiresAt() == null ? null : Date.from(token.getExpiresAt())));
+
+    HttpRequestInitializer requestInitializer = quotaAware(
+        new HttpCredentialsAdapter(credentials), token.getUser() != null ? token.getUser().getId() : null);
+
+    return new Gmail.Builder(
+        httpTransport,
+        GsonFactory.getDefaultInstance(),
+        requestInitializer
+    ).setApplicationName(APPLICATION_NAME).build();
+  }
+
+  private HttpRequestInitializer quotaAware(HttpRequestInitializer delegate, UUID userId) {
+    return request -> {
+      delegate.initialize(request);
+
+      HttpExecuteInterceptor auth = request.getInterceptor();
+      request.setInterceptor(r -> {
+        quotaLimiter.acquire(userId, GmailOperation.of(r));
+        if (auth != null) {
+          auth.intercept(r);
+        }
+      });
+
+      HttpUnsuccessfulResponseHandler next = request.getUnsuccessfulResponseHandler();
+      request.setUnsuccessfulResponseHandler((r, response, supportsRetry) -> {
+        if (response.getStatusCode() == 429) {
+          String retryAfter = response.getHeaders().getFirstHeaderStringValue("Retry-After");
+          quotaLimiter.backoff(userId, GmailQuotaLimiter.parseRetryAfter(retryAfter, DEFAULT_RETRY_AFTER));
+          return false;
+        }
+        if (response.getStatusCode() == 401) {
+          // these credentials cannot refresh themselves; GmailRetryExecutor refreshes through
+          // TokenRefreshService and retries with a new client
+          return false;
+        }
+        return next != null && next.handleResponse(r, response, supportsRetry);
+      });
+    };
+  }
+}
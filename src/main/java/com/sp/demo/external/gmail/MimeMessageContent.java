@@ -0,0 +1,52 @@
+package com.sp.demo.external.gmail;
+
+import com.google.api.client.http.AbstractInputStreamContent;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Upload body for {@code messages.send} that writes the MIME message straight into the
+ * request stream. Nothing is buffered or Base64-encoded on the way.
+ */
+class MimeMessageContent extends AbstractInputStreamContent {
+
+  private final MimeMessage message;
+
+  MimeMessageContent(MimeMessage message) {
+    super("message/rfc822");
+    this.message = message;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    try {
+      message.writeTo(out);
+    } catch (MessagingException e) {
+      throw new IOException("Could not write MIME message", e);
+    }
+    out.flush();
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    // only used by callers that insist on a stream; the upload path goes through writeTo
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    writeTo(buffer);
+    return new ByteArrayInputStream(buffer.toByteArray());
+  }
+
+  @Override
+  public long getLength() {
+    return -1;
+  }
+
+  @Override
+  public boolean retrySupported() {
+    return true;
+  }
+}
@@ -0,0 +1,397 @@
+package com.sp.demo.external.gmail;
+
+import com.google.api.services.gmail.model.MessagePart;
+import com.google.api.services.gmail.model.MessagePartHeader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pulls readable text out of a Gmail MIME tree.
+ *
+ * <p>The first {@code text/plain} or {@code text/html} part with content wins, in tree order.
+ * Part data is Base64-decoded as a stream and read with the part's declared charset.
+ * HTML goes through a single-pass tokenizer that drops tags, comments and
+ * {@code script}/{@code style} blocks. Reading stops once {@code gmail.body.max-chars}
+ * characters have been produced.
+ */
+@Component
+public class MimeTextExtractor {
+
+  private static final int READ_BUFFER_CHARS = 4096;
+
+  private final int maxChars;
+
+  public MimeTextExtractor(@Value("${gmail.body.max-chars:20000}") int maxChars) {
+    this.maxChars = maxChars;
+  }
+
+  public String extract(MessagePart part) {
+    if (part == null) {
+      return "";
+    }
+
+    String mimeType = part.getMimeType() == null ? "" : part.getMimeType().toLowerCase(Locale.ROOT);
+    if (mimeType.startsWith("text/plain") || mimeType.startsWith("text/html")) {
+      String text = decode(part, mimeType.startsWith("text/html"));
+      if (!text.isBlank()) {
+        return text;
+      }
+    }
+
+    if (part.getParts() != null) {
+      for (MessagePart p : part.getParts()) {
+        String nested = extract(p);
+        if (!nested.isBlank()) {
+          return nested;
+        }
+      }
+    }
+
+    return "";
+  }
+
+  private String decode(MessagePart part, boolean html) {
+    if (part.getBody() == null || part.getBody().getData() == null) {
+      return "";
+    }
+    String data = part.getBody().getData();
+
+    TextSink sink = html ? new HtmlTextSink(maxChars) : new PlainTextSink(maxChars);
+    CharsetDecoder decoder = charsetOf(part).newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    try (Reader reader = new InputStreamReader(
+        Base64.getUrlDecoder().wrap(new AsciiInputStream(data)), decoder)) {
+      char[] buffer = new char[READ_BUFFER_CHARS];
+      int n;
+      while (!sink.full() && (n = reader.read(buffer)) != -1) {
+        sink.accept(buffer, n);
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      // malformed Base64: keep whatever decoded cleanly
+    }
+
+    return sink.result();
+  }
+
+  private Charset charsetOf(MessagePart part) {
+    if (part.getHeaders() == null) {
+      return StandardCharsets.UTF_8;
+    }
+    for (MessagePartHeader h : part.getHeaders()) {
+      if (h.getName() == null || !h.getName().equalsIgnoreCase("Content-Type") || h.getValue() == null) {
+        continue;
+      }
+      for (String param : h.getValue().split(";")) {
+        String p = param.trim();
+        if (p.regionMatches(true, 0, "charset=", 0, 8)) {
+          String name = p.substring(8).trim().replace("\"", "").replace("'", "");
+          try {
+            return Charset.forName(name);
+          } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+          }
+        }
+      }
+    }
+    return StandardCharsets.UTF_8;
+  }
+
+  private interface TextSink {
+    void accept(char[] chars, int length);
+
+    boolean full();
+
+    String result();
+  }
+
+  private static final class PlainTextSink implements TextSink {
+
+    private final StringBuilder out;
+    private final int maxChars;
+
+    PlainTextSink(int maxChars) {
+      this.maxChars = maxChars;
+      this.out = new StringBuilder(Math.min(maxChars, READ_BUFFER_CHARS));
+    }
+
+    @Override
+    public void accept(char[] chars, int length) {
+      out.append(chars, 0, Math.min(length, maxChars - out.length()));
+    }
+
+    @Override
+    public boolean full() {
+      return out.length() >= maxChars;
+    }
+
+    @Override
+    public String result() {
+      return out.toString().trim();
+    }
+  }
+
+  /**
+   * HTML to text in one pass over the input, without building the whole document in memory.
+   * Whitespace runs collapse to a single space and block-level tags become line breaks.
+   */
+  static final class HtmlTextSink implements TextSink {
+
+    private enum State { TEXT, TAG, COMMENT, ENTITY, RAW }
+
+    private final StringBuilder out;
+    private final int maxChars;
+    private final StringBuilder token = new StringBuilder(16);
+
+    private State state = State.TEXT;
+    private boolean tagNameDone;
+    private boolean closingTag;
+    private char quote;
+    private String rawEndTag;   // "</script" or "</style" while inside such a block
+    private int rawMatched;
+    private int commentDashes;
+    private boolean pendingSpace;
+    private int pendingNewlines;
+
+    HtmlTextSink(int maxChars) {
+      this.maxChars = maxChars;
+      this.out = new StringBuilder(Math.min(maxChars, READ_BUFFER_CHARS));
+    }
+
+    @Override
+    public void accept(char[] chars, int length) {
+      for (int i = 0; i < length && !full(); i++) {
+        step(chars[i]);
+      }
+    }
+
+    @Override
+    public boolean full() {
+      return out.length() >= maxChars;
+    }
+
+    @Override
+    public String result() {
+      return out.toString().trim();
+    }
+
+    private void step(char c) {
+      switch (state) {
+        case TEXT -> {
+          if (c == '<') {
+            state = State.TAG;
+            token.setLength(0);
+            tagNameDone = false;
+            closingTag = false;
+            quote = 0;
+          } else if (c == '&') {
+            state = State.ENTITY;
+            token.setLength(0);
+          } else {
+            text(c);
+          }
+        }
+        case TAG -> tag(c);
+        case COMMENT -> {
+          if (c == '>' && commentDashes >= 2) {
+            state = State.TEXT;
+          }
+          commentDashes = c == '-' ? commentDashes + 1 : 0;
+        }
+        case ENTITY -> entity(c);
+        case RAW -> {
+          char lower = Character.toLowerCase(c);
+          if (lower == rawEndTag.charAt(rawMatched)) {
+            rawMatched++;
+            if (rawMatched == rawEndTag.length()) {
+              // consume the rest of the closing tag as an ordinary tag
+              state = State.TAG;
+              token.setLength(0);
+              tagNameDone = true;
+              closingTag = true;
+              quote = 0;
+            }
+          } else {
+            rawMatched = lower == '<' ? 1 : 0;
+          }
+        }
+      }
+    }
+
+    private void tag(char c) {
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+        return;
+      }
+
+      if (!tagNameDone) {
+        if (token.length() == 0 && c == '/' && !closingTag) {
+          closingTag = true;
+          return;
+        }
+        if (token.length() == 0 && !closingTag && !Character.isLetter(c) && c != '!') {
+          // a bare '<' in text, not a tag
+          state = State.TEXT;
+          text('<');
+          step(c);
+          return;
+        }
+        if (Character.isLetterOrDigit(c) || c == '!' || c == '-') {
+          token.append(Character.toLowerCase(c));
+          if (token.length() == 3 && token.charAt(0) == '!' && token.charAt(1) == '-' && token.charAt(2) == '-') {
+            state = State.COMMENT;
+            commentDashes = 0;
+          }
+          return;
+        }
+        tagNameDone = true;
+      }
+
+      if (c == '"' || c == '\'') {
+        quote = c;
+      } else if (c == '>') {
+        endTag();
+      }
+    }
+
+    private void endTag() {
+      state = State.TEXT;
+      String name = token.toString();
+
+      if (!closingTag && (name.equals("script") || name.equals("style"))) {
+        state = State.RAW;
+        rawEndTag = "</" + name;
+        rawMatched = 0;
+        return;
+      }
+
+      switch (name) {
+        case "br", "p", "div", "li", "tr", "table", "h1", "h2", "h3", "h4", "h5", "h6", "blockquote", "hr" ->
+            pendingNewlines = Math.max(pendingNewlines, name.equals("br") ? 1 : 2);
+        default -> pendingSpace = true;
+      }
+    }
+
+    private void entity(char c) {
+      if (c == ';' || token.length() > 8 || !(Character.isLetterOrDigit(c) || c == '#')) {
+        String decoded = decodeEntity(token);
+        if (decoded != null && c == ';') {
+          state = State.TEXT;
+          for (int i = 0; i < decoded.length(); i++) {
+            text(decoded.charAt(i));
+          }
+          return;
+        }
+        // not an entity: emit it literally
+        state = State.TEXT;
+        text('&');
+        for (int i = 0; i < token.length(); i++) {
+          text(token.charAt(i));
+        }
+        if (c == '<') {
+          step(c);
+        } else {
+          text(c);
+        }
+        return;
+      }
+      token.append(c);
+    }
+
+    private static String decodeEntity(CharSequence name) {
+      if (name.length() > 1 && name.charAt(0) == '#') {
+        try {
+          int cp = name.charAt(1) == 'x' || name.charAt(1) == 'X'
+              ? Integer.parseInt(name.subSequence(2, name.length()).toString(), 16)
+              : Integer.parseInt(name.subSequence(1, name.length()).toString());
+          return Character.isValidCodePoint(cp) ? new String(Character.toChars(cp)) : null;
+        } catch (NumberFormatException e) {
+          return null;
+        }
+      }
+      return switch (name.toString()) {
+        case "amp" -> "&";
+        case "lt" -> "<";
+        case "gt" -> ">";
+        case "quot" -> "\"";
+        case "apos" -> "'";
+        case "nbsp" -> " ";
+        case "zwnj", "zwj", "shy" -> "";
+        default -> null;
+      };
+    }
+
+    private void text(char c) {
+      if (Character.isWhitespace(c) || c == ' ') {
+        pendingSpace = true;
+        return;
+      }
+
+      if (out.length() > 0) {
+        if (pendingNewlines > 0) {
+          trimTrailingSpace();
+          for (int i = 0; i < pendingNewlines; i++) {
+            out.append('\n');
+          }
+        } else if (pendingSpace && out.charAt(out.length() - 1) != '\n') {
+          out.append(' ');
+        }
+      }
+      pendingNewlines = 0;
+      pendingSpace = false;
+
+      if (out.length() < maxChars) {
+        out.append(c);
+      }
+    }
+
+    private void trimTrailingSpace() {
+      while (out.length() > 0 && out.charAt(out.length() - 1) == ' ') {
+        out.setLength(out.length() - 1);
+      }
+    }
+  }
+
+  /**
+   * Reads the chars of a Base64 string as bytes, without copying it into a byte array.
+   */
+  private static final class AsciiInputStream extends InputStream {
+
+    private final String data;
+    private int pos;
+
+    AsciiInputStream(String data) {
+      this.data = data;
+    }
+
+    @Override
+    public int read() {
+      return pos < data.length() ? data.charAt(pos++) & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (pos >= data.length()) {
+        return -1;
+      }
+      int n = Math.min(len, data.length() - pos);
+      for (int i = 0; i < n; i++) {
+        b[off + i] = (byte) data.charAt(pos++);
+      }
+      return n;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package com.sp.demo.external.google;
+
+import com.sp.demo.domain.entity.OAuthToken;
+import com.sp.demo.domain.entity.User;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory copy of each user's current Google access token, so send and fetch paths can skip
+ * the {@code oauth_token} read. Entries are detached snapshots; every {@link #get} returns a
+ * fresh copy, since callers may update the token they are handed.
+ */
+@Component
+public class AccessTokenCache {
+
+  public record CacheStats(long hits, long misses, int size) {
+  }
+
+  private final Map<UUID, OAuthToken> tokens = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Returns the cached token if it stays valid until at least {@code validUntil}.
+   */
+  public OAuthToken get(UUID userId, Instant validUntil) {
+    OAuthToken cached = tokens.get(userId);
+    if (cached == null || cached.getExpiresAt() == null || !cached.getExpiresAt().isAfter(validUntil)) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return copyOf(cached, userId);
+  }
+
+  public void put(UUID userId, OAuthToken token) {
+    if (userId == null || token.getRevokedAt() != null || token.getAccessToken() == null) {
+      evict(userId);
+      return;
+    }
+    tokens.put(userId, copyOf(token, userId));
+  }
+
+  public void evict(UUID userId) {
+    if (userId != null) {
+      tokens.remove(userId);
+    }
+  }
+
+  /**
+   * Drops entries that expired before {@code now}.
+   */
+  public void evictExpired(Instant now) {
+    tokens.values().removeIf(t -> t.getExpiresAt() == null || t.getExpiresAt().isBefore(now));
+  }
+
+  public CacheStats stats() {
+    return new CacheStats(hits.sum(), misses.sum(), tokens.size());
+  }
+
+  private static OAuthToken copyOf(OAuthToken token, UUID userId) {
+    return OAuthToken.builder()
+        .id(token.getId())
+        // a stub rather than the entity's lazy proxy, which is tied to the session that loaded it
+        .user(User.builder().id(userId).build())
+        .provider(token.getProvider())
+        .accessToken(token.getAccessToken())
+        .refreshTokenEncrypted(token.getRefreshTokenEncrypted())
+        .scope(token.getScope())
+        .expiresAt(token.getExpiresAt())
+        .revokedAt(token.getRevokedAt())
+        .build();
+  }
+}
@@ -0,0 +1,12 @@
+package com.sp.demo.external.google;
+
+/**
+ * Google's token endpoint answered {@code invalid_grant}: the refresh token was revoked or has
+ * expired, and the user has to sign in again.
+ */
+public class GoogleGrantRevokedException extends RuntimeException {
+
+  public GoogleGrantRevokedException(Throwable cause) {
+    super("Google rejected the refresh token (invalid_grant); the user has to sign in again", cause);
+  }
+}
@@ -0,0 +1,97 @@
+package com.sp.demo.external.google;
+
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
+import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Authenticates Pub/Sub push deliveries to {@code /api/gmail/push}.
+ *
+ * <p>Two checks, each enabled by its config:
+ * <ul>
+ *   <li>{@code gmail.push.verification-token}: the {@code ?token=} query parameter must match.</li>
+ *   <li>{@code gmail.push.oidc.audience}: the {@code Authorization: Bearer} OIDC token that
+ *   Pub/Sub attaches must be a valid Google-signed JWT for that audience, and, when
+ *   {@code gmail.push.oidc.service-account} is set, issued to that verified service account.</li>
+ * </ul>
+ * When both are configured both must pass. With neither configured every request is rejected,
+ * so an unconfigured deployment cannot be used to trigger syncs.
+ */
+@Slf4j
+@Component
+public class PubSubPushVerifier {
+
+  private final String verificationToken;
+  private final String serviceAccount;
+  private final GoogleIdTokenVerifier idTokenVerifier;
+
+  public PubSubPushVerifier(
+      HttpTransport gmailHttpTransport,
+      @Value("${gmail.push.verification-token:}") String verificationToken,
+      @Value("${gmail.push.oidc.audience:}") String audience,
+      @Value("${gmail.push.oidc.service-account:}") String serviceAccount) {
+    this.verificationToken = verificationToken == null ? "" : verificationToken;
+    this.serviceAccount = serviceAccount == null ? "" : serviceAccount;
+    this.idTokenVerifier = audience == null || audience.isBlank()
+        ? null
+        : new GoogleIdTokenVerifier.Builder(gmailHttpTransport, GsonFactory.getDefaultInstance())
+            .setAudience(List.of(audience))
+            .build();
+  }
+
+  @PostConstruct
+  void warnIfUnconfigured() {
+    if (!configured()) {
+      log.warn("Gmail push is disabled: set gmail.push.verification-token and/or gmail.push.oidc.audience");
+    }
+  }
+
+  public boolean configured() {
+    return !verificationToken.isBlank() || idTokenVerifier != null;
+  }
+
+  /**
+   * @param token the {@code token} query parameter, may be null
+   * @param authorization the {@code Authorization} header, may be null
+   */
+  public boolean verify(String token, String authorization) {
+    if (!configured()) {
+      return false;
+    }
+    if (!verificationToken.isBlank() && !tokenMatches(token)) {
+      return false;
+    }
+    return idTokenVerifier == null || idTokenValid(authorization);
+  }
+
+  private boolean tokenMatches(String token) {
+    return token != null && MessageDigest.isEqual(
+        verificationToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private boolean idTokenValid(String authorization) {
+    if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+      return false;
+    }
+    try {
+      GoogleIdToken idToken = idTokenVerifier.verify(authorization.substring(7).trim());
+      if (idToken == null) {
+        return false;
+      }
+      GoogleIdToken.Payload payload = idToken.getPayload();
+      return serviceAccount.isBlank()
+          || (serviceAccount.equalsIgnoreCase(payload.getEmail()) && Boolean.TRUE.equals(payload.getEmailVerified()));
+    } catch (Exception e) {
+      log.debug("Rejected Pub/Sub push token: {}", e.getMessage());
+      return false;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.sp.demo.external.google;
+
+import com.sp.demo.domain.entity.OAuthToken;
+import com.sp.demo.repository.OAuthTokenRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Refreshes Google access tokens {@code token.refresh.skew-seconds} before they expire, so
+ * sends and fetches do not wait for a refresh. Users with drafts still in flight go first;
+ * revoked tokens are skipped. Every node runs this; a token whose refresh lease another node
+ * holds is left out of the batch or skipped, so each token is refreshed once per round.
+ */
+@Slf4j
+@Component
+public class TokenRefreshScheduler {
+
+  private final OAuthTokenRepository tokenRepository;
+  private final TokenRefreshService tokenRefreshService;
+  private final AccessTokenCache accessTokenCache;
+  private final Duration skew;
+  private final int batchSize;
+
+  public TokenRefreshScheduler(OAuthTokenRepository tokenRepository,
+      TokenRefreshService tokenRefreshService,
+      AccessTokenCache accessTokenCache,
+      @Value("${token.refresh.skew-seconds:300}") long skewSeconds,
+      @Value("${token.refresh.batch-size:100}") int batchSize) {
+    this.tokenRepository = tokenRepository;
+    this.tokenRefreshService = tokenRefreshService;
+    this.accessTokenCache = accessTokenCache;
+    this.skew = Duration.ofSeconds(skewSeconds);
+    this.batchSize = batchSize;
+  }
+
+  @Scheduled(fixedDelayString = "${token.refresh.interval-ms:60000}")
+  public void refreshExpiring() {
+    Instant now = Instant.now();
+    accessTokenCache.evictExpired(now);
+
+    List<OAuthToken> due = tokenRepository.findRefreshCandidates(now.plus(skew), batchSize);
+    for (OAuthToken token : due) {
+      try {
+        if (!tokenRefreshService.refreshIfUnclaimed(token)) {
+          log.debug("Token {} is already being refreshed elsewhere", token.getId());
+        }
+      } catch (GoogleGrantRevokedException e) {
+        token.setRevokedAt(Instant.now());
+        tokenRepository.save(token);
+        accessTokenCache.evict(token.getUser().getId());
+        log.warn("Google grant revoked for token {}; the user has to sign in again", token.getId());
+      } catch (Exception e) {
+        log.warn("Background refresh failed for token {}: {}", token.getId(), e.getMessage());
+      }
+    }
+  }
+}
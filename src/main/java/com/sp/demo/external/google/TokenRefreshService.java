@@ -1,9 +1,20 @@
 package com.sp.demo.external.google;
 
+import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Value;
 import com.sp.demo.domain.entity.OAuthToken;
+import com.sp.demo.domain.enums.AuthProvider;
+import com.sp.demo.external.gmail.GmailServiceFactory;
+import com.sp.demo.external.http.OutboundHttpClients;
 import com.sp.demo.repository.OAuthTokenRepository;
 import com.sp.demo.service.TokenCryptoService;
 import java.util.Map;
@@ -11,35 +22,238 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
 
 @Service
 @RequiredArgsConstructor
 public class TokenRefreshService {
 
+  // a token stored by another refresher is reused only if it has at least this long left
+  private static final Duration FRESHNESS_MARGIN = Duration.ofSeconds(60);
+
+  // Google access tokens live an hour; assumed when a response has no expires_in, so the row
+  // gets an expiry and is not picked up by every scheduler run
+  private static final Duration DEFAULT_EXPIRES_IN = Duration.ofHours(1);
+
+  // how often a node waiting on another node's refresh lease looks at the row again
+  private static final Duration LEASE_POLL_INTERVAL = Duration.ofMillis(100);
+
   @Value("${spring.security.oauth2.client.registration.google.client-id}")
   private String clientId;
 
   @Value("${spring.security.oauth2.client.registration.google.client-secret}")
   private String clientSecret;
 
+  @Value("${token.refresh.lease-ms:30000}")
+  private long leaseMs;
+
 
   private final OAuthTokenRepository tokenRepository;
   private final TokenCryptoService tokenCryptoService;
-  private final RestTemplate restTemplate = new RestTemplate();
+  private final GmailServiceFactory gmailServiceFactory;
+  private final AccessTokenCache accessTokenCache;
+  private final JdbcTemplate jdbcTemplate;
+  private final PlatformTransactionManager transactionManager;
+  private final OutboundHttpClients outboundHttpClients;
 
+  private final Map<UUID, CompletableFuture<RefreshedToken>> refreshesInFlight = new ConcurrentHashMap<>();
 
+  private record RefreshedToken(String accessToken, Instant expiresAt) {
+  }
+
+
+  /**
+   * Refreshes the access token, at most once at a time per token row across all nodes.
+   *
+   * <p>Within this JVM, concurrent callers share one in-flight refresh. Across nodes, the
+   * refresher first claims a short lease on the row ({@code refresh_lease_until}, valid for
+   * {@code token.refresh.lease-ms}); a node that finds the lease taken polls the row until the
+   * holder stores its token and uses that. Each claim, store and poll is its own short
+   * statement, so no database connection is held during the call to Google. A lease left by a
+   * crashed node simply expires.
+   */
   public OAuthToken refreshToken(OAuthToken token) {
+    if (token.getId() == null) {
+      // not persisted yet, so no other refresher can see it; store it like any refreshed token
+      apply(token, requestNewAccessToken(token.getRefreshTokenEncrypted()));
+      return tokenRepository.save(token);
+    }
+
+    CompletableFuture<RefreshedToken> mine = new CompletableFuture<>();
+    CompletableFuture<RefreshedToken> inFlight = refreshesInFlight.putIfAbsent(token.getId(), mine);
+    if (inFlight == null) {
+      try {
+        mine.complete(refreshOnce(token.getId(), token.getAccessToken()));
+      } catch (Throwable e) {
+        // waiters block on this future, so it must complete whatever the refresh throws
+        mine.completeExceptionally(e);
+        throw e;
+      } finally {
+        refreshesInFlight.remove(token.getId(), mine);
+      }
+      inFlight = mine;
+    }
+
+    return applyRefreshed(token, join(inFlight));
+  }
+
+  /**
+   * Refreshes the token unless a refresh of it is already running, here or on another node; then
+   * it returns false at once instead of waiting. Lets every node's background refresher scan the
+   * same candidates while each token is refreshed by only one of them.
+   */
+  public boolean refreshIfUnclaimed(OAuthToken token) {
+    if (!claim(token.getId())) {
+      return false;
+    }
+    CompletableFuture<RefreshedToken> mine = new CompletableFuture<>();
+    if (refreshesInFlight.putIfAbsent(token.getId(), mine) != null) {
+      // a caller here is about to claim it; leave the refresh to that caller
+      release(token.getId());
+      return false;
+    }
+    try {
+      mine.complete(refreshClaimed(token.getId(), token.getAccessToken()));
+    } catch (Throwable e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      refreshesInFlight.remove(token.getId(), mine);
+    }
+    applyRefreshed(token, join(mine));
+    return true;
+  }
+
+  private OAuthToken applyRefreshed(OAuthToken token, RefreshedToken refreshed) {
+    apply(token, refreshed);
+    if (token.getUser() != null) {
+      gmailServiceFactory.invalidate(token.getUser().getId());
+      accessTokenCache.put(token.getUser().getId(), token);
+    }
+    return token;
+  }
+
+  private record StoredToken(String accessToken, Instant expiresAt, String refreshTokenEncrypted) {
+  }
 
+  private RefreshedToken refreshOnce(UUID tokenId, String staleAccessToken) {
+    long giveUpAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2 * leaseMs);
+    while (true) {
+      StoredToken current = read(tokenId);
+      if (refreshedElsewhere(current, staleAccessToken)) {
+        return new RefreshedToken(current.accessToken(), current.expiresAt());
+      }
+      if (claim(tokenId)) {
+        return refreshClaimed(tokenId, staleAccessToken);
+      }
+      // another node holds the lease; its token shows up in the row when it is done
+      if (System.nanoTime() > giveUpAt) {
+        throw new IllegalStateException("Timed out waiting for another node to refresh OAuth token " + tokenId);
+      }
+      try {
+        Thread.sleep(LEASE_POLL_INTERVAL.toMillis());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for an OAuth token refresh", e);
+      }
+    }
+  }
+
+  /**
+   * Calls Google under a lease this node holds, and stores the token and drops the lease in one
+   * update. The lease is also dropped when the refresh fails.
+   */
+  private RefreshedToken refreshClaimed(UUID tokenId, String staleAccessToken) {
+    boolean released = false;
+    try {
+      // the previous holder may have stored its token between our read and our claim
+      StoredToken current = read(tokenId);
+      if (refreshedElsewhere(current, staleAccessToken)) {
+        return new RefreshedToken(current.accessToken(), current.expiresAt());
+      }
+
+      RefreshedToken refreshed = requestNewAccessToken(current.refreshTokenEncrypted());
+      inNewTransaction(() -> jdbcTemplate.update("""
+              UPDATE oauth_token
+              SET access_token = ?, expires_at = COALESCE(?, expires_at), refresh_lease_until = NULL,
+                  updated_at = now()
+              WHERE id = ?
+              """,
+          refreshed.accessToken(),
+          refreshed.expiresAt() == null ? null : Timestamp.from(refreshed.expiresAt()),
+          tokenId));
+      released = true;
+      return refreshed;
+    } finally {
+      if (!released) {
+        release(tokenId);
+      }
+    }
+  }
+
+  private void release(UUID tokenId) {
+    inNewTransaction(() -> jdbcTemplate.update(
+        "UPDATE oauth_token SET refresh_lease_until = NULL WHERE id = ?", tokenId));
+  }
+
+  private boolean claim(UUID tokenId) {
+    Integer claimed = inNewTransaction(() -> jdbcTemplate.update("""
+            UPDATE oauth_token
+            SET refresh_lease_until = now() + ? * interval '1 millisecond'
+            WHERE id = ? AND (refresh_lease_until IS NULL OR refresh_lease_until < now())
+            """,
+        leaseMs, tokenId));
+    return claimed != null && claimed > 0;
+  }
+
+  /**
+   * Runs outside any caller transaction, so a claim or store is visible to other nodes at once.
+   */
+  private <T> T inNewTransaction(Supplier<T> work) {
+    TransactionTemplate tx = new TransactionTemplate(transactionManager);
+    tx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    return tx.execute(status -> work.get());
+  }
+
+  private StoredToken read(UUID tokenId) {
+    return jdbcTemplate.query(
+            "SELECT access_token, expires_at, refresh_token_encrypted FROM oauth_token WHERE id = ?",
+            (rs, i) -> {
+              Timestamp expiresAt = rs.getTimestamp("expires_at");
+              return new StoredToken(rs.getString("access_token"),
+                  expiresAt == null ? null : expiresAt.toInstant(),
+                  rs.getString("refresh_token_encrypted"));
+            },
+            tokenId)
+        .stream()
+        .findFirst()
+        .orElseThrow(() -> new RuntimeException("OAuth token not found"));
+  }
+
+  private static boolean refreshedElsewhere(StoredToken current, String staleAccessToken) {
+    return current.accessToken() != null
+        && !Objects.equals(current.accessToken(), staleAccessToken)
+        && current.expiresAt() != null
+        && current.expiresAt().isAfter(Instant.now().plus(FRESHNESS_MARGIN));
+  }
+
+  /**
+   * @throws GoogleGrantRevokedException when Google answers {@code invalid_grant}
+   */
+  private RefreshedToken requestNewAccessToken(String refreshTokenEncrypted) {
     String url = "https://oauth2.googleapis.com/token";
 
     MultiValueMap<String, String> body = new LinkedMultiValueMap<>();
     body.add("client_id", clientId);
     body.add("client_secret", clientSecret);
-    body.add("refresh_token", tokenCryptoService.decrypt(token.getRefreshTokenEncrypted()));
+    body.add("refresh_token", tokenCryptoService.decrypt(refreshTokenEncrypted));
     body.add("grant_type", "refresh_token");
 
     HttpHeaders headers = new HttpHeaders();
@@ -47,7 +261,15 @@ public class TokenRefreshService {
 
     HttpEntity<?> request = new HttpEntity<>(body, headers);
 
-    Map response = restTemplate.postForObject(url, request, Map.class);
+    Map response;
+    try {
+      response = outboundHttpClients.restTemplate("google-oauth").postForObject(url, request, Map.class);
+    } catch (HttpClientErrorException e) {
+      if ("invalid_grant".equals(errorCode(e))) {
+        throw new GoogleGrantRevokedException(e);
+      }
+      throw e;
+    }
 
     String newAccessToken = null;
     Integer expiresIn = null;
@@ -61,12 +283,61 @@ public class TokenRefreshService {
       }
     }
 
-    token.setAccessToken(newAccessToken);
-    if (expiresIn != null) {
-      token.setExpiresAt(Instant.now().plusSeconds(expiresIn));
+    return new RefreshedToken(newAccessToken,
+        expiresIn == null ? Instant.now().plus(DEFAULT_EXPIRES_IN) : Instant.now().plusSeconds(expiresIn));
+  }
+
+  /**
+   * The OAuth {@code error} field of a token endpoint error body, or null if the body is not one.
+   */
+  private static String errorCode(HttpClientErrorException e) {
+    try {
+      Map<?, ?> body = e.getResponseBodyAs(Map.class);
+      return body != null && body.get("error") instanceof String code ? code : null;
+    } catch (RuntimeException notJson) {
+      return null;
+    }
+  }
+
+  private static void apply(OAuthToken token, RefreshedToken refreshed) {
+    token.setAccessToken(refreshed.accessToken());
+    if (refreshed.expiresAt() != null) {
+      token.setExpiresAt(refreshed.expiresAt());
     }
-    tokenRepository.save(token);
+  }
 
+  private static RefreshedToken join(CompletableFuture<RefreshedToken> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw e.getCause() instanceof RuntimeException re ? re : e;
+    }
+  }
+
+  /**
+   * The user's Google token with at least a minute of validity left. Comes from
+   * {@link AccessTokenCache} when possible; otherwise it is read from {@code oauth_token} and
+   * refreshed if it is about to expire. A revoked grant is not refreshed; the user has to sign
+   * in again.
+   */
+  public OAuthToken validTokenFor(UUID userId) {
+    OAuthToken cached = accessTokenCache.get(userId, Instant.now().plus(FRESHNESS_MARGIN));
+    if (cached != null) {
+      return cached;
+    }
+
+    OAuthToken token = tokenRepository.findByUserIdAndProvider(userId, AuthProvider.GOOGLE)
+        .orElseThrow(() -> new RuntimeException("OAuth token not found"));
+    if (token.getRevokedAt() != null) {
+      throw new IllegalStateException("Google access was revoked for user " + userId + "; sign in again");
+    }
+    if (token.getExpiresAt() == null || token.getExpiresAt().isBefore(Instant.now().plus(FRESHNESS_MARGIN))) {
+      token = refreshToken(token);
+    }
+    accessTokenCache.put(userId, token);
     return token;
   }
 
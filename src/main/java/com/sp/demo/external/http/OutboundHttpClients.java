@@ -0,0 +1,229 @@
+package com.sp.demo.external.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * The outbound HTTP client for REST calls to Gemini, OpenAI and Google's token endpoint.
+ *
+ * <p>Each target ({@code gemini}, {@code openai}, {@code google-oauth}) gets its own JDK
+ * {@link HttpClient}, which keeps a keep-alive connection pool per host and negotiates HTTP/2
+ * via ALPN, falling back to HTTP/1.1. Timeouts come from
+ * {@code http.outbound.targets.<target>.*}, falling back to {@code http.outbound.defaults.*}:
+ * {@code connect-timeout-ms} bounds the TCP/TLS handshake and {@code read-timeout-ms} bounds the
+ * wait for response headers (a streamed body may take longer).
+ *
+ * <p>At most {@code max-in-flight} requests per target run at once, counted until the response
+ * is closed, so a streamed body holds its slot. A request that cannot get a slot within
+ * {@code acquire-timeout-ms} fails with {@link ResourceAccessException} instead of queueing
+ * behind a hung provider. Slot usage and waits are reported by {@link #stats()}.
+ */
+@Component
+public class OutboundHttpClients {
+
+  public record TargetStats(
+      String target,
+      String version,
+      long connectTimeoutMs,
+      long readTimeoutMs,
+      int maxInFlight,
+      int inFlight,
+      int peakInFlight,
+      long requests,
+      long waited,
+      long rejected,
+      long failures,
+      double saturation
+  ) {
+  }
+
+  private final Environment env;
+  private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+  public OutboundHttpClients(Environment env) {
+    this.env = env;
+  }
+
+  public RestTemplate restTemplate(String target) {
+    return targets.computeIfAbsent(target, this::create).restTemplate;
+  }
+
+  public List<TargetStats> stats() {
+    List<TargetStats> stats = new ArrayList<>(targets.size());
+    targets.values().forEach(t -> stats.add(t.stats()));
+    return stats;
+  }
+
+  private Target create(String name) {
+    long connectTimeoutMs = setting(name, "connect-timeout-ms", 5000L);
+    long readTimeoutMs = setting(name, "read-timeout-ms", 30000L);
+    int maxInFlight = setting(name, "max-in-flight", 50L).intValue();
+    long acquireTimeoutMs = setting(name, "acquire-timeout-ms", 2000L);
+    boolean http2 = env.getProperty("http.outbound.http2", Boolean.class, true);
+
+    HttpClient client = HttpClient.newBuilder()
+        .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .build();
+
+    JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(client);
+    factory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+
+    Target target = new Target(name, client.version().name(), connectTimeoutMs, readTimeoutMs,
+        maxInFlight, acquireTimeoutMs);
+    RestTemplate restTemplate = new RestTemplate(factory);
+    restTemplate.getInterceptors().add(target);
+    target.restTemplate = restTemplate;
+    return target;
+  }
+
+  private Long setting(String target, String key, long fallback) {
+    Long value = env.getProperty("http.outbound.targets." + target + "." + key, Long.class);
+    return value != null ? value : env.getProperty("http.outbound.defaults." + key, Long.class, fallback);
+  }
+
+  /**
+   * Per-target slot accounting; the slot is released when the response is closed.
+   */
+  private static final class Target implements ClientHttpRequestInterceptor {
+
+    final String name;
+    final String version;
+    final long connectTimeoutMs;
+    final long readTimeoutMs;
+    final int maxInFlight;
+    final long acquireTimeoutMs;
+    final Semaphore slots;
+    RestTemplate restTemplate;
+
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger peakInFlight = new AtomicInteger();
+    final LongAdder requests = new LongAdder();
+    final LongAdder waited = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder failures = new LongAdder();
+
+    Target(String name, String version, long connectTimeoutMs, long readTimeoutMs, int maxInFlight,
+        long acquireTimeoutMs) {
+      this.name = name;
+      this.version = version;
+      this.connectTimeoutMs = connectTimeoutMs;
+      this.readTimeoutMs = readTimeoutMs;
+      this.maxInFlight = maxInFlight;
+      this.acquireTimeoutMs = acquireTimeoutMs;
+      this.slots = new Semaphore(maxInFlight);
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+        throws IOException {
+      requests.increment();
+      acquire();
+      int now = inFlight.incrementAndGet();
+      peakInFlight.accumulateAndGet(now, Math::max);
+      try {
+        return new SlotReleasingResponse(execution.execute(request, body), this);
+      } catch (IOException | RuntimeException e) {
+        failures.increment();
+        release();
+        throw e;
+      }
+    }
+
+    private void acquire() {
+      if (slots.tryAcquire()) {
+        return;
+      }
+      waited.increment();
+      try {
+        if (slots.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      rejected.increment();
+      throw new ResourceAccessException("Outbound HTTP to " + name + " is saturated ("
+          + maxInFlight + " requests in flight)");
+    }
+
+    void release() {
+      inFlight.decrementAndGet();
+      slots.release();
+    }
+
+    TargetStats stats() {
+      int current = inFlight.get();
+      return new TargetStats(name, version, connectTimeoutMs, readTimeoutMs, maxInFlight, current,
+          peakInFlight.get(), requests.sum(), waited.sum(), rejected.sum(), failures.sum(),
+          (double) current / maxInFlight);
+    }
+  }
+
+  private static final class SlotReleasingResponse implements ClientHttpResponse {
+
+    private final ClientHttpResponse delegate;
+    private final Target target;
+    private boolean closed;
+
+    SlotReleasingResponse(ClientHttpResponse delegate, Target target) {
+      this.delegate = delegate;
+      this.target = target;
+    }
+
+    @Override
+    public HttpStatusCode getStatusCode() throws IOException {
+      return delegate.getStatusCode();
+    }
+
+    @Override
+    public String getStatusText() throws IOException {
+      return delegate.getStatusText();
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+      return delegate.getHeaders();
+    }
+
+    @Override
+    public InputStream getBody() throws IOException {
+      return delegate.getBody();
+    }
+
+    @Override
+    public synchronized void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      try {
+        delegate.close();
+      } finally {
+        target.release();
+      }
+    }
+  }
+}
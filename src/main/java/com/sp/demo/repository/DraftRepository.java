@@ -2,10 +2,15 @@ package com.sp.demo.repository;
 
 import com.sp.demo.domain.entity.Draft;
 import com.sp.demo.domain.enums.DraftStatus;
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface DraftRepository extends JpaRepository<Draft, UUID> {
@@ -15,4 +20,25 @@ public interface DraftRepository extends JpaRepository<Draft, UUID> {
   List<Draft> findTop50ByUserIdOrderByCreatedAtDesc(UUID userId);
 
   List<Draft> findTop50ByUserIdAndStatusInOrderByCreatedAtDesc(UUID userId, List<DraftStatus> statuses);
+
+  List<Draft> findByVariantGroupIdOrderByCreatedAtAsc(UUID variantGroupId);
+
+  /**
+   * Fails drafts left in GENERATING by a restart or a lost worker, writing the
+   * GENERATION_FAILED log entry for each in the same statement. Returns the number failed.
+   */
+  @Modifying
+  @Transactional
+  @Query(value = """
+      WITH failed AS (
+        UPDATE draft
+        SET status = 'GENERATION_FAILED', last_error = :error, updated_at = now()
+        WHERE status = 'GENERATING'
+          AND created_at < :before
+        RETURNING id
+      )
+      INSERT INTO draft_log (draft_id, actor, action, meta)
+      SELECT id, 'SYSTEM', 'GENERATION_FAILED', CAST('{}' AS jsonb) FROM failed
+      """, nativeQuery = true)
+  int failStaleGenerations(@Param("before") Instant before, @Param("error") String error);
 }
@@ -1,10 +1,14 @@
 package com.sp.demo.repository;
 
 import com.sp.demo.domain.entity.GmailEmail;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -13,4 +17,44 @@ public interface GmailEmailRepository extends JpaRepository<GmailEmail, UUID> {
   Optional<GmailEmail> findByUserIdAndGmailMessageId(UUID userId, String gmailMessageId);
 
   List<GmailEmail> findTop50ByUserIdOrderByReceivedAtDesc(UUID userId);
+
+  List<GmailEmail> findByUserIdAndGmailMessageIdIn(UUID userId, Collection<String> gmailMessageIds);
+
+  @Modifying
+  int deleteByUserIdAndGmailMessageIdIn(UUID userId, Collection<String> gmailMessageIds);
+
+  @Query(value = """
+      SELECT * FROM gmail_email
+      WHERE user_id = :userId
+        AND label_ids @> ARRAY['INBOX', 'UNREAD']::text[]
+      ORDER BY received_at DESC
+      LIMIT :limit
+      """, nativeQuery = true)
+  List<GmailEmail> findUnreadInbox(@Param("userId") UUID userId, @Param("limit") int limit);
+
+  @Query(value = """
+      SELECT gmail_message_id FROM gmail_email
+      WHERE user_id = :userId
+        AND label_ids @> ARRAY['UNREAD']::text[]
+      """, nativeQuery = true)
+  List<String> findUnreadMessageIds(@Param("userId") UUID userId);
+
+  /**
+   * Unread inbox emails with no draft in progress or done; rejected and failed generations
+   * do not count.
+   */
+  @Query(value = """
+      SELECT e.* FROM gmail_email e
+      WHERE e.user_id = :userId
+        AND e.label_ids @> ARRAY['INBOX', 'UNREAD']::text[]
+        AND NOT EXISTS (
+          SELECT 1 FROM draft d
+          WHERE d.user_id = e.user_id
+            AND d.gmail_message_id = e.gmail_message_id
+            AND d.status NOT IN ('REJECTED', 'GENERATION_FAILED')
+        )
+      ORDER BY e.received_at DESC
+      LIMIT :limit
+      """, nativeQuery = true)
+  List<GmailEmail> findUnreadInboxWithoutDraft(@Param("userId") UUID userId, @Param("limit") int limit);
 }
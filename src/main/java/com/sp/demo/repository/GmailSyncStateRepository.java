@@ -0,0 +1,10 @@
+package com.sp.demo.repository;
+
+import com.sp.demo.domain.entity.GmailSyncState;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface GmailSyncStateRepository extends JpaRepository<GmailSyncState, UUID> {
+}
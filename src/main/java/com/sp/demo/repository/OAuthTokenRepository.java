@@ -2,13 +2,39 @@ package com.sp.demo.repository;
 
 import com.sp.demo.domain.entity.OAuthToken;
 import com.sp.demo.domain.enums.AuthProvider;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface OAuthTokenRepository extends JpaRepository<OAuthToken, UUID> {
 
   Optional<OAuthToken> findByUserIdAndProvider(UUID userId, AuthProvider provider);
+
+  /**
+   * Unrevoked Google tokens expiring before {@code before}, users with drafts still to be
+   * reviewed or sent first, then soonest expiry first. Rows without {@code expires_at} come back
+   * only until their first refresh, which always stores an expiry. Rows another node is
+   * refreshing right now are left out.
+   */
+  @Query(value = """
+      SELECT t.* FROM oauth_token t
+      WHERE t.provider = 'GOOGLE'
+        AND t.revoked_at IS NULL
+        AND (t.refresh_lease_until IS NULL OR t.refresh_lease_until < now())
+        AND (t.expires_at IS NULL OR t.expires_at < :before)
+      ORDER BY EXISTS (
+          SELECT 1 FROM draft d
+          WHERE d.user_id = t.user_id
+            AND d.status IN ('PENDING', 'EDITED', 'APPROVED', 'FAILED')
+        ) DESC,
+        t.expires_at NULLS FIRST
+      LIMIT :limit
+      """, nativeQuery = true)
+  List<OAuthToken> findRefreshCandidates(@Param("before") Instant before, @Param("limit") int limit);
 }
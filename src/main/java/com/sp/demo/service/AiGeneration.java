@@ -0,0 +1,41 @@
+package com.sp.demo.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A generated reply plus how it was produced, as stored on the draft and in its GENERATED log.
+ *
+ * @param route {@code primary}, {@code failover} (primary failed first), {@code hedge} (the
+ *     hedged request won) or {@code cache}
+ * @param hedged a second provider was asked while the first was still running
+ * @param latencyMs time spent in provider calls; 0 for cache hits
+ */
+public record AiGeneration(
+    String text,
+    String provider,
+    String model,
+    String route,
+    boolean hedged,
+    long latencyMs
+) {
+
+  public static final String PRIMARY = "primary";
+  public static final String FAILOVER = "failover";
+  public static final String HEDGE = "hedge";
+  public static final String CACHE = "cache";
+
+  public AiGeneration withText(String text) {
+    return new AiGeneration(text, provider, model, route, hedged, latencyMs);
+  }
+
+  public Map<String, Object> meta() {
+    Map<String, Object> meta = new LinkedHashMap<>();
+    meta.put("provider", provider);
+    meta.put("model", model);
+    meta.put("route", route);
+    meta.put("hedged", hedged);
+    meta.put("latencyMs", latencyMs);
+    return meta;
+  }
+}
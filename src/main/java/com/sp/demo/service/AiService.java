@@ -1,5 +1,77 @@
 package com.sp.demo.service;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
 public interface AiService {
   String generateReply(String emailContent, String tone);
+
+  /**
+   * Like {@link #generateReply}, but hands each piece of text to {@code onToken} as the provider
+   * produces it. Returns the full reply. Providers without a streaming API emit the whole
+   * reply as one piece.
+   */
+  default String streamReply(String emailContent, String tone, Consumer<String> onToken) {
+    String reply = generateReply(emailContent, tone);
+    onToken.accept(reply);
+    return reply;
+  }
+
+  /**
+   * {@link #generateReply} with the routing details the draft records.
+   *
+   * @param regenerate ask for a fresh reply even if an identical request was answered before
+   */
+  default AiGeneration generate(String emailContent, String tone, boolean regenerate) {
+    long startedAt = System.nanoTime();
+    String reply = generateReply(emailContent, tone);
+    return new AiGeneration(reply, provider(), model(), AiGeneration.PRIMARY, false,
+        (System.nanoTime() - startedAt) / 1_000_000);
+  }
+
+  default AiGeneration stream(String emailContent, String tone, boolean regenerate, Consumer<String> onToken) {
+    long startedAt = System.nanoTime();
+    String reply = streamReply(emailContent, tone, onToken);
+    return new AiGeneration(reply, provider(), model(), AiGeneration.PRIMARY, false,
+        (System.nanoTime() - startedAt) / 1_000_000);
+  }
+
+  /**
+   * One reply per tone, keyed by tone in {@code tones} order. Providers answer all tones in a
+   * single round trip; this default makes one {@link #generateReply} call per tone.
+   */
+  default Map<String, String> generateReplies(String emailContent, List<String> tones) {
+    Map<String, String> replies = new LinkedHashMap<>();
+    for (String tone : tones) {
+      replies.put(tone, generateReply(emailContent, tone));
+    }
+    return replies;
+  }
+
+  /**
+   * {@link #generateReplies} with the routing details each variant's draft records. Variants
+   * from one provider call share its provider, route and latency.
+   */
+  default Map<String, AiGeneration> generateVariants(String emailContent, List<String> tones, boolean regenerate) {
+    long startedAt = System.nanoTime();
+    Map<String, String> replies = generateReplies(emailContent, tones);
+    long latencyMs = (System.nanoTime() - startedAt) / 1_000_000;
+
+    Map<String, AiGeneration> variants = new LinkedHashMap<>();
+    replies.forEach((tone, reply) -> variants.put(tone,
+        new AiGeneration(reply, provider(), model(), AiGeneration.PRIMARY, false, latencyMs)));
+    return variants;
+  }
+
+  /** Short provider name used in routing config, metrics and the reply cache key. */
+  default String provider() {
+    return getClass().getSimpleName();
+  }
+
+  /** Model identifier sent to the provider; part of the reply cache key. */
+  default String model() {
+    return getClass().getSimpleName();
+  }
 }
@@ -1,41 +1,619 @@
 package com.sp.demo.service;
 
+import com.sp.demo.service.compaction.PromptCompactor;
+import com.sp.demo.service.llm.LlmSafetyBlockedException;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+/**
+ * Routes each generation to Gemini or OpenAI. The email is compacted by {@link PromptCompactor}
+ * first, then looked up in {@link ReplyCache}, so inputs that differ only in quoted history or
+ * footers share a cache entry.
+ *
+ * <p>The primary provider is picked at random by {@code ai.routing.<provider>.weight} among
+ * providers whose circuit breaker is not open; without explicit weights {@code ai.provider}
+ * gets all the traffic and the other provider is only a fallback. Each call is bounded by
+ * {@code ai.routing.<provider>.timeout-ms}. When the primary fails or times out, the other
+ * provider is tried once. With {@code ai.routing.hedge.enabled}, a second request goes to the
+ * other provider once the primary has run past its p95 latency; the first answer wins and the
+ * loser is cancelled. Streams fail over only before their first token and are never hedged;
+ * a stream that sends nothing for {@code ai.routing.stream.idle-timeout-ms} is cancelled and
+ * counted as a timeout.
+ * A half-open provider's single probe is claimed right before that provider is called, never
+ * for a cache hit or an unused fallback.
+ */
+@Slf4j
 @Service
 @Primary
 public class AiServiceRouter implements AiService {
 
-  private final ObjectProvider<GeminiService> geminiService;
-  private final ObjectProvider<OpenAiService> openAiService;
-  private final String provider;
+  public record ProviderStats(
+      String provider,
+      String model,
+      double weight,
+      long timeoutMs,
+      String breaker,
+      int samples,
+      long p50Ms,
+      long p95Ms,
+      double errorRate,
+      long calls,
+      long failures,
+      long timeouts,
+      long hedgesStarted,
+      long hedgesWon,
+      long failovers
+  ) {
+  }
+
+  private static final class Route {
+    final String name;
+    final AiService service;
+    final double weight;
+    final long timeoutMs;
+    final ProviderHealth health;
+    final LongAdder calls = new LongAdder();
+    final LongAdder failures = new LongAdder();
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder hedgesStarted = new LongAdder();
+    final LongAdder hedgesWon = new LongAdder();
+    final LongAdder failovers = new LongAdder();
+
+    Route(String name, AiService service, double weight, long timeoutMs, ProviderHealth health) {
+      this.name = name;
+      this.service = service;
+      this.weight = weight;
+      this.timeoutMs = timeoutMs;
+      this.health = health;
+    }
+  }
+
+  private record Outcome(Route route, String text, RuntimeException error, long latencyMs) {
+  }
+
+  private final ReplyCache replyCache;
+  private final PromptCompactor promptCompactor;
+  private final List<Route> routes = new ArrayList<>(2);
+  private final boolean hedgeEnabled;
+  private final long hedgeMinDelayMs;
+  private final long streamIdleTimeoutMs;
+  private final ExecutorService calls = Executors.newCachedThreadPool(new CustomizableThreadFactory("ai-call-"));
 
   public AiServiceRouter(
       ObjectProvider<GeminiService> geminiService,
       ObjectProvider<OpenAiService> openAiService,
-      @Value("${ai.provider:gemini}") String provider) {
-    this.geminiService = geminiService;
-    this.openAiService = openAiService;
-    this.provider = provider;
+      ReplyCache replyCache,
+      PromptCompactor promptCompactor,
+      @Value("${ai.provider:gemini}") String provider,
+      @Value("${ai.routing.gemini.weight:-1}") double geminiWeight,
+      @Value("${ai.routing.gemini.timeout-ms:30000}") long geminiTimeoutMs,
+      @Value("${ai.routing.openai.weight:-1}") double openAiWeight,
+      @Value("${ai.routing.openai.timeout-ms:30000}") long openAiTimeoutMs,
+      @Value("${ai.routing.hedge.enabled:false}") boolean hedgeEnabled,
+      @Value("${ai.routing.hedge.min-delay-ms:500}") long hedgeMinDelayMs,
+      @Value("${ai.routing.window-size:200}") int windowSize,
+      @Value("${ai.routing.breaker.failure-threshold:5}") int failureThreshold,
+      @Value("${ai.routing.breaker.min-samples:20}") int minSamples,
+      @Value("${ai.routing.breaker.open-ms:30000}") long openMs,
+      @Value("${ai.routing.stream.idle-timeout-ms:15000}") long streamIdleTimeoutMs) {
+    this.replyCache = replyCache;
+    this.promptCompactor = promptCompactor;
+    this.hedgeEnabled = hedgeEnabled;
+    this.hedgeMinDelayMs = hedgeMinDelayMs;
+    this.streamIdleTimeoutMs = streamIdleTimeoutMs;
+
+    GeminiService gemini = geminiService.getIfAvailable();
+    if (gemini != null) {
+      routes.add(new Route("gemini", gemini, weight(geminiWeight, "gemini", provider), geminiTimeoutMs,
+          new ProviderHealth(windowSize, failureThreshold, minSamples, openMs)));
+    }
+    OpenAiService openAi = openAiService.getIfAvailable();
+    if (openAi != null) {
+      routes.add(new Route("openai", openAi, weight(openAiWeight, "openai", provider), openAiTimeoutMs,
+          new ProviderHealth(windowSize, failureThreshold, minSamples, openMs)));
+    }
   }
 
   @Override
   public String generateReply(String emailContent, String tone) {
-    if ("openai".equalsIgnoreCase(provider)) {
-      OpenAiService svc = openAiService.getIfAvailable();
-      if (svc == null) {
-        throw new IllegalStateException("OpenAI provider selected but OpenAiService bean is not available");
+    return generate(emailContent, tone, false).text();
+  }
+
+  @Override
+  public String streamReply(String emailContent, String tone, Consumer<String> onToken) {
+    return stream(emailContent, tone, false, onToken).text();
+  }
+
+  @Override
+  public AiGeneration generate(String emailContent, String tone, boolean regenerate) {
+    String content = promptCompactor.compact(emailContent).text();
+    List<Route> order = order();
+    AiGeneration hit = cached(order, content, tone, regenerate);
+    if (hit != null) {
+      return hit;
+    }
+    return store(content, tone, call(order, content, tone));
+  }
+
+  /**
+   * A cached reply is emitted as a single piece, so time to first token is a cache lookup.
+   */
+  @Override
+  public AiGeneration stream(String emailContent, String tone, boolean regenerate, Consumer<String> onToken) {
+    String content = promptCompactor.compact(emailContent).text();
+    List<Route> order = order();
+    AiGeneration hit = cached(order, content, tone, regenerate);
+    if (hit != null) {
+      onToken.accept(hit.text());
+      return hit;
+    }
+    return store(content, tone, callStreaming(order, content, tone, onToken));
+  }
+
+  /**
+   * Tones already in {@link ReplyCache} are served from it; the rest go to one provider in a
+   * single call, with failover but no hedging (a duplicate multi-tone call costs as much as all
+   * the tones). Each variant is cached under its own tone, so a later single-tone request for the
+   * same email can reuse it.
+   */
+  @Override
+  public Map<String, AiGeneration> generateVariants(String emailContent, List<String> tones, boolean regenerate) {
+    String content = promptCompactor.compact(emailContent).text();
+    List<Route> order = order();
+
+    Map<String, AiGeneration> cachedVariants = new HashMap<>();
+    List<String> missing = new ArrayList<>(tones.size());
+    for (String tone : tones) {
+      AiGeneration hit = cached(order, content, tone, regenerate);
+      if (hit != null) {
+        cachedVariants.put(tone, hit);
+      } else {
+        missing.add(tone);
+      }
+    }
+
+    Map<String, AiGeneration> generated = missing.isEmpty() ? Map.of() : callVariants(order, content, missing);
+    Map<String, AiGeneration> variants = new LinkedHashMap<>();
+    for (String tone : tones) {
+      AiGeneration hit = cachedVariants.get(tone);
+      variants.put(tone, hit != null ? hit : store(content, tone, generated.get(tone)));
+    }
+    return variants;
+  }
+
+  @Override
+  public String model() {
+    return order().get(0).service.model();
+  }
+
+  public List<ProviderStats> stats() {
+    List<ProviderStats> stats = new ArrayList<>(routes.size());
+    for (Route r : routes) {
+      stats.add(new ProviderStats(r.name, r.service.model(), r.weight, r.timeoutMs, r.health.state().name(),
+          r.health.samples(), r.health.percentile(0.50), r.health.percentile(0.95), r.health.errorRate(),
+          r.calls.sum(), r.failures.sum(), r.timeouts.sum(), r.hedgesStarted.sum(), r.hedgesWon.sum(),
+          r.failovers.sum()));
+    }
+    return stats;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    calls.shutdownNow();
+  }
+
+  /**
+   * Providers to try, primary first. Open breakers and zero weights only lose the primary slot;
+   * such providers still serve as the fallback. A half-open provider is included while its probe
+   * is free; the caller claims it with {@link #claim} only when it actually calls the provider.
+   */
+  private List<Route> order() {
+    if (routes.isEmpty()) {
+      throw new IllegalStateException("No AI provider bean is available");
+    }
+
+    List<Route> admitted = new ArrayList<>(routes.size());
+    for (Route r : routes) {
+      if (r.health.allowsRequests()) {
+        admitted.add(r);
+      }
+    }
+    if (admitted.isEmpty()) {
+      throw unavailable();
+    }
+
+    List<Route> eligible = new ArrayList<>(admitted.size());
+    double total = 0;
+    for (Route r : admitted) {
+      if (r.weight > 0) {
+        eligible.add(r);
+        total += r.weight;
       }
-      return svc.generateReply(emailContent, tone);
     }
 
-    GeminiService svc = geminiService.getIfAvailable();
-    if (svc == null) {
-      throw new IllegalStateException("Gemini provider selected but GeminiService bean is not available");
+    Route primary = admitted.get(0);
+    double pick = ThreadLocalRandom.current().nextDouble() * total;
+    for (Route r : eligible) {
+      pick -= r.weight;
+      if (pick < 0) {
+        primary = r;
+        break;
+      }
+    }
+
+    List<Route> order = new ArrayList<>(admitted.size());
+    order.add(primary);
+    for (Route r : admitted) {
+      if (r != primary) {
+        order.add(r);
+      }
+    }
+    return order;
+  }
+
+  private AiGeneration cached(List<Route> order, String content, String tone, boolean regenerate) {
+    if (!replyCache.enabled()) {
+      return null;
+    }
+    if (regenerate) {
+      replyCache.recordBypass();
+      return null;
+    }
+    // any provider's answer will do; the primary's is checked first, all in one lookup
+    List<String> keys = new ArrayList<>(order.size());
+    for (Route r : order) {
+      keys.add(ReplyCache.key(r.name, r.service.model(), content, tone));
+    }
+    ReplyCache.Hit hit = replyCache.get(keys);
+    if (hit == null) {
+      return null;
+    }
+    Route r = order.get(keys.indexOf(hit.key()));
+    return new AiGeneration(hit.reply(), r.name, r.service.model(), AiGeneration.CACHE, false, 0);
+  }
+
+  private AiGeneration store(String content, String tone, AiGeneration generation) {
+    if (replyCache.enabled()) {
+      replyCache.put(ReplyCache.key(generation.provider(), generation.model(), content, tone),
+          generation.provider(), generation.model(), generation.text(), generation.latencyMs());
+    }
+    return generation;
+  }
+
+  private AiGeneration call(List<Route> order, String content, String tone) {
+    Route primary = null;
+    Route backup = null;
+    for (Route r : order) {
+      if (primary == null) {
+        primary = claim(r) ? r : null;
+      } else {
+        backup = r;
+        break;
+      }
+    }
+    if (primary == null) {
+      throw unavailable();
+    }
+    long p95 = primary.health.percentile(0.95);
+    boolean hedge = hedgeEnabled && backup != null && p95 >= 0;
+
+    LinkedBlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+    Map<Route, Future<?>> running = new HashMap<>();
+    Map<Route, Long> deadlines = new HashMap<>();
+    long startedAt = System.nanoTime();
+    long hedgeAt = hedge ? startedAt + TimeUnit.MILLISECONDS.toNanos(Math.max(hedgeMinDelayMs, p95)) : Long.MAX_VALUE;
+    boolean hedged = false;
+    boolean failedOver = false;
+    RuntimeException lastError = null;
+
+    start(primary, content, tone, outcomes, running, deadlines);
+    try {
+      while (true) {
+        long wakeAt = hedged || failedOver || backup == null ? Long.MAX_VALUE : hedgeAt;
+        for (long deadline : deadlines.values()) {
+          wakeAt = Math.min(wakeAt, deadline);
+        }
+        Outcome outcome = outcomes.poll(Math.max(0, wakeAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+        if (outcome == null) {
+          long now = System.nanoTime();
+          if (backup != null && !hedged && !failedOver && now >= hedgeAt && !running.containsKey(backup)) {
+            if (claim(backup)) {
+              hedged = true;
+              backup.hedgesStarted.increment();
+              start(backup, content, tone, outcomes, running, deadlines);
+            } else {
+              // another caller holds the backup's probe; neither hedge nor fail over to it
+              backup = null;
+            }
+          }
+          for (Route r : new ArrayList<>(running.keySet())) {
+            if (now >= deadlines.get(r)) {
+              running.remove(r).cancel(true);
+              deadlines.remove(r);
+              r.timeouts.increment();
+              fail(r, r.timeoutMs, null);
+              lastError = new IllegalStateException(r.name + " did not answer within " + r.timeoutMs + " ms",
+                  new TimeoutException());
+            }
+          }
+        } else if (running.remove(outcome.route()) != null) {
+          deadlines.remove(outcome.route());
+          if (outcome.error() == null) {
+            outcome.route().health.recordSuccess(outcome.latencyMs());
+            abandon(running);
+            return new AiGeneration(outcome.text(), outcome.route().name, outcome.route().service.model(),
+                routeName(outcome.route(), primary, hedged), hedged, (System.nanoTime() - startedAt) / 1_000_000);
+          }
+          fail(outcome.route(), outcome.latencyMs(), outcome.error());
+          lastError = outcome.error();
+        }
+
+        if (running.isEmpty()) {
+          if (backup == null || hedged || failedOver || !claim(backup)) {
+            throw lastError;
+          }
+          failedOver = true;
+          backup.failovers.increment();
+          log.warn("AI provider {} failed, failing over to {}: {}", primary.name, backup.name,
+              lastError.getMessage());
+          start(backup, content, tone, outcomes, running, deadlines);
+        }
+      }
+    } catch (InterruptedException e) {
+      abandon(running);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the AI provider", e);
+    }
+  }
+
+  private void start(Route route, String content, String tone, LinkedBlockingQueue<Outcome> outcomes,
+      Map<Route, Future<?>> running, Map<Route, Long> deadlines) {
+    route.calls.increment();
+    deadlines.put(route, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(route.timeoutMs));
+    running.put(route, calls.submit(() -> {
+      long startedAt = System.nanoTime();
+      try {
+        String text = route.service.generateReply(content, tone);
+        outcomes.add(new Outcome(route, text, null, (System.nanoTime() - startedAt) / 1_000_000));
+      } catch (RuntimeException e) {
+        outcomes.add(new Outcome(route, null, e, (System.nanoTime() - startedAt) / 1_000_000));
+      }
+    }));
+  }
+
+  private AiGeneration callStreaming(List<Route> order, String content, String tone, Consumer<String> onToken) {
+    long startedAt = System.nanoTime();
+    RuntimeException lastError = null;
+    int attempts = 0;
+    for (Route route : order) {
+      if (attempts == 2) {
+        break;
+      }
+      if (!claim(route)) {
+        continue;
+      }
+      boolean failover = attempts++ > 0;
+      long attemptStartedAt = System.nanoTime();
+      route.calls.increment();
+      if (failover) {
+        route.failovers.increment();
+      }
+      IdleWatch watch = new IdleWatch(onToken);
+      Future<String> future = calls.submit(() -> route.service.streamReply(content, tone, watch));
+      try {
+        String text = awaitStream(future, watch);
+        route.health.recordSuccess((System.nanoTime() - attemptStartedAt) / 1_000_000);
+        return new AiGeneration(text, route.name, route.service.model(),
+            failover ? AiGeneration.FAILOVER : AiGeneration.PRIMARY, false,
+            (System.nanoTime() - startedAt) / 1_000_000);
+      } catch (TimeoutException e) {
+        route.timeouts.increment();
+        fail(route, (System.nanoTime() - attemptStartedAt) / 1_000_000, null);
+        lastError = new IllegalStateException(route.name + " sent nothing for " + streamIdleTimeoutMs + " ms", e);
+      } catch (ExecutionException e) {
+        lastError = e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        fail(route, (System.nanoTime() - attemptStartedAt) / 1_000_000, lastError);
+      } catch (InterruptedException e) {
+        watch.close();
+        future.cancel(true);
+        route.health.release();
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the AI provider", e);
+      }
+      if (watch.emitted()) {
+        // the client already has part of this reply; switching providers would garble it
+        throw lastError;
+      }
+    }
+    throw lastError != null ? lastError : unavailable();
+  }
+
+  /**
+   * Waits for the stream while chunks keep coming. When none arrives within the idle timeout, the
+   * stream is cut off from the caller first, so a late chunk cannot follow a failover, then
+   * cancelled.
+   */
+  private String awaitStream(Future<String> future, IdleWatch watch)
+      throws TimeoutException, ExecutionException, InterruptedException {
+    long idleNanos = TimeUnit.MILLISECONDS.toNanos(streamIdleTimeoutMs);
+    while (true) {
+      long wait = watch.lastChunkAt() + idleNanos - System.nanoTime();
+      try {
+        return future.get(Math.max(0, wait), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        if (System.nanoTime() - watch.lastChunkAt() >= idleNanos) {
+          watch.close();
+          future.cancel(true);
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Passes a stream's chunks on and notes when the last one arrived. Once closed, later chunks
+   * are dropped.
+   */
+  private static final class IdleWatch implements Consumer<String> {
+    private final Consumer<String> onToken;
+    private volatile long lastChunkAt = System.nanoTime();
+    private boolean emitted;
+    private boolean closed;
+
+    IdleWatch(Consumer<String> onToken) {
+      this.onToken = onToken;
+    }
+
+    @Override
+    public synchronized void accept(String token) {
+      if (closed) {
+        throw new CancellationException("The stream was abandoned");
+      }
+      lastChunkAt = System.nanoTime();
+      emitted = true;
+      onToken.accept(token);
+    }
+
+    long lastChunkAt() {
+      return lastChunkAt;
+    }
+
+    synchronized boolean emitted() {
+      return emitted;
+    }
+
+    synchronized void close() {
+      closed = true;
+    }
+  }
+
+  /**
+   * Primary, then at most one failover. The timeout is the provider's {@code timeout-ms} per
+   * tone, since the reply is that many times longer.
+   */
+  private Map<String, AiGeneration> callVariants(List<Route> order, String content, List<String> tones) {
+    long startedAt = System.nanoTime();
+    RuntimeException lastError = null;
+    Route tried = null;
+    for (Route route : order) {
+      long timeoutMs = route.timeoutMs * tones.size();
+      if (!route.health.tryAcquire(timeoutMs)) {
+        continue;
+      }
+      boolean failover = tried != null;
+      String routeName = failover ? AiGeneration.FAILOVER : AiGeneration.PRIMARY;
+      route.calls.increment();
+      if (failover) {
+        route.failovers.increment();
+        log.warn("AI provider {} failed, failing over to {}: {}", tried.name, route.name,
+            lastError.getMessage());
+      }
+
+      long attemptStartedAt = System.nanoTime();
+      Future<Map<String, String>> future = calls.submit(() -> route.service.generateReplies(content, tones));
+      try {
+        Map<String, String> replies = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        route.health.recordSuccess((System.nanoTime() - attemptStartedAt) / 1_000_000);
+
+        long latencyMs = (System.nanoTime() - startedAt) / 1_000_000;
+        Map<String, AiGeneration> variants = new LinkedHashMap<>();
+        replies.forEach((tone, text) -> variants.put(tone,
+            new AiGeneration(text, route.name, route.service.model(), routeName, false, latencyMs)));
+        return variants;
+      } catch (TimeoutException e) {
+        future.cancel(true);
+        route.timeouts.increment();
+        fail(route, timeoutMs, null);
+        lastError = new IllegalStateException(route.name + " did not answer within " + timeoutMs + " ms", e);
+      } catch (ExecutionException e) {
+        lastError = e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        fail(route, (System.nanoTime() - attemptStartedAt) / 1_000_000, lastError);
+      } catch (InterruptedException e) {
+        future.cancel(true);
+        route.health.release();
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the AI provider", e);
+      }
+      if (failover) {
+        break;
+      }
+      tried = route;
+    }
+    throw lastError != null ? lastError : unavailable();
+  }
+
+  /**
+   * Claims permission to call the route now; for a half-open provider, its single probe.
+   */
+  private static boolean claim(Route route) {
+    return route.health.tryAcquire(route.timeoutMs);
+  }
+
+  /**
+   * Cancels calls whose answer is no longer wanted. They never report, so a probe lease they hold
+   * is given back rather than left to expire.
+   */
+  private static void abandon(Map<Route, Future<?>> running) {
+    running.forEach((route, future) -> {
+      future.cancel(true);
+      route.health.release();
+    });
+  }
+
+  private static IllegalStateException unavailable() {
+    return new IllegalStateException("All AI providers are unavailable (circuit open)");
+  }
+
+  /**
+   * A safety block means the provider answered normally and refused the content, so it is
+   * counted as a failure for this call but does not push the breaker towards open.
+   */
+  private static void fail(Route route, long latencyMs, RuntimeException error) {
+    route.failures.increment();
+    if (error instanceof LlmSafetyBlockedException) {
+      route.health.recordSuccess(latencyMs);
+    } else {
+      route.health.recordFailure(latencyMs);
+    }
+  }
+
+  private static String routeName(Route winner, Route primary, boolean hedged) {
+    if (winner == primary) {
+      return AiGeneration.PRIMARY;
+    }
+    if (hedged) {
+      winner.hedgesWon.increment();
+      return AiGeneration.HEDGE;
+    }
+    return AiGeneration.FAILOVER;
+  }
+
+  private static double weight(double configured, String name, String provider) {
+    if (configured >= 0) {
+      return configured;
     }
-    return svc.generateReply(emailContent, tone);
+    return name.equalsIgnoreCase(provider) ? 1 : 0;
   }
 }
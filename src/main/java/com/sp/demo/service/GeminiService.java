@@ -1,63 +1,144 @@
 package com.sp.demo.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sp.demo.external.http.OutboundHttpClients;
+import com.sp.demo.service.llm.GeminiRequest;
+import com.sp.demo.service.llm.LlmReply;
+import com.sp.demo.service.llm.LlmResponseCodec;
+import com.sp.demo.service.llm.ToneVariantsPrompt;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
 @RequiredArgsConstructor
 public class GeminiService implements AiService {
 
+  private static final String BASE_URL = "https://generativelanguage.googleapis.com/v1/models/";
+
   @Value("${gemini.api-key}")
   private String apiKey;
 
-  private final RestTemplate restTemplate = new RestTemplate();
+  @Value("${gemini.model:gemini-2.5-flash}")
+  private String model;
+
+  private final OutboundHttpClients outboundHttpClients;
+  private final ObjectMapper objectMapper;
+  private final LlmResponseCodec codec;
+
+  @Override
+  public String provider() {
+    return LlmResponseCodec.GEMINI;
+  }
+
+  @Override
+  public String model() {
+    return model;
+  }
 
   @Override
   public String generateReply(String emailContent, String tone) {
 
-    String url = "https://generativelanguage.googleapis.com/v1/models/gemini-2.5-flash:generateContent?key=" + apiKey;
+    String url = BASE_URL + model + ":generateContent?key=" + apiKey;
 
-    String prompt =
-        "Write a " + tone + " email reply to this email:\n\n"
-            + emailContent;
+    LlmReply reply = post(url, requestBody(emailContent, tone), MediaType.APPLICATION_JSON,
+        response -> codec.readGemini(response.getBody()));
+
+    return reply.text();
+  }
+
+  /**
+   * All tones in one {@code generateContent} call, in JSON mode with a schema that requires one
+   * string field per tone.
+   */
+  @Override
+  public Map<String, String> generateReplies(String emailContent, List<String> tones) {
+    if (tones.size() == 1) {
+      return Map.of(tones.get(0), generateReply(emailContent, tones.get(0)));
+    }
 
-    Map<String, Object> requestBody = Map.of(
-        "contents", List.of(
-            Map.of(
-                "parts", List.of(
-                    Map.of("text", prompt)
-                )
-            )
-        )
-    );
+    String url = BASE_URL + model + ":generateContent?key=" + apiKey;
 
-    HttpHeaders headers = new HttpHeaders();
-    headers.setContentType(MediaType.APPLICATION_JSON);
+    LlmReply reply = post(url, GeminiRequest.ofJsonPrompt(ToneVariantsPrompt.of(emailContent, tones), tones),
+        MediaType.APPLICATION_JSON, response -> codec.readGemini(response.getBody()));
 
-    HttpEntity<Map<String, Object>> request =
-        new HttpEntity<>(requestBody, headers);
+    return codec.readVariants(provider(), reply.text(), tones);
+  }
 
-    Map response =
-        restTemplate.postForObject(url, request, Map.class);
+  /**
+   * Uses {@code streamGenerateContent} with {@code alt=sse}: each event carries a partial
+   * {@code GenerateContentResponse} whose text parts are forwarded as they arrive.
+   */
+  @Override
+  public String streamReply(String emailContent, String tone, Consumer<String> onToken) {
+
+    String url = BASE_URL + model + ":streamGenerateContent?alt=sse&key=" + apiKey;
+
+    StringBuilder reply = new StringBuilder();
+    String[] finishReason = new String[1];
+    post(url, requestBody(emailContent, tone), MediaType.TEXT_EVENT_STREAM, response -> {
+      ServerSentEvents.forEachData(response.getBody(), data -> {
+        LlmReply chunk = codec.readGeminiChunk(data);
+        if (chunk.finishReason() != null) {
+          finishReason[0] = chunk.finishReason();
+        }
+        if (!chunk.text().isEmpty()) {
+          reply.append(chunk.text());
+          onToken.accept(chunk.text());
+        }
+      });
+      return null;
+    });
+
+    codec.requireText(provider(), reply.toString(), finishReason[0], null);
+    return reply.toString();
+  }
 
-    // Parse response
-    List candidates = (List) response.get("candidates");
-    Map first = (Map) candidates.get(0);
+  private GeminiRequest requestBody(String emailContent, String tone) {
+    String prompt =
+        "Write a " + tone + " email reply to this email:\n\n"
+            + emailContent;
 
-    Map content = (Map) first.get("content");
-    List parts = (List) content.get("parts");
+    return GeminiRequest.ofPrompt(prompt);
+  }
 
-    Map textPart = (Map) parts.get(0);
+  /**
+   * Error responses are turned into the codec's typed exceptions instead of
+   * {@link HttpStatusCodeException}.
+   */
+  private <T> T post(String url, Object requestBody, MediaType accept, ResponseExtractor<T> extractor) {
+    byte[] body;
+    try {
+      body = objectMapper.writeValueAsBytes(requestBody);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not serialize Gemini request", e);
+    }
+
+    try {
+      return restTemplate().execute(url, HttpMethod.POST,
+          request -> {
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            request.getHeaders().setAccept(List.of(accept));
+            request.getBody().write(body);
+          },
+          extractor);
+    } catch (HttpStatusCodeException e) {
+      throw codec.readError(provider(), e.getStatusCode().value(), e.getResponseBodyAsByteArray(),
+          e.getResponseHeaders());
+    }
+  }
 
-    return (String) textPart.get("text");
+  private RestTemplate restTemplate() {
+    return outboundHttpClients.restTemplate("gemini");
   }
 }
-
@@ -0,0 +1,144 @@
+package com.sp.demo.service;
+
+import com.sp.demo.domain.entity.GmailEmail;
+import com.sp.demo.domain.entity.GmailSyncState;
+import com.sp.demo.domain.entity.User;
+import com.sp.demo.external.gmail.GmailClient.GmailMessageDetails;
+import com.sp.demo.repository.GmailEmailRepository;
+import com.sp.demo.repository.GmailSyncStateRepository;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Writes to the {@code gmail_email} metadata cache and the per-user sync cursor.
+ */
+@Service
+@RequiredArgsConstructor
+public class GmailEmailCacheService {
+
+  private final GmailEmailRepository gmailEmailRepository;
+  private final GmailSyncStateRepository syncStateRepository;
+
+  /**
+   * Changes to apply to one user's cache in a single transaction.
+   *
+   * @param upserts messages to insert or refresh
+   * @param labelUpdates full label sets for messages already cached
+   * @param removals messages deleted from the mailbox
+   * @param noLongerUnread cached messages that dropped out of the unread listing
+   */
+  public record CacheDelta(
+      List<GmailMessageDetails> upserts,
+      Map<String, List<String>> labelUpdates,
+      Set<String> removals,
+      Set<String> noLongerUnread
+  ) {
+  }
+
+  public record CacheChanges(int added, int updated, int removed) {
+  }
+
+  @Transactional
+  public int upsert(User user, List<GmailMessageDetails> messages) {
+    return apply(user, new CacheDelta(messages, Map.of(), Set.of(), Set.of())).added();
+  }
+
+  /**
+   * Applies {@code delta} and, when {@code historyId} is given, advances the sync cursor in the
+   * same transaction so a crash can never skip changes.
+   */
+  @Transactional
+  public CacheChanges apply(User user, CacheDelta delta, BigInteger historyId, boolean fullSync) {
+    CacheChanges changes = apply(user, delta);
+
+    Instant now = Instant.now();
+    GmailSyncState state = syncStateRepository.findById(user.getId())
+        .orElseGet(() -> GmailSyncState.builder().user(user).build());
+    state.setHistoryId(historyId);
+    state.setLastSyncAt(now);
+    if (fullSync) {
+      state.setLastFullSyncAt(now);
+    }
+    syncStateRepository.save(state);
+
+    return changes;
+  }
+
+  private CacheChanges apply(User user, CacheDelta delta) {
+    int added = 0;
+    int updated = 0;
+    int removed = 0;
+
+    if (!delta.upserts().isEmpty()) {
+      Map<String, GmailEmail> existing = load(user, delta.upserts().stream()
+          .map(GmailMessageDetails::gmailMessageId)
+          .toList());
+
+      for (GmailMessageDetails m : delta.upserts()) {
+        GmailEmail email = existing.get(m.gmailMessageId());
+        if (email == null) {
+          email = GmailEmail.builder()
+              .user(user)
+              .gmailMessageId(m.gmailMessageId())
+              .build();
+          added++;
+        } else {
+          updated++;
+        }
+        email.setThreadId(m.threadId());
+        email.setFromAddress(m.from());
+        email.setSubject(m.subject());
+        email.setSnippet(m.snippet());
+        email.setLabelIds(m.labelIds().toArray(String[]::new));
+        email.setMessageIdHeader(m.messageIdHeader());
+        email.setReferencesHeader(m.referencesHeader());
+        email.setReceivedAt(m.receivedAt() != null ? m.receivedAt() : Instant.now());
+        if (m.bodyText() != null) {
+          email.setBodyText(m.bodyText());
+          email.setBodyFetchedAt(Instant.now());
+        }
+        gmailEmailRepository.save(email);
+      }
+    }
+
+    if (!delta.labelUpdates().isEmpty()) {
+      for (GmailEmail email : load(user, delta.labelUpdates().keySet()).values()) {
+        email.setLabelIds(delta.labelUpdates().get(email.getGmailMessageId()).toArray(String[]::new));
+        updated++;
+      }
+    }
+
+    if (!delta.noLongerUnread().isEmpty()) {
+      for (GmailEmail email : load(user, delta.noLongerUnread()).values()) {
+        if (email.getLabelIds() != null) {
+          email.setLabelIds(Arrays.stream(email.getLabelIds())
+              .filter(l -> !"UNREAD".equals(l))
+              .toArray(String[]::new));
+          updated++;
+        }
+      }
+    }
+
+    if (!delta.removals().isEmpty()) {
+      removed = gmailEmailRepository.deleteByUserIdAndGmailMessageIdIn(user.getId(), delta.removals());
+    }
+
+    return new CacheChanges(added, updated, removed);
+  }
+
+  private Map<String, GmailEmail> load(User user, Collection<String> gmailMessageIds) {
+    return gmailEmailRepository.findByUserIdAndGmailMessageIdIn(user.getId(), gmailMessageIds)
+        .stream()
+        .collect(Collectors.toMap(GmailEmail::getGmailMessageId, Function.identity()));
+  }
+}
@@ -0,0 +1,44 @@
+package com.sp.demo.service;
+
+import com.sp.demo.domain.entity.OAuthToken;
+import com.sp.demo.domain.entity.User;
+import com.sp.demo.external.gmail.GmailClient;
+import com.sp.demo.external.google.TokenRefreshService;
+import com.sp.demo.repository.GmailEmailRepository;
+import com.sp.demo.repository.UserRepository;
+import java.util.List;
+import java.util.UUID;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+/**
+ * Loads a message body from Gmail the first time it is needed and keeps it in
+ * {@code gmail_email.body_text}. Inbox listings never download bodies.
+ */
+@Service
+@RequiredArgsConstructor
+public class GmailMessageBodyService {
+
+  private final GmailClient gmailClient;
+  private final GmailEmailCacheService cacheService;
+  private final GmailEmailRepository gmailEmailRepository;
+  private final TokenRefreshService tokenRefreshService;
+  private final UserRepository userRepository;
+
+  public String loadBody(UUID userId, String gmailMessageId) throws Exception {
+    var cached = gmailEmailRepository.findByUserIdAndGmailMessageId(userId, gmailMessageId);
+    if (cached.isPresent() && cached.get().getBodyText() != null) {
+      return cached.get().getBodyText();
+    }
+
+    User user = userRepository.findById(userId)
+        .orElseThrow(() -> new RuntimeException("User not found"));
+
+    OAuthToken token = tokenRefreshService.validTokenFor(userId);
+
+    GmailClient.GmailMessageDetails details = gmailClient.getMessageDetails(token, gmailMessageId);
+    cacheService.upsert(user, List.of(details));
+
+    return details.bodyText();
+  }
+}
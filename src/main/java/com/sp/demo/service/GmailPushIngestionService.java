@@ -0,0 +1,190 @@
+package com.sp.demo.service;
+
+import com.sp.demo.domain.entity.GmailSyncState;
+import com.sp.demo.domain.entity.User;
+import com.sp.demo.repository.GmailSyncStateRepository;
+import com.sp.demo.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Turns Gmail push notifications into incremental syncs.
+ *
+ * <p>Notifications are coalesced per mailbox: a burst collapses into one pending entry holding the
+ * highest {@code historyId}. An entry is handed to the worker pool once the mailbox has been quiet
+ * for {@code gmail.push.debounce-ms}, or after {@code gmail.push.max-delay-ms} at the latest.
+ * The worker queue is bounded; when it is full, entries stay pending until the next drain.
+ */
+@Slf4j
+@Service
+public class GmailPushIngestionService {
+
+  private record Pending(BigInteger historyId, long firstSeenNanos, long lastSeenNanos, int notifications) {
+
+    Pending merge(Pending next) {
+      BigInteger maxHistoryId = historyId == null ? next.historyId
+          : next.historyId == null ? historyId : historyId.max(next.historyId);
+      return new Pending(maxHistoryId, Math.min(firstSeenNanos, next.firstSeenNanos),
+          Math.max(lastSeenNanos, next.lastSeenNanos), notifications + next.notifications);
+    }
+  }
+
+  public record IngestionStats(
+      int pendingMailboxes,
+      int queuedSyncs,
+      int activeSyncs,
+      long received,
+      long coalesced,
+      long syncsRun,
+      long syncsSkipped,
+      long syncsFailed
+  ) {
+  }
+
+  private final GmailSyncService gmailSyncService;
+  private final UserRepository userRepository;
+  private final GmailSyncStateRepository syncStateRepository;
+  private final long debounceNanos;
+  private final long maxDelayNanos;
+  private final ThreadPoolExecutor workers;
+
+  private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+  private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong syncsRun = new AtomicLong();
+  private final AtomicLong syncsSkipped = new AtomicLong();
+  private final AtomicLong syncsFailed = new AtomicLong();
+
+  public GmailPushIngestionService(GmailSyncService gmailSyncService,
+      UserRepository userRepository,
+      GmailSyncStateRepository syncStateRepository,
+      @Value("${gmail.push.debounce-ms:2000}") long debounceMs,
+      @Value("${gmail.push.max-delay-ms:10000}") long maxDelayMs,
+      @Value("${gmail.push.workers:4}") int workerCount,
+      @Value("${gmail.push.queue-capacity:1000}") int queueCapacity) {
+    this.gmailSyncService = gmailSyncService;
+    this.userRepository = userRepository;
+    this.syncStateRepository = syncStateRepository;
+    this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMs);
+    this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+    this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("gmail-push-"),
+        new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    workers.shutdown();
+  }
+
+  public void accept(String emailAddress, BigInteger historyId) {
+    if (emailAddress == null || emailAddress.isBlank()) {
+      throw new IllegalArgumentException("emailAddress is required");
+    }
+    received.incrementAndGet();
+
+    long now = System.nanoTime();
+    pending.merge(key(emailAddress), new Pending(historyId, now, now, 1), (current, next) -> {
+      coalesced.incrementAndGet();
+      return current.merge(next);
+    });
+  }
+
+  /**
+   * Hands every settled mailbox to the worker pool.
+   */
+  @Scheduled(fixedDelayString = "${gmail.push.drain-interval-ms:500}")
+  public void drain() {
+    long now = System.nanoTime();
+
+    Iterator<Map.Entry<String, Pending>> it = pending.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, Pending> entry = it.next();
+      String mailbox = entry.getKey();
+      Pending p = entry.getValue();
+
+      boolean quiet = now - p.lastSeenNanos() >= debounceNanos;
+      boolean overdue = now - p.firstSeenNanos() >= maxDelayNanos;
+      if (!quiet && !overdue) {
+        continue;
+      }
+      // one sync per mailbox at a time; anything arriving meanwhile waits for the next drain
+      if (!running.add(mailbox)) {
+        continue;
+      }
+      if (!pending.remove(mailbox, p)) {
+        running.remove(mailbox);
+        continue;
+      }
+
+      try {
+        workers.execute(() -> run(mailbox, p.historyId()));
+      } catch (RejectedExecutionException e) {
+        running.remove(mailbox);
+        pending.merge(mailbox, p, Pending::merge);
+        log.debug("Push work queue full, {} mailboxes still pending", pending.size());
+        return;
+      }
+    }
+  }
+
+  public IngestionStats stats() {
+    return new IngestionStats(
+        pending.size(),
+        workers.getQueue().size(),
+        workers.getActiveCount(),
+        received.get(),
+        coalesced.get(),
+        syncsRun.get(),
+        syncsSkipped.get(),
+        syncsFailed.get());
+  }
+
+  private void run(String mailbox, BigInteger historyId) {
+    try {
+      User user = userRepository.findByEmailIgnoreCase(mailbox).orElse(null);
+      if (user == null) {
+        syncsSkipped.incrementAndGet();
+        return;
+      }
+
+      // Gmail can deliver notifications late; skip when the cache is already past this point
+      BigInteger cursor = syncStateRepository.findById(user.getId())
+          .map(GmailSyncState::getHistoryId)
+          .orElse(null);
+      if (cursor != null && historyId != null && cursor.compareTo(historyId) >= 0) {
+        syncsSkipped.incrementAndGet();
+        return;
+      }
+
+      gmailSyncService.sync(user.getId());
+      syncsRun.incrementAndGet();
+    } catch (Exception e) {
+      syncsFailed.incrementAndGet();
+      log.warn("Push-triggered sync failed for {}: {}", mailbox, e.getMessage());
+    } finally {
+      running.remove(mailbox);
+    }
+  }
+
+  private String key(String emailAddress) {
+    return emailAddress.trim().toLowerCase(Locale.ROOT);
+  }
+}
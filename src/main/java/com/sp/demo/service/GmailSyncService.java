@@ -0,0 +1,165 @@
+package com.sp.demo.service;
+
+import com.sp.demo.domain.entity.GmailEmail;
+import com.sp.demo.domain.entity.GmailSyncState;
+import com.sp.demo.domain.entity.OAuthToken;
+import com.sp.demo.domain.entity.User;
+import com.sp.demo.external.gmail.GmailClient;
+import com.sp.demo.external.gmail.GmailClient.GmailHistoryChanges;
+import com.sp.demo.external.gmail.GmailClient.GmailMessageDetails;
+import com.sp.demo.external.gmail.GmailHistoryExpiredException;
+import com.sp.demo.external.google.TokenRefreshService;
+import com.sp.demo.repository.GmailEmailRepository;
+import com.sp.demo.repository.GmailSyncStateRepository;
+import com.sp.demo.repository.UserRepository;
+import com.sp.demo.service.GmailEmailCacheService.CacheChanges;
+import com.sp.demo.service.GmailEmailCacheService.CacheDelta;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps {@code gmail_email} in step with the mailbox using Gmail's history API.
+ * The first sync for a user (or one whose cursor has expired) lists unread inbox mail;
+ * every later sync only applies what changed since the stored {@code historyId}.
+ */
+@Slf4j
+@Service
+public class GmailSyncService {
+
+  private static final String UNREAD_INBOX_QUERY = "is:unread in:inbox";
+
+  public enum SyncMode {
+    FULL,
+    INCREMENTAL
+  }
+
+  public record SyncResult(SyncMode mode, int added, int updated, int removed, BigInteger historyId) {
+  }
+
+  private final GmailClient gmailClient;
+  private final GmailEmailCacheService cacheService;
+  private final GmailEmailRepository gmailEmailRepository;
+  private final GmailSyncStateRepository syncStateRepository;
+  private final TokenRefreshService tokenRefreshService;
+  private final UserRepository userRepository;
+  private final UnreadSnapshotCache unreadSnapshotCache;
+  private final int fullSyncMaxMessages;
+
+  private final Map<UUID, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+  public GmailSyncService(GmailClient gmailClient,
+      GmailEmailCacheService cacheService,
+      GmailEmailRepository gmailEmailRepository,
+      GmailSyncStateRepository syncStateRepository,
+      TokenRefreshService tokenRefreshService,
+      UserRepository userRepository,
+      UnreadSnapshotCache unreadSnapshotCache,
+      @Value("${gmail.sync.full-sync-max-messages:500}") int fullSyncMaxMessages) {
+    this.gmailClient = gmailClient;
+    this.cacheService = cacheService;
+    this.gmailEmailRepository = gmailEmailRepository;
+    this.syncStateRepository = syncStateRepository;
+    this.tokenRefreshService = tokenRefreshService;
+    this.userRepository = userRepository;
+    this.unreadSnapshotCache = unreadSnapshotCache;
+    this.fullSyncMaxMessages = fullSyncMaxMessages;
+  }
+
+  public SyncResult sync(UUID userId) throws Exception {
+    ReentrantLock lock = locks.computeIfAbsent(userId, id -> new ReentrantLock());
+    lock.lock();
+    try {
+      User user = userRepository.findById(userId)
+          .orElseThrow(() -> new RuntimeException("User not found"));
+
+      OAuthToken token = tokenRefreshService.validTokenFor(userId);
+
+      GmailSyncState state = syncStateRepository.findById(userId).orElse(null);
+      SyncResult result;
+      if (state == null) {
+        result = fullSync(user, token);
+      } else {
+        try {
+          result = incrementalSync(user, token, state.getHistoryId());
+        } catch (GmailHistoryExpiredException e) {
+          log.info("History cursor {} expired for user {}, running full resync", state.getHistoryId(), userId);
+          result = fullSync(user, token);
+        }
+      }
+
+      if (result.added() + result.updated() + result.removed() > 0) {
+        unreadSnapshotCache.invalidate(userId);
+      }
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private SyncResult fullSync(User user, OAuthToken token) throws Exception {
+    // read the cursor first so changes made while listing are picked up by the next incremental sync
+    BigInteger historyId = gmailClient.currentHistoryId(token);
+
+    List<String> ids = gmailClient.listMessageIds(token, UNREAD_INBOX_QUERY, fullSyncMaxMessages);
+    List<GmailMessageDetails> messages = gmailClient.getMessageMetadata(token, ids);
+
+    Set<String> noLongerUnread = new HashSet<>();
+    if (ids.size() < fullSyncMaxMessages) {
+      noLongerUnread.addAll(gmailEmailRepository.findUnreadMessageIds(user.getId()));
+      ids.forEach(noLongerUnread::remove);
+    }
+
+    CacheChanges changes = cacheService.apply(
+        user,
+        new CacheDelta(messages, Map.of(), Set.of(), noLongerUnread),
+        historyId,
+        true);
+
+    return new SyncResult(SyncMode.FULL, changes.added(), changes.updated(), changes.removed(), historyId);
+  }
+
+  private SyncResult incrementalSync(User user, OAuthToken token, BigInteger cursor) throws Exception {
+    GmailHistoryChanges changes = gmailClient.listHistory(token, cursor);
+
+    Set<String> cached = new HashSet<>();
+    if (!changes.labelsById().isEmpty()) {
+      gmailEmailRepository.findByUserIdAndGmailMessageIdIn(user.getId(), changes.labelsById().keySet())
+          .stream()
+          .map(GmailEmail::getGmailMessageId)
+          .forEach(cached::add);
+    }
+
+    List<String> toFetch = new ArrayList<>();
+    Map<String, List<String>> labelUpdates = new LinkedHashMap<>();
+    changes.labelsById().forEach((id, labels) -> {
+      if (cached.contains(id)) {
+        labelUpdates.put(id, labels);
+      } else if (labels.contains("INBOX")) {
+        // new inbox mail, or an uncached message moved into the inbox
+        toFetch.add(id);
+      }
+    });
+
+    List<GmailMessageDetails> messages = gmailClient.getMessageMetadata(token, toFetch);
+
+    CacheChanges applied = cacheService.apply(
+        user,
+        new CacheDelta(messages, labelUpdates, changes.deletedIds(), Set.of()),
+        changes.historyId(),
+        false);
+
+    return new SyncResult(SyncMode.INCREMENTAL,
+        applied.added(), applied.updated(), applied.removed(), changes.historyId());
+  }
+}
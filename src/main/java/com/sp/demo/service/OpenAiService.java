@@ -2,55 +2,141 @@ package com.sp.demo.service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sp.demo.external.http.OutboundHttpClients;
+import com.sp.demo.service.llm.LlmReply;
+import com.sp.demo.service.llm.LlmResponseCodec;
+import com.sp.demo.service.llm.OpenAiRequest;
+import com.sp.demo.service.llm.ToneVariantsPrompt;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
 @Service
 @RequiredArgsConstructor
 public class OpenAiService implements AiService {
 
+  @Value("${openai.url:https://api.openai.com/v1/chat/completions}")
+  private String url;
+
   @Value("${openai.api-key}")
   private String apiKey;
 
-  private final RestTemplate restTemplate = new RestTemplate();
+  @Value("${openai.model:gpt-4o-mini}")
+  private String model;
+
+  private final OutboundHttpClients outboundHttpClients;
+  private final ObjectMapper objectMapper;
+  private final LlmResponseCodec codec;
+
+  @Override
+  public String provider() {
+    return LlmResponseCodec.OPENAI;
+  }
+
+  @Override
+  public String model() {
+    return model;
+  }
 
   @Override
   public String generateReply(String emailContent, String tone) {
 
-    String url = "https://api.openai.com/v1/chat/completions";
+    LlmReply reply = post(requestBody(emailContent, tone, false), MediaType.APPLICATION_JSON,
+        response -> codec.readOpenAi(response.getBody()));
+
+    return reply.text();
+  }
+
+  /**
+   * All tones in one completion, with {@code response_format} {@code json_object}.
+   */
+  @Override
+  public Map<String, String> generateReplies(String emailContent, List<String> tones) {
+    if (tones.size() == 1) {
+      return Map.of(tones.get(0), generateReply(emailContent, tones.get(0)));
+    }
+
+    LlmReply reply = post(OpenAiRequest.ofJsonPrompt(model, ToneVariantsPrompt.of(emailContent, tones)),
+        MediaType.APPLICATION_JSON, response -> codec.readOpenAi(response.getBody()));
+
+    return codec.readVariants(provider(), reply.text(), tones);
+  }
+
+  /**
+   * Sends the same request with {@code "stream": true} and forwards each
+   * {@code choices[0].delta.content} chunk until the {@code [DONE]} sentinel.
+   */
+  @Override
+  public String streamReply(String emailContent, String tone, Consumer<String> onToken) {
 
-    HttpHeaders headers = new HttpHeaders();
-    headers.setBearerAuth(apiKey);
-    headers.setContentType(MediaType.APPLICATION_JSON);
+    StringBuilder reply = new StringBuilder();
+    String[] finishReason = new String[1];
+    post(requestBody(emailContent, tone, true), MediaType.TEXT_EVENT_STREAM, response -> {
+      ServerSentEvents.forEachData(response.getBody(), data -> {
+        if ("[DONE]".equals(data)) {
+          return;
+        }
+        LlmReply chunk = codec.readOpenAiChunk(data);
+        if (chunk.finishReason() != null) {
+          finishReason[0] = chunk.finishReason();
+        }
+        if (!chunk.text().isEmpty()) {
+          reply.append(chunk.text());
+          onToken.accept(chunk.text());
+        }
+      });
+      return null;
+    });
 
+    codec.requireText(provider(), reply.toString(), finishReason[0], null);
+    return reply.toString();
+  }
+
+  private OpenAiRequest requestBody(String emailContent, String tone, boolean stream) {
     String prompt =
         "Write a " + tone +
             " professional email reply to this email:\n\n"
             + emailContent;
 
-    Map<String, Object> requestBody =
-        Map.of(
-            "model", "gpt-4o-mini",
-            "messages", List.of(
-                Map.of("role", "user",
-                    "content", prompt)
-            )
-        );
-
-    HttpEntity<Map<String, Object>> request =
-        new HttpEntity<>(requestBody, headers);
+    return OpenAiRequest.ofPrompt(model, prompt, stream);
+  }
 
-    Map response =
-        restTemplate.postForObject(url, request, Map.class);
+  /**
+   * Error responses are turned into the codec's typed exceptions instead of
+   * {@link HttpStatusCodeException}.
+   */
+  private <T> T post(OpenAiRequest requestBody, MediaType accept, ResponseExtractor<T> extractor) {
+    byte[] body;
+    try {
+      body = objectMapper.writeValueAsBytes(requestBody);
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not serialize OpenAI request", e);
+    }
 
-    List choices = (List) response.get("choices");
-    Map firstChoice = (Map) choices.get(0);
-    Map message = (Map) firstChoice.get("message");
+    try {
+      return restTemplate().execute(url, HttpMethod.POST,
+          request -> {
+            request.getHeaders().setBearerAuth(apiKey);
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            request.getHeaders().setAccept(List.of(accept));
+            request.getBody().write(body);
+          },
+          extractor);
+    } catch (HttpStatusCodeException e) {
+      throw codec.readError(provider(), e.getStatusCode().value(), e.getResponseBodyAsByteArray(),
+          e.getResponseHeaders());
+    }
+  }
 
-    return (String) message.get("content");
+  private RestTemplate restTemplate() {
+    return outboundHttpClients.restTemplate("openai");
   }
 }
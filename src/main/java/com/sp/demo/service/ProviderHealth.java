@@ -0,0 +1,144 @@
+package com.sp.demo.service;
+
+import java.util.Arrays;
+
+/**
+ * Rolling latency window, error rate and circuit breaker for one AI provider.
+ *
+ * <p>The last {@code windowSize} calls are kept. The breaker opens after
+ * {@code failureThreshold} consecutive failures, or when at least half of a window with
+ * {@code minSamples} calls failed, and stays open for {@code openMillis}. After that it is
+ * half-open: one probe call is let through at a time, its success closes the breaker and its
+ * failure opens it again. Closing clears the window, so the failures that opened the breaker do
+ * not reopen it on the next error.
+ */
+final class ProviderHealth {
+
+  enum BreakerState { CLOSED, OPEN, HALF_OPEN }
+
+  private final long[] latencies;
+  private final boolean[] failed;
+  private final int failureThreshold;
+  private final int minSamples;
+  private final long openMillis;
+
+  private int next;
+  private int count;
+  private int failuresInWindow;
+  private int consecutiveFailures;
+  private long openUntilMillis;
+  private long probeUntilMillis;
+  private boolean open;
+
+  ProviderHealth(int windowSize, int failureThreshold, int minSamples, long openMillis) {
+    this.latencies = new long[windowSize];
+    this.failed = new boolean[windowSize];
+    this.failureThreshold = failureThreshold;
+    this.minSamples = minSamples;
+    this.openMillis = openMillis;
+  }
+
+  synchronized BreakerState state() {
+    if (!open) {
+      return BreakerState.CLOSED;
+    }
+    return System.currentTimeMillis() < openUntilMillis ? BreakerState.OPEN : BreakerState.HALF_OPEN;
+  }
+
+  /**
+   * Whether a call could go through now, without claiming the half-open probe.
+   */
+  synchronized boolean allowsRequests() {
+    return switch (state()) {
+      case CLOSED -> true;
+      case OPEN -> false;
+      case HALF_OPEN -> System.currentTimeMillis() >= probeUntilMillis;
+    };
+  }
+
+  /**
+   * Claims permission for one call. Half-open, only one caller gets it until the probe reports
+   * back or {@code leaseMillis} pass, so a probe that never reports cannot wedge the breaker.
+   */
+  synchronized boolean tryAcquire(long leaseMillis) {
+    if (!allowsRequests()) {
+      return false;
+    }
+    if (open) {
+      probeUntilMillis = System.currentTimeMillis() + leaseMillis;
+    }
+    return true;
+  }
+
+  /**
+   * Gives back a lease from {@link #tryAcquire} whose call was abandoned before it reported, such
+   * as a hedge cancelled because the other provider answered first.
+   */
+  synchronized void release() {
+    probeUntilMillis = 0;
+  }
+
+  synchronized void recordSuccess(long latencyMs) {
+    if (open) {
+      next = 0;
+      count = 0;
+      failuresInWindow = 0;
+    }
+    record(latencyMs, false);
+    consecutiveFailures = 0;
+    open = false;
+    probeUntilMillis = 0;
+  }
+
+  synchronized void recordFailure(long latencyMs) {
+    record(latencyMs, true);
+    consecutiveFailures++;
+    boolean halfOpen = open && System.currentTimeMillis() >= openUntilMillis;
+    if (halfOpen || consecutiveFailures >= failureThreshold
+        || (count >= minSamples && failuresInWindow * 2 >= count)) {
+      open = true;
+      openUntilMillis = System.currentTimeMillis() + openMillis;
+      probeUntilMillis = 0;
+    }
+  }
+
+  /**
+   * Latency percentile over successful calls in the window, or -1 with fewer than
+   * {@code minSamples} of them.
+   */
+  synchronized long percentile(double q) {
+    long[] ok = new long[count];
+    int n = 0;
+    for (int i = 0; i < count; i++) {
+      if (!failed[i]) {
+        ok[n++] = latencies[i];
+      }
+    }
+    if (n < minSamples) {
+      return -1;
+    }
+    Arrays.sort(ok, 0, n);
+    return ok[Math.min(n - 1, (int) Math.ceil(q * n) - 1)];
+  }
+
+  synchronized double errorRate() {
+    return count == 0 ? 0 : (double) failuresInWindow / count;
+  }
+
+  synchronized int samples() {
+    return count;
+  }
+
+  private void record(long latencyMs, boolean failure) {
+    if (count == latencies.length && failed[next]) {
+      failuresInWindow--;
+    }
+    latencies[next] = latencyMs;
+    failed[next] = failure;
+    if (failure) {
+      failuresInWindow++;
+    }
+    next = (next + 1) % latencies.length;
+    count = Math.min(count + 1, latencies.length);
+  }
+}
@@ -0,0 +1,271 @@
+package com.sp.demo.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Content-addressed cache of AI replies, in front of the provider call in {@link AiServiceRouter}.
+ *
+ * <p>The key is a SHA-256 of provider, model, tone and the email text after whitespace
+ * normalization, so the same notification or a repeated click maps to one entry. Entries live
+ * in an LRU of {@code ai.reply-cache.max-entries} for {@code ai.reply-cache.ttl-seconds}. With
+ * {@code ai.reply-cache.persistent} they are also written to {@code ai_reply_cache}, which
+ * survives restarts and is shared by every node; memory misses fall through to it. Database
+ * errors count as misses and never fail a generation.
+ */
+@Slf4j
+@Component
+public class ReplyCache {
+
+  public record CacheStats(
+      boolean enabled,
+      boolean persistent,
+      long memoryHits,
+      long storeHits,
+      long misses,
+      long bypasses,
+      long evictions,
+      long storeErrors,
+      int size,
+      double hitRate,
+      long savedLatencyMs
+  ) {
+  }
+
+  /** A cached reply and the key it was found under. */
+  public record Hit(String key, String reply) {
+  }
+
+  private record Entry(String reply, long latencyMs, long expiresAtMillis) {
+  }
+
+  private static final Pattern HORIZONTAL_SPACE = Pattern.compile("[ \\t\\x0B\\f\\u00A0]+");
+  private static final Pattern SPACE_AROUND_NEWLINE = Pattern.compile(" ?\\n ?");
+  private static final Pattern BLANK_LINES = Pattern.compile("\\n{3,}");
+
+  private final JdbcTemplate jdbcTemplate;
+  private final boolean enabled;
+  private final boolean persistent;
+  private final long ttlMillis;
+  private final Map<String, Entry> entries;
+
+  private final LongAdder memoryHits = new LongAdder();
+  private final LongAdder storeHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder bypasses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder storeErrors = new LongAdder();
+  private final LongAdder savedLatencyMs = new LongAdder();
+
+  public ReplyCache(
+      JdbcTemplate jdbcTemplate,
+      @Value("${ai.reply-cache.enabled:true}") boolean enabled,
+      @Value("${ai.reply-cache.persistent:false}") boolean persistent,
+      @Value("${ai.reply-cache.max-entries:1000}") int maxEntries,
+      @Value("${ai.reply-cache.ttl-seconds:86400}") long ttlSeconds) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.enabled = enabled;
+    this.persistent = persistent;
+    this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > maxEntries) {
+          evictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public boolean enabled() {
+    return enabled;
+  }
+
+  /**
+   * Cache key for one generation. Line endings, runs of spaces and tabs, and surrounding blank
+   * lines in the email do not change the key; case and wording do.
+   */
+  public static String key(String provider, String model, String emailContent, String tone) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+    for (String part : List.of(
+        lower(provider), lower(model), lower(tone), normalize(emailContent))) {
+      digest.update(part.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  static String normalize(String text) {
+    if (text == null) {
+      return "";
+    }
+    String s = text.replace("\r\n", "\n").replace('\r', '\n');
+    s = HORIZONTAL_SPACE.matcher(s).replaceAll(" ");
+    s = SPACE_AROUND_NEWLINE.matcher(s).replaceAll("\n");
+    s = BLANK_LINES.matcher(s).replaceAll("\n\n");
+    return s.strip();
+  }
+
+  /**
+   * The cached reply for {@code key}, or {@code null}. A hit adds the latency of the original
+   * provider call to the saved-latency counter.
+   */
+  public String get(String key) {
+    Hit hit = get(List.of(key));
+    return hit != null ? hit.reply() : null;
+  }
+
+  /**
+   * The first of {@code keys} with a cached reply, or {@code null}. Counts as one lookup however
+   * many keys there are, and reads the database at most once.
+   */
+  public Hit get(List<String> keys) {
+    long now = System.currentTimeMillis();
+    synchronized (entries) {
+      for (String key : keys) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAtMillis() <= now) {
+          entries.remove(key);
+        } else if (entry != null) {
+          memoryHits.increment();
+          savedLatencyMs.add(entry.latencyMs());
+          return new Hit(key, entry.reply());
+        }
+      }
+    }
+
+    Map<String, Entry> stored = persistent ? load(keys) : Map.of();
+    for (String key : keys) {
+      Entry entry = stored.get(key);
+      if (entry != null) {
+        synchronized (entries) {
+          entries.put(key, entry);
+        }
+        storeHits.increment();
+        savedLatencyMs.add(entry.latencyMs());
+        return new Hit(key, entry.reply());
+      }
+    }
+    misses.increment();
+    return null;
+  }
+
+  public void put(String key, String provider, String model, String reply, long latencyMs) {
+    if (reply == null || reply.isBlank()) {
+      return;
+    }
+    Entry entry = new Entry(reply, latencyMs, System.currentTimeMillis() + ttlMillis);
+    synchronized (entries) {
+      entries.put(key, entry);
+    }
+    if (persistent) {
+      store(key, provider, model, entry);
+    }
+  }
+
+  /** Counts a generation that skipped the cache on purpose ("regenerate"). */
+  public void recordBypass() {
+    bypasses.increment();
+  }
+
+  public CacheStats stats() {
+    int size;
+    synchronized (entries) {
+      size = entries.size();
+    }
+    long hits = memoryHits.sum() + storeHits.sum();
+    long lookups = hits + misses.sum();
+    return new CacheStats(enabled, persistent, memoryHits.sum(), storeHits.sum(), misses.sum(),
+        bypasses.sum(), evictions.sum(), storeErrors.sum(), size,
+        lookups == 0 ? 0 : (double) hits / lookups, savedLatencyMs.sum());
+  }
+
+  @Scheduled(fixedDelayString = "${ai.reply-cache.purge-interval-ms:3600000}")
+  public void purgeExpired() {
+    long now = System.currentTimeMillis();
+    synchronized (entries) {
+      entries.values().removeIf(e -> e.expiresAtMillis() <= now);
+    }
+    if (!persistent) {
+      return;
+    }
+    try {
+      int removed = jdbcTemplate.update("DELETE FROM ai_reply_cache WHERE expires_at <= now()");
+      if (removed > 0) {
+        log.debug("Purged {} expired AI reply cache rows", removed);
+      }
+    } catch (DataAccessException e) {
+      storeErrors.increment();
+      log.warn("Could not purge ai_reply_cache: {}", e.getMessage());
+    }
+  }
+
+  private Map<String, Entry> load(List<String> keys) {
+    if (keys.isEmpty()) {
+      return Map.of();
+    }
+    try {
+      Map<String, Entry> rows = new HashMap<>();
+      jdbcTemplate.query(
+          "SELECT cache_key, reply, latency_ms, expires_at FROM ai_reply_cache WHERE cache_key IN ("
+              + String.join(", ", Collections.nCopies(keys.size(), "?")) + ") AND expires_at > now()",
+          rs -> {
+            rows.put(rs.getString(1), new Entry(rs.getString(2), rs.getLong(3),
+                Math.min(rs.getTimestamp(4).getTime(), System.currentTimeMillis() + ttlMillis)));
+          },
+          keys.toArray());
+      return rows;
+    } catch (DataAccessException e) {
+      storeErrors.increment();
+      log.warn("AI reply cache lookup failed: {}", e.getMessage());
+      return Map.of();
+    }
+  }
+
+  private void store(String key, String provider, String model, Entry entry) {
+    try {
+      jdbcTemplate.update("""
+          INSERT INTO ai_reply_cache (cache_key, provider, model, reply, latency_ms, expires_at)
+          VALUES (?, ?, ?, ?, ?, ?)
+          ON CONFLICT (cache_key) DO UPDATE
+            SET reply = EXCLUDED.reply, latency_ms = EXCLUDED.latency_ms,
+                created_at = now(), expires_at = EXCLUDED.expires_at
+          """,
+          key, provider, model, entry.reply(), entry.latencyMs(),
+          Timestamp.from(Instant.ofEpochMilli(entry.expiresAtMillis())));
+    } catch (DataAccessException e) {
+      storeErrors.increment();
+      log.warn("AI reply cache write failed: {}", e.getMessage());
+    }
+  }
+
+  private static String lower(String s) {
+    return s == null ? "" : s.trim().toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,43 @@
+package com.sp.demo.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Minimal reader for {@code text/event-stream} responses from the AI providers.
+ */
+final class ServerSentEvents {
+
+  private ServerSentEvents() {
+  }
+
+  /**
+   * Calls {@code onData} with the {@code data} payload of each event, in order, until the
+   * stream ends. Multi-line data is joined with newlines; other fields are ignored.
+   */
+  static void forEachData(InputStream in, Consumer<String> onData) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    StringBuilder data = new StringBuilder();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (line.isEmpty()) {
+        if (data.length() > 0) {
+          onData.accept(data.toString());
+          data.setLength(0);
+        }
+      } else if (line.startsWith("data:")) {
+        if (data.length() > 0) {
+          data.append('\n');
+        }
+        data.append(line.startsWith("data: ") ? line.substring(6) : line.substring(5));
+      }
+    }
+    if (data.length() > 0) {
+      onData.accept(data.toString());
+    }
+  }
+}
@@ -1,10 +1,14 @@
 package com.sp.demo.service;
 
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
@@ -12,45 +16,91 @@ import javax.crypto.spec.SecretKeySpec;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * AES-GCM encryption for stored refresh tokens.
+ *
+ * <p>Values are written as {@code v1:<keyId>:<base64(iv | ciphertext | tag)>}, with the
+ * {@code v1:<keyId>} header bound in as associated data. Any key listed in
+ * {@code token.crypto.keys} ({@code id:base64,id:base64}) can decrypt, and new values use
+ * {@code token.crypto.active-key-id}. The single {@code token.crypto.key} still works: it is
+ * registered as key {@value #DEFAULT_KEY_ID}, and it also reads unprefixed values written
+ * before key ids existed. With no key configured, values pass through unchanged.
+ *
+ * <p>Keys are parsed once, and each thread reuses its own {@link Cipher}. Decrypted values can
+ * be kept for {@code token.crypto.cache.ttl-seconds} in a small LRU
+ * ({@code token.crypto.cache.max-entries}, 0 to disable), keyed by ciphertext.
+ */
 @Service
 public class TokenCryptoService {
 
+  static final String DEFAULT_KEY_ID = "default";
+
+  private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+  private static final String VERSION = "v1";
   private static final int IV_BYTES = 12;
   private static final int TAG_BITS = 128;
 
+  private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+    try {
+      return Cipher.getInstance(TRANSFORMATION);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(TRANSFORMATION + " is not available", e);
+    }
+  });
+
+  private record Decrypted(String plaintext, long expiresAtNanos) {
+  }
+
   private final SecureRandom secureRandom = new SecureRandom();
 
-  private final String base64Key;
+  private final Map<String, SecretKey> keys;
+  private final SecretKey legacyKey;
+  private final String activeKeyId;
+  private final long cacheTtlNanos;
+  private final Map<String, Decrypted> decrypted;
 
-  public TokenCryptoService(@Value("${token.crypto.key:}") String base64Key) {
-    this.base64Key = base64Key;
+  public TokenCryptoService(@Value("${token.crypto.key:}") String base64Key,
+      @Value("${token.crypto.keys:}") String keyList,
+      @Value("${token.crypto.active-key-id:}") String activeKeyId,
+      @Value("${token.crypto.cache.max-entries:1000}") int cacheMaxEntries,
+      @Value("${token.crypto.cache.ttl-seconds:300}") long cacheTtlSeconds) {
+    this.legacyKey = parseKey(base64Key, "token.crypto.key");
+    this.keys = parseKeys(keyList, legacyKey);
+    this.activeKeyId = resolveActiveKeyId(activeKeyId, keys);
+    this.cacheTtlNanos = TimeUnit.SECONDS.toNanos(cacheTtlSeconds);
+    this.decrypted = cacheMaxEntries <= 0 || cacheTtlSeconds <= 0 ? null
+        : new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Decrypted> eldest) {
+            return size() > cacheMaxEntries;
+          }
+        };
   }
 
   public String encrypt(String plaintext) {
     if (plaintext == null) {
       return null;
     }
-    if (base64Key == null || base64Key.isBlank()) {
+    if (activeKeyId == null) {
       return plaintext;
     }
 
     try {
-      byte[] keyBytes = Base64.getDecoder().decode(base64Key);
-      SecretKey key = new SecretKeySpec(keyBytes, "AES");
+      byte[] input = plaintext.getBytes(StandardCharsets.UTF_8);
+      String header = VERSION + ":" + activeKeyId;
 
+      Cipher cipher = CIPHERS.get();
       byte[] iv = new byte[IV_BYTES];
       secureRandom.nextBytes(iv);
+      cipher.init(Cipher.ENCRYPT_MODE, keys.get(activeKeyId), new GCMParameterSpec(TAG_BITS, iv));
+      cipher.updateAAD(header.getBytes(StandardCharsets.US_ASCII));
 
-      Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-      cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
-
-      byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+      // IV followed by ciphertext and tag, written straight into one array
+      byte[] out = new byte[IV_BYTES + cipher.getOutputSize(input.length)];
+      System.arraycopy(iv, 0, out, 0, IV_BYTES);
+      cipher.doFinal(input, 0, input.length, out, IV_BYTES);
 
-      ByteBuffer buffer = ByteBuffer.allocate(iv.length + ciphertext.length);
-      buffer.put(iv);
-      buffer.put(ciphertext);
-
-      return Base64.getEncoder().encodeToString(buffer.array());
+      return header + ":" + Base64.getEncoder().encodeToString(out);
     } catch (GeneralSecurityException e) {
       throw new RuntimeException("Token encryption failed", e);
     }
@@ -60,30 +110,152 @@ public class TokenCryptoService {
     if (encrypted == null) {
       return null;
     }
-    if (base64Key == null || base64Key.isBlank()) {
+    if (keys.isEmpty()) {
       return encrypted;
     }
 
-    try {
-      byte[] raw = Base64.getDecoder().decode(encrypted);
-      ByteBuffer buffer = ByteBuffer.wrap(raw);
+    String cached = cached(encrypted);
+    if (cached != null) {
+      return cached;
+    }
 
-      byte[] iv = new byte[IV_BYTES];
-      buffer.get(iv);
+    String result = decryptUncached(encrypted);
+    remember(encrypted, result);
+    return result;
+  }
 
-      byte[] ciphertext = new byte[buffer.remaining()];
-      buffer.get(ciphertext);
+  /**
+   * Re-encrypts {@code encrypted} under the active key, or returns null when it already uses
+   * it. Bypasses the decrypt cache so a bulk run does not flush it.
+   */
+  String reencrypt(String encrypted) {
+    if (encrypted == null || activeKeyId == null || activeKeyId.equals(keyIdOf(encrypted))) {
+      return null;
+    }
+    return encrypt(decryptUncached(encrypted));
+  }
 
-      byte[] keyBytes = Base64.getDecoder().decode(base64Key);
-      SecretKey key = new SecretKeySpec(keyBytes, "AES");
+  String activeKeyId() {
+    return activeKeyId;
+  }
 
-      Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
-      cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, iv));
+  Set<String> keyIds() {
+    return Collections.unmodifiableSet(keys.keySet());
+  }
+
+  private String decryptUncached(String encrypted) {
+    String keyId = keyIdOf(encrypted);
+    SecretKey key;
+    String header = null;
+    String body;
+    if (keyId != null) {
+      key = keys.get(keyId);
+      if (key == null) {
+        throw new RuntimeException("Token decryption failed: unknown key id " + keyId);
+      }
+      int bodyStart = VERSION.length() + 1 + keyId.length() + 1;
+      header = encrypted.substring(0, bodyStart - 1);
+      body = encrypted.substring(bodyStart);
+    } else if (legacyKey != null) {
+      key = legacyKey;
+      body = encrypted;
+    } else {
+      // written while encryption was off
+      return encrypted;
+    }
+
+    try {
+      byte[] raw = Base64.getDecoder().decode(body);
+
+      Cipher cipher = CIPHERS.get();
+      cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, raw, 0, IV_BYTES));
+      if (header != null) {
+        cipher.updateAAD(header.getBytes(StandardCharsets.US_ASCII));
+      }
+      byte[] plaintext = cipher.doFinal(raw, IV_BYTES, raw.length - IV_BYTES);
 
-      byte[] plaintext = cipher.doFinal(ciphertext);
       return new String(plaintext, StandardCharsets.UTF_8);
     } catch (GeneralSecurityException e) {
       throw new RuntimeException("Token decryption failed", e);
     }
   }
+
+  /**
+   * Key id of a versioned value, or null for a legacy unprefixed one (Base64 never contains ':').
+   */
+  static String keyIdOf(String encrypted) {
+    if (!encrypted.startsWith(VERSION + ":")) {
+      return null;
+    }
+    int end = encrypted.indexOf(':', VERSION.length() + 1);
+    return end < 0 ? null : encrypted.substring(VERSION.length() + 1, end);
+  }
+
+  private String cached(String encrypted) {
+    if (decrypted == null) {
+      return null;
+    }
+    synchronized (decrypted) {
+      Decrypted entry = decrypted.get(encrypted);
+      if (entry == null) {
+        return null;
+      }
+      if (System.nanoTime() - entry.expiresAtNanos() >= 0) {
+        decrypted.remove(encrypted);
+        return null;
+      }
+      return entry.plaintext();
+    }
+  }
+
+  private void remember(String encrypted, String plaintext) {
+    if (decrypted == null) {
+      return;
+    }
+    synchronized (decrypted) {
+      decrypted.put(encrypted, new Decrypted(plaintext, System.nanoTime() + cacheTtlNanos));
+    }
+  }
+
+  private static Map<String, SecretKey> parseKeys(String keyList, SecretKey legacyKey) {
+    Map<String, SecretKey> parsed = new LinkedHashMap<>();
+    if (legacyKey != null) {
+      parsed.put(DEFAULT_KEY_ID, legacyKey);
+    }
+    if (keyList != null && !keyList.isBlank()) {
+      for (String entry : keyList.split(",")) {
+        int colon = entry.indexOf(':');
+        if (colon <= 0) {
+          throw new IllegalStateException("token.crypto.keys entries must look like id:base64key");
+        }
+        String id = entry.substring(0, colon).trim();
+        parsed.put(id, parseKey(entry.substring(colon + 1), "token.crypto.keys." + id));
+      }
+    }
+    return parsed;
+  }
+
+  private static String resolveActiveKeyId(String configured, Map<String, SecretKey> keys) {
+    if (configured != null && !configured.isBlank()) {
+      if (!keys.containsKey(configured.trim())) {
+        throw new IllegalStateException("token.crypto.active-key-id " + configured + " is not in token.crypto.keys");
+      }
+      return configured.trim();
+    }
+    if (keys.size() > 1) {
+      throw new IllegalStateException("token.crypto.active-key-id is required when several keys are configured");
+    }
+    return keys.isEmpty() ? null : keys.keySet().iterator().next();
+  }
+
+  private static SecretKey parseKey(String base64Key, String property) {
+    if (base64Key == null || base64Key.isBlank()) {
+      return null;
+    }
+    byte[] keyBytes = Base64.getDecoder().decode(base64Key.trim());
+    if (keyBytes.length != 16 && keyBytes.length != 24 && keyBytes.length != 32) {
+      throw new IllegalStateException(property + " must be a Base64 encoded 16, 24 or 32 byte AES key");
+    }
+    return new SecretKeySpec(keyBytes, "AES");
+  }
 }
@@ -0,0 +1,233 @@
+package com.sp.demo.service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+/**
+ * Moves every {@code oauth_token.refresh_token_encrypted} to the active key.
+ *
+ * <p>One thread walks the table in id order ({@code WHERE id > :lastId LIMIT :chunk}) and hands
+ * each chunk to a small worker pool. Workers re-encrypt the rows that are not on the active
+ * key and write them back with one JDBC batch. Each UPDATE also matches the old ciphertext,
+ * so a row rewritten by a login or refresh in the meantime is left alone. The scan is paced
+ * to {@code token.reencrypt.rows-per-second}.
+ */
+@Slf4j
+@Service
+public class TokenReencryptionService {
+
+  public enum JobState {
+    IDLE,
+    RUNNING,
+    CANCELLED,
+    COMPLETED,
+    FAILED
+  }
+
+  public record ReencryptionProgress(
+      JobState state,
+      String activeKeyId,
+      long scanned,
+      long reencrypted,
+      long alreadyCurrent,
+      long conflicts,
+      long failed,
+      UUID lastId,
+      Instant startedAt,
+      Instant finishedAt,
+      String error
+  ) {
+  }
+
+  private record Row(UUID id, String encrypted) {
+  }
+
+  private static final UUID FIRST_ID = new UUID(0, 0);
+
+  private final JdbcTemplate jdbcTemplate;
+  private final TokenCryptoService tokenCryptoService;
+  private final int chunkSize;
+  private final int workers;
+  private final double rowsPerSecond;
+
+  private final ExecutorService coordinator = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "token-reencrypt");
+    t.setDaemon(true);
+    return t;
+  });
+
+  private final AtomicReference<JobState> state = new AtomicReference<>(JobState.IDLE);
+  private final AtomicLong scanned = new AtomicLong();
+  private final AtomicLong reencrypted = new AtomicLong();
+  private final AtomicLong alreadyCurrent = new AtomicLong();
+  private final AtomicLong conflicts = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private volatile UUID lastId;
+  private volatile Instant startedAt;
+  private volatile Instant finishedAt;
+  private volatile String error;
+  private volatile boolean cancelRequested;
+
+  public TokenReencryptionService(JdbcTemplate jdbcTemplate,
+      TokenCryptoService tokenCryptoService,
+      @Value("${token.reencrypt.chunk-size:500}") int chunkSize,
+      @Value("${token.reencrypt.workers:4}") int workers,
+      @Value("${token.reencrypt.rows-per-second:2000}") double rowsPerSecond) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.tokenCryptoService = tokenCryptoService;
+    this.chunkSize = chunkSize;
+    this.workers = workers;
+    this.rowsPerSecond = rowsPerSecond;
+  }
+
+  /**
+   * Starts a run unless one is already going; either way returns the current progress.
+   */
+  public synchronized ReencryptionProgress start() {
+    if (tokenCryptoService.activeKeyId() == null) {
+      throw new IllegalStateException("No token encryption key is configured");
+    }
+    if (state.get() == JobState.RUNNING) {
+      return progress();
+    }
+
+    scanned.set(0);
+    reencrypted.set(0);
+    alreadyCurrent.set(0);
+    conflicts.set(0);
+    failed.set(0);
+    lastId = null;
+    error = null;
+    finishedAt = null;
+    cancelRequested = false;
+    startedAt = Instant.now();
+    state.set(JobState.RUNNING);
+
+    coordinator.execute(this::run);
+    return progress();
+  }
+
+  public ReencryptionProgress cancel() {
+    cancelRequested = true;
+    return progress();
+  }
+
+  public ReencryptionProgress progress() {
+    return new ReencryptionProgress(state.get(), tokenCryptoService.activeKeyId(),
+        scanned.get(), reencrypted.get(), alreadyCurrent.get(), conflicts.get(), failed.get(),
+        lastId, startedAt, finishedAt, error);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    cancelRequested = true;
+    coordinator.shutdownNow();
+  }
+
+  private void run() {
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    // at most two chunks queued per worker, so the scan never runs far ahead of the writes
+    Semaphore inFlight = new Semaphore(workers * 2);
+    long started = System.nanoTime();
+
+    try {
+      UUID cursor = FIRST_ID;
+      while (!cancelRequested) {
+        List<Row> chunk = jdbcTemplate.query(
+            "SELECT id, refresh_token_encrypted FROM oauth_token WHERE id > ? ORDER BY id LIMIT ?",
+            (rs, i) -> new Row(rs.getObject(1, UUID.class), rs.getString(2)),
+            cursor, chunkSize);
+        if (chunk.isEmpty()) {
+          break;
+        }
+        cursor = chunk.get(chunk.size() - 1).id();
+
+        inFlight.acquire();
+        pool.execute(() -> {
+          try {
+            process(chunk);
+          } catch (RuntimeException e) {
+            failed.addAndGet(chunk.size());
+            log.warn("Re-encryption chunk ending at {} failed: {}", chunk.get(chunk.size() - 1).id(), e.getMessage());
+          } finally {
+            inFlight.release();
+          }
+        });
+
+        lastId = cursor;
+        scanned.addAndGet(chunk.size());
+        throttle(started);
+      }
+
+      pool.shutdown();
+      if (!pool.awaitTermination(1, TimeUnit.HOURS)) {
+        throw new IllegalStateException("Re-encryption workers did not finish within an hour");
+      }
+      state.set(cancelRequested ? JobState.CANCELLED : JobState.COMPLETED);
+    } catch (Exception e) {
+      log.error("Token re-encryption stopped after id {}", lastId, e);
+      error = e.getMessage();
+      state.set(JobState.FAILED);
+      pool.shutdownNow();
+    } finally {
+      finishedAt = Instant.now();
+      log.info("Token re-encryption {}: {}", state.get(), progress());
+    }
+  }
+
+  private void process(List<Row> chunk) {
+    List<Object[]> updates = new ArrayList<>();
+    for (Row row : chunk) {
+      try {
+        String next = tokenCryptoService.reencrypt(row.encrypted());
+        if (next == null) {
+          alreadyCurrent.incrementAndGet();
+        } else {
+          updates.add(new Object[] {next, row.id(), row.encrypted()});
+        }
+      } catch (RuntimeException e) {
+        failed.incrementAndGet();
+        log.warn("Cannot re-encrypt token {}: {}", row.id(), e.getMessage());
+      }
+    }
+    if (updates.isEmpty()) {
+      return;
+    }
+
+    int[] counts = jdbcTemplate.batchUpdate(
+        "UPDATE oauth_token SET refresh_token_encrypted = ?, updated_at = now() "
+            + "WHERE id = ? AND refresh_token_encrypted = ?",
+        updates);
+    for (int count : counts) {
+      if (count == 0) {
+        conflicts.incrementAndGet();
+      } else {
+        reencrypted.incrementAndGet();
+      }
+    }
+  }
+
+  private void throttle(long startedNanos) throws InterruptedException {
+    if (rowsPerSecond <= 0) {
+      return;
+    }
+    long dueNanos = startedNanos + (long) (scanned.get() / rowsPerSecond * 1_000_000_000L);
+    long aheadNanos = dueNanos - System.nanoTime();
+    if (aheadNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(aheadNanos);
+    }
+  }
+}
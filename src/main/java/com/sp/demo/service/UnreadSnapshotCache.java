@@ -0,0 +1,143 @@
+package com.sp.demo.service;
+
+import com.sp.demo.external.gmail.GmailClient.GmailMessageDetails;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Short-lived per-user snapshot of the unread inbox, in front of {@code GmailClient.fetchUnread}.
+ *
+ * <p>Concurrent requests for the same user share one in-flight fetch. A snapshot taken with a
+ * larger {@code maxResults} also serves smaller requests. Entries expire after
+ * {@code gmail.unread-cache.ttl-ms}, are dropped when a reply is sent or a sync changes the
+ * mailbox, and the least recently used user is evicted beyond {@code gmail.unread-cache.max-users}.
+ */
+@Component
+public class UnreadSnapshotCache {
+
+  public record CacheStats(long hits, long misses, long coalesced, long evictions, long invalidations, int size) {
+  }
+
+  private static final class Entry {
+    final long maxResults;
+    final CompletableFuture<List<GmailMessageDetails>> result = new CompletableFuture<>();
+    volatile long loadedAtNanos;
+
+    Entry(long maxResults) {
+      this.maxResults = maxResults;
+    }
+  }
+
+  private final long ttlNanos;
+  private final Map<UUID, Entry> entries;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  public UnreadSnapshotCache(
+      @Value("${gmail.unread-cache.ttl-ms:15000}") long ttlMs,
+      @Value("${gmail.unread-cache.max-users:10000}") int maxUsers) {
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+        if (size() > maxUsers) {
+          evictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns the user's unread snapshot, running {@code loader} only when there is no fresh or
+   * in-flight snapshot covering {@code maxResults}.
+   */
+  public List<GmailMessageDetails> get(UUID userId, long maxResults, Callable<List<GmailMessageDetails>> loader)
+      throws Exception {
+    Entry entry;
+    boolean owner = false;
+
+    synchronized (entries) {
+      Entry current = entries.get(userId);
+      if (current != null && current.maxResults >= maxResults && usable(current)) {
+        entry = current;
+        if (current.result.isDone()) {
+          hits.increment();
+        } else {
+          coalesced.increment();
+        }
+      } else {
+        entry = new Entry(maxResults);
+        entries.put(userId, entry);
+        misses.increment();
+        owner = true;
+      }
+    }
+
+    if (owner) {
+      try {
+        List<GmailMessageDetails> loaded = loader.call();
+        entry.loadedAtNanos = System.nanoTime();
+        entry.result.complete(loaded);
+      } catch (Throwable e) {
+        // waiters block on this future, so it must complete whatever the loader throws
+        entry.result.completeExceptionally(e);
+        synchronized (entries) {
+          entries.remove(userId, entry);
+        }
+        throw e;
+      }
+    }
+
+    List<GmailMessageDetails> snapshot;
+    try {
+      snapshot = entry.result.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw e.getCause() instanceof Exception cause ? cause : e;
+    }
+    return snapshot.size() > maxResults ? snapshot.subList(0, (int) maxResults) : snapshot;
+  }
+
+  public void invalidate(UUID userId) {
+    if (userId == null) {
+      return;
+    }
+    synchronized (entries) {
+      if (entries.remove(userId) != null) {
+        invalidations.increment();
+      }
+    }
+  }
+
+  public CacheStats stats() {
+    int size;
+    synchronized (entries) {
+      size = entries.size();
+    }
+    return new CacheStats(hits.sum(), misses.sum(), coalesced.sum(), evictions.sum(), invalidations.sum(), size);
+  }
+
+  private boolean usable(Entry entry) {
+    if (!entry.result.isDone()) {
+      return true;
+    }
+    return !entry.result.isCompletedExceptionally() && System.nanoTime() - entry.loadedAtNanos < ttlNanos;
+  }
+}
@@ -0,0 +1,14 @@
+package com.sp.demo.service.compaction;
+
+/**
+ * One step of {@link PromptCompactor}. Stages are Spring beans run in {@code @Order}; add a bean
+ * to add a stage. A stage must leave the text the reply depends on and return its input
+ * unchanged when there is nothing to remove.
+ */
+public interface CompactionStage {
+
+  /** Short name used in metrics. */
+  String name();
+
+  String apply(String text);
+}
@@ -0,0 +1,96 @@
+package com.sp.demo.service.compaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shrinks the email text before it goes into a prompt by running every {@link CompactionStage}
+ * bean in order. A stage that would leave nothing is skipped, so the model always sees at least
+ * what the previous stage produced. Tokens saved per stage are counted for
+ * {@code /api/metrics/ai/compaction}.
+ */
+@Component
+public class PromptCompactor {
+
+  public record StageResult(String stage, int tokensBefore, int tokensAfter) {
+  }
+
+  public record CompactionResult(String text, int originalTokens, int compactedTokens, List<StageResult> stages) {
+  }
+
+  public record StageStats(String stage, long runs, long changed, long tokensSaved) {
+  }
+
+  public record CompactionStats(boolean enabled, long prompts, long tokensIn, long tokensOut, List<StageStats> stages) {
+  }
+
+  private static final class Counters {
+    final LongAdder runs = new LongAdder();
+    final LongAdder changed = new LongAdder();
+    final LongAdder tokensSaved = new LongAdder();
+  }
+
+  private final List<CompactionStage> stages;
+  private final List<Counters> counters;
+  private final boolean enabled;
+
+  private final LongAdder prompts = new LongAdder();
+  private final LongAdder tokensIn = new LongAdder();
+  private final LongAdder tokensOut = new LongAdder();
+
+  public PromptCompactor(List<CompactionStage> stages,
+      @Value("${ai.compaction.enabled:true}") boolean enabled) {
+    this.stages = List.copyOf(stages);
+    this.enabled = enabled;
+    this.counters = new ArrayList<>(stages.size());
+    for (int i = 0; i < stages.size(); i++) {
+      counters.add(new Counters());
+    }
+  }
+
+  public CompactionResult compact(String text) {
+    String current = text == null ? "" : text;
+    int originalTokens = TokenEstimator.estimate(current);
+    if (!enabled) {
+      return new CompactionResult(current, originalTokens, originalTokens, List.of());
+    }
+
+    List<StageResult> results = new ArrayList<>(stages.size());
+    int tokens = originalTokens;
+    for (int i = 0; i < stages.size(); i++) {
+      CompactionStage stage = stages.get(i);
+      String next = stage.apply(current);
+      if (next == null || (next.isBlank() && !current.isBlank())) {
+        next = current;
+      }
+      int after = next.equals(current) ? tokens : TokenEstimator.estimate(next);
+
+      Counters c = counters.get(i);
+      c.runs.increment();
+      if (!next.equals(current)) {
+        c.changed.increment();
+        c.tokensSaved.add(tokens - after);
+      }
+      results.add(new StageResult(stage.name(), tokens, after));
+      current = next;
+      tokens = after;
+    }
+
+    prompts.increment();
+    tokensIn.add(originalTokens);
+    tokensOut.add(tokens);
+    return new CompactionResult(current, originalTokens, tokens, results);
+  }
+
+  public CompactionStats stats() {
+    List<StageStats> perStage = new ArrayList<>(stages.size());
+    for (int i = 0; i < stages.size(); i++) {
+      Counters c = counters.get(i);
+      perStage.add(new StageStats(stages.get(i).name(), c.runs.sum(), c.changed.sum(), c.tokensSaved.sum()));
+    }
+    return new CompactionStats(enabled, prompts.sum(), tokensIn.sum(), tokensOut.sum(), perStage);
+  }
+}
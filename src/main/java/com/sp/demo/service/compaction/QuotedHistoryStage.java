@@ -0,0 +1,52 @@
+package com.sp.demo.service.compaction;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops the quoted thread under the newest message: everything from the first reply header
+ * ("On ... wrote:", Outlook's "-----Original Message-----" or "From:/Sent:" block) down, plus
+ * any remaining {@code >}-quoted lines. A header on the very first line is left alone, since
+ * then there is nothing newer to keep.
+ *
+ * <p>A forwarded message is what the sender wants answered, not history: nothing below a
+ * "Forwarded message" or "Begin forwarded message:" delimiter, or in text carrying a
+ * {@code Subject: Fwd:}/{@code FW:} line, is cut as a reply header. The compactor only sees the
+ * text, so a forward is recognised from what the text itself says.
+ */
+@Component
+@Order(10)
+public class QuotedHistoryStage implements CompactionStage {
+
+  private static final Pattern REPLY_HEADER = Pattern.compile(
+      "^(?:On\\s[^\\n]{0,200}(?:\\n[^\\n]{0,200})?\\swrote:[ \\t]*$"
+          + "|-{2,}\\s*Original Message\\s*-{2,}"
+          + "|_{10,}[ \\t]*\\n+From:\\s"
+          + "|From:\\s[^\\n]+\\n(?:Sent|Date):\\s)",
+      Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
+
+  private static final Pattern FORWARDED = Pattern.compile(
+      "^[ \\t]*(?:-{2,}\\s*Forwarded message\\s*-{2,}|Begin forwarded message:|Subject:\\s*(?:Fwd?|FW):)",
+      Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
+
+  private static final Pattern QUOTED_LINE = Pattern.compile("^[ \\t]*>[^\\n]*(?:\\n|$)", Pattern.MULTILINE);
+
+  @Override
+  public String name() {
+    return "quoted-history";
+  }
+
+  @Override
+  public String apply(String text) {
+    String s = text;
+    Matcher forwarded = FORWARDED.matcher(s);
+    int forwardedAt = forwarded.find() ? forwarded.start() : s.length();
+    Matcher m = REPLY_HEADER.matcher(s);
+    if (m.find() && m.start() < forwardedAt && !s.substring(0, m.start()).isBlank()) {
+      s = s.substring(0, m.start());
+    }
+    return QUOTED_LINE.matcher(s).replaceAll("");
+  }
+}
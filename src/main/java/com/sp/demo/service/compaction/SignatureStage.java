@@ -0,0 +1,59 @@
+package com.sp.demo.service.compaction;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Removes the sender's signature and boilerplate footers: everything after a {@code "-- "}
+ * delimiter, "Sent from my ..." lines, and the trailing run of paragraphs that read as legal
+ * disclaimers or mailing-list footers. The first paragraph is never dropped.
+ */
+@Component
+@Order(20)
+public class SignatureStage implements CompactionStage {
+
+  private static final Pattern SIG_DELIMITER = Pattern.compile("^--[ \\t]?$", Pattern.MULTILINE);
+  private static final Pattern MOBILE_FOOTER = Pattern.compile(
+      "^[ \\t]*(?:Sent from my [^\\n]+|Get Outlook for [^\\n]+|Sent from Mail for Windows[^\\n]*)[ \\t]*$",
+      Pattern.MULTILINE | Pattern.CASE_INSENSITIVE);
+  private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n[ \\t]*\\n");
+
+  @Override
+  public String name() {
+    return "signature";
+  }
+
+  @Override
+  public String apply(String text) {
+    String s = text;
+    Matcher sig = SIG_DELIMITER.matcher(s);
+    if (sig.find() && !s.substring(0, sig.start()).isBlank()) {
+      s = s.substring(0, sig.start());
+    }
+    s = MOBILE_FOOTER.matcher(s).replaceAll("");
+
+    // footers only trail the message; the same words further up are part of what was said
+    String[] paragraphs = PARAGRAPH_BREAK.split(s);
+    int end = paragraphs.length;
+    while (end > 1 && (paragraphs[end - 1].isBlank() || boilerplate(paragraphs[end - 1]))) {
+      end--;
+    }
+    return end == paragraphs.length ? s : String.join("\n\n", Arrays.asList(paragraphs).subList(0, end));
+  }
+
+  private static boolean boilerplate(String paragraph) {
+    String p = paragraph.toLowerCase(Locale.ROOT);
+    boolean legal = (p.contains("confidential") || p.contains("privileged"))
+        && (p.contains("intended recipient") || p.contains("addressee") || p.contains("disclos")
+            || p.contains("received this") || p.contains("in error"));
+    boolean listFooter = p.contains("unsubscribe")
+        || p.contains("manage your preferences") || p.contains("email preferences")
+        || p.contains("view this email in your browser") || p.contains("view in browser");
+    boolean environmental = p.contains("please consider the environment before printing");
+    return legal || listFooter || environmental;
+  }
+}
@@ -0,0 +1,72 @@
+package com.sp.demo.service.compaction;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Last stage: cuts what is left to {@code ai.compaction.max-input-tokens}, as counted by
+ * {@link TokenEstimator}. The text is kept from the top, where the newest message is, and cut
+ * at a line boundary when one exists; a {@code [...]} marker tells the model it was truncated.
+ */
+@Component
+@Order(100)
+public class TokenBudgetStage implements CompactionStage {
+
+  static final String TRUNCATION_MARKER = "\n[...]";
+
+  private final int maxTokens;
+
+  public TokenBudgetStage(@Value("${ai.compaction.max-input-tokens:2000}") int maxTokens) {
+    this.maxTokens = maxTokens;
+  }
+
+  @Override
+  public String name() {
+    return "token-budget";
+  }
+
+  @Override
+  public String apply(String text) {
+    if (maxTokens <= 0 || TokenEstimator.estimate(text) <= maxTokens) {
+      return text;
+    }
+
+    int budget = maxTokens - TokenEstimator.estimate(TRUNCATION_MARKER);
+    int used = 0;
+    int cut = 0;
+    int lineStart = 0;
+    while (lineStart < text.length()) {
+      int lineEnd = text.indexOf('\n', lineStart);
+      lineEnd = lineEnd < 0 ? text.length() : lineEnd + 1;
+      int cost = TokenEstimator.estimate(text.subSequence(lineStart, lineEnd));
+      if (used + cost > budget) {
+        break;
+      }
+      used += cost;
+      cut = lineEnd;
+      lineStart = lineEnd;
+    }
+
+    if (cut == 0) {
+      // a single line longer than the budget: cut it by characters
+      cut = cutWithin(text, budget);
+    }
+    return text.substring(0, cut).stripTrailing() + TRUNCATION_MARKER;
+  }
+
+  private static int cutWithin(String text, int budget) {
+    int lo = 0;
+    int hi = text.length();
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (TokenEstimator.estimate(text.subSequence(0, mid)) <= budget) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    int space = text.lastIndexOf(' ', lo);
+    return space > lo / 2 ? space : lo;
+  }
+}
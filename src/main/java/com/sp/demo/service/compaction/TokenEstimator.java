@@ -0,0 +1,40 @@
+package com.sp.demo.service.compaction;
+
+/**
+ * Local estimate of how many tokens a text costs, without a tokenizer vocabulary.
+ *
+ * <p>Runs of ASCII letters and digits count one token per five characters (at least one), any
+ * other visible character counts one, and whitespace is free. That tracks BPE tokenizers
+ * closely enough on English mail to set budgets and report savings; it is not meant for billing.
+ */
+public final class TokenEstimator {
+
+  private TokenEstimator() {
+  }
+
+  public static int estimate(CharSequence text) {
+    if (text == null) {
+      return 0;
+    }
+    int tokens = 0;
+    int word = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c < 128 && Character.isLetterOrDigit(c)) {
+        word++;
+        continue;
+      }
+      if (word > 0) {
+        tokens += (word + 4) / 5;
+        word = 0;
+      }
+      if (!Character.isWhitespace(c) && !Character.isLowSurrogate(c)) {
+        tokens++;
+      }
+    }
+    if (word > 0) {
+      tokens += (word + 4) / 5;
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,102 @@
+package com.sp.demo.service.compaction;
+
+import java.net.URI;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shortens tracking links and collapses whitespace. A link that looks like tracking (utm_* or
+ * click-id parameters, a long opaque query value, or a known click-redirect host) keeps its
+ * scheme, host and first two path segments, so "tracking-link soup" costs a few tokens per link
+ * instead of dozens. Any other link is left whole, since its query, port or deep path may be what
+ * the reply has to mention. Runs of spaces collapse, trailing spaces go, zero-width characters are
+ * removed and blank lines are capped at one.
+ */
+@Component
+@Order(30)
+public class WhitespaceUrlStage implements CompactionStage {
+
+  private static final Pattern URL = Pattern.compile("https?://[^\\s<>()\"'\\]]+", Pattern.CASE_INSENSITIVE);
+  private static final Pattern ZERO_WIDTH = Pattern.compile("[\\u200B-\\u200D\\u2060\\uFEFF\\u00AD]");
+  private static final Pattern HORIZONTAL_SPACE = Pattern.compile("[ \\t\\x0B\\f\\u00A0]+");
+  private static final Pattern SPACE_AROUND_NEWLINE = Pattern.compile(" ?\\n ?");
+  private static final Pattern BLANK_LINES = Pattern.compile("\\n{3,}");
+  private static final int MAX_PATH_SEGMENTS = 2;
+  private static final Pattern TRACKING_PARAM = Pattern.compile(
+      "(?:utm_[a-z]+|gclid|fbclid|msclkid|mc_cid|mc_eid|_hsenc|_hsmi|mkt_tok)", Pattern.CASE_INSENSITIVE);
+  private static final Pattern OPAQUE_VALUE = Pattern.compile("[A-Za-z0-9_.~%+/=-]{32,}");
+  private static final Pattern REDIRECT_HOST = Pattern.compile(
+      "(?:(?:click|clicks|link|links|track|trk|email)\\.[^/]+"
+          + "|(?:[^/]*\\.)?(?:safelinks\\.protection\\.outlook\\.com|urldefense\\.com|urldefense\\.proofpoint\\.com"
+          + "|list-manage\\.com|sendgrid\\.net|mandrillapp\\.com|hubspotlinks\\.com|mcsv\\.net))",
+      Pattern.CASE_INSENSITIVE);
+
+  @Override
+  public String name() {
+    return "whitespace-url";
+  }
+
+  @Override
+  public String apply(String text) {
+    Matcher m = URL.matcher(text);
+    StringBuilder out = new StringBuilder(text.length());
+    while (m.find()) {
+      m.appendReplacement(out, Matcher.quoteReplacement(shorten(m.group())));
+    }
+    m.appendTail(out);
+
+    String s = out.toString().replace("\r\n", "\n").replace('\r', '\n');
+    s = ZERO_WIDTH.matcher(s).replaceAll("");
+    s = HORIZONTAL_SPACE.matcher(s).replaceAll(" ");
+    s = SPACE_AROUND_NEWLINE.matcher(s).replaceAll("\n");
+    s = BLANK_LINES.matcher(s).replaceAll("\n\n");
+    return s.strip();
+  }
+
+  static String shorten(String url) {
+    URI uri;
+    try {
+      uri = URI.create(url);
+    } catch (IllegalArgumentException e) {
+      return url;
+    }
+    if (uri.getHost() == null || !tracking(uri)) {
+      return url;
+    }
+
+    StringBuilder shortened = new StringBuilder(uri.getScheme()).append("://").append(uri.getHost());
+    String path = uri.getRawPath();
+    if (path != null && !path.isEmpty() && !path.equals("/")) {
+      String[] segments = path.substring(1).split("/");
+      int keep = Math.min(segments.length, MAX_PATH_SEGMENTS);
+      for (int i = 0; i < keep; i++) {
+        shortened.append('/').append(segments[i]);
+      }
+      if (segments.length > keep) {
+        shortened.append("/...");
+      }
+    }
+    return shortened.length() < url.length() ? shortened.toString() : url;
+  }
+
+  private static boolean tracking(URI uri) {
+    if (REDIRECT_HOST.matcher(uri.getHost()).matches()) {
+      return true;
+    }
+    String query = uri.getRawQuery();
+    if (query == null) {
+      return false;
+    }
+    for (String param : query.split("&")) {
+      int eq = param.indexOf('=');
+      String name = eq < 0 ? param : param.substring(0, eq);
+      String value = eq < 0 ? "" : param.substring(eq + 1);
+      if (TRACKING_PARAM.matcher(name).matches() || OPAQUE_VALUE.matcher(value).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,43 @@
+package com.sp.demo.service.llm;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Body of {@code generateContent} / {@code streamGenerateContent}. {@code generationConfig} is
+ * left out unless set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record GeminiRequest(List<Content> contents, GenerationConfig generationConfig) {
+
+  public record Content(List<Part> parts) {
+  }
+
+  public record Part(String text) {
+  }
+
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public record GenerationConfig(String responseMimeType, Schema responseSchema) {
+  }
+
+  /** The OpenAPI subset Gemini accepts as {@code responseSchema}. */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public record Schema(String type, Map<String, Schema> properties, List<String> required) {
+  }
+
+  public static GeminiRequest ofPrompt(String prompt) {
+    return new GeminiRequest(List.of(new Content(List.of(new Part(prompt)))), null);
+  }
+
+  /** JSON mode, constrained to an object with one required string field per name. */
+  public static GeminiRequest ofJsonPrompt(String prompt, List<String> stringFields) {
+    Map<String, Schema> properties = new LinkedHashMap<>();
+    for (String field : stringFields) {
+      properties.put(field, new Schema("STRING", null, null));
+    }
+    return new GeminiRequest(List.of(new Content(List.of(new Part(prompt)))),
+        new GenerationConfig("application/json", new Schema("OBJECT", properties, stringFields)));
+  }
+}
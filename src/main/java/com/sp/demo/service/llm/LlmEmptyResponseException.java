@@ -0,0 +1,12 @@
+package com.sp.demo.service.llm;
+
+/**
+ * The provider returned no candidate or no text, without saying it was blocked.
+ */
+public class LlmEmptyResponseException extends LlmProviderException {
+
+  public LlmEmptyResponseException(String provider, String finishReason) {
+    super(provider, 0, provider + " returned no text"
+        + (finishReason != null ? " (finish reason " + finishReason + ")" : ""));
+  }
+}
@@ -0,0 +1,32 @@
+package com.sp.demo.service.llm;
+
+/**
+ * An AI provider answered, but not with a usable reply: an error payload, a blocked prompt or
+ * an empty candidate. {@code status} is the HTTP status, or 0 when the problem was in a 200
+ * response body.
+ */
+public class LlmProviderException extends RuntimeException {
+
+  private final String provider;
+  private final int status;
+
+  public LlmProviderException(String provider, int status, String message) {
+    super(message);
+    this.provider = provider;
+    this.status = status;
+  }
+
+  public LlmProviderException(String provider, int status, String message, Throwable cause) {
+    super(message, cause);
+    this.provider = provider;
+    this.status = status;
+  }
+
+  public String getProvider() {
+    return provider;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+}
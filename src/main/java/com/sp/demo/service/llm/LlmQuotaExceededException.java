@@ -0,0 +1,22 @@
+package com.sp.demo.service.llm;
+
+import java.time.Duration;
+
+/**
+ * The provider rejected the call for rate or billing quota (HTTP 429, {@code RESOURCE_EXHAUSTED},
+ * {@code insufficient_quota}).
+ */
+public class LlmQuotaExceededException extends LlmProviderException {
+
+  private final Duration retryAfter;
+
+  public LlmQuotaExceededException(String provider, int status, String message, Duration retryAfter) {
+    super(provider, status, message);
+    this.retryAfter = retryAfter;
+  }
+
+  /** From the {@code Retry-After} header, or {@code null} when the provider sent none. */
+  public Duration getRetryAfter() {
+    return retryAfter;
+  }
+}
@@ -0,0 +1,8 @@
+package com.sp.demo.service.llm;
+
+/**
+ * The fields of a provider response the app uses. For stream chunks {@code text} is the piece
+ * carried by that chunk and may be empty.
+ */
+public record LlmReply(String text, String finishReason) {
+}
@@ -0,0 +1,347 @@
+package com.sp.demo.service.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads Gemini and OpenAI responses with a streaming {@link JsonParser}, keeping only the reply
+ * text, the finish reason and error details; everything else (safety ratings, usage, logprobs)
+ * is skipped without being materialized.
+ *
+ * <p>Problems come back as typed exceptions: {@link LlmQuotaExceededException} for rate and
+ * billing limits, {@link LlmSafetyBlockedException} for blocked prompts or withheld replies,
+ * {@link LlmEmptyResponseException} when there is no text, and {@link LlmProviderException}
+ * for any other error payload or unreadable body.
+ */
+@Component
+public class LlmResponseCodec {
+
+  public static final String GEMINI = "gemini";
+  public static final String OPENAI = "openai";
+
+  private static final Set<String> SAFETY_FINISH_REASONS = Set.of(
+      "SAFETY", "RECITATION", "BLOCKLIST", "PROHIBITED_CONTENT", "SPII", "IMAGE_SAFETY", "content_filter");
+
+  private interface FieldReader {
+    void read(String field) throws IOException;
+  }
+
+  private interface ElementReader {
+    void read() throws IOException;
+  }
+
+  /** What the parser kept from one document. */
+  private static final class Fields {
+    final StringBuilder text = new StringBuilder();
+    String finishReason;
+    String blockReason;
+    String refusal;
+    boolean error;
+    String errorCode;
+    String errorStatus;
+    String errorMessage;
+  }
+
+  private final JsonFactory jsonFactory;
+
+  public LlmResponseCodec(ObjectMapper objectMapper) {
+    this.jsonFactory = objectMapper.getFactory();
+  }
+
+  /** A full {@code generateContent} response. */
+  public LlmReply readGemini(InputStream body) {
+    Fields f = parse(GEMINI, body, null);
+    checkError(GEMINI, 0, f, null);
+    requireText(GEMINI, f.text.toString(), f.finishReason, f.blockReason);
+    return new LlmReply(f.text.toString(), f.finishReason);
+  }
+
+  /** One {@code streamGenerateContent?alt=sse} event; its text may be empty. */
+  public LlmReply readGeminiChunk(String data) {
+    Fields f = parse(GEMINI, null, data);
+    checkError(GEMINI, 0, f, null);
+    if (f.blockReason != null) {
+      throw new LlmSafetyBlockedException(GEMINI, f.blockReason);
+    }
+    return new LlmReply(f.text.toString(), f.finishReason);
+  }
+
+  /** A full {@code chat/completions} response. */
+  public LlmReply readOpenAi(InputStream body) {
+    Fields f = parse(OPENAI, body, null);
+    checkError(OPENAI, 0, f, null);
+    requireText(OPENAI, f.text.toString(), f.finishReason, f.refusal);
+    return new LlmReply(f.text.toString(), f.finishReason);
+  }
+
+  /** One {@code stream: true} chunk; its text may be empty. */
+  public LlmReply readOpenAiChunk(String data) {
+    Fields f = parse(OPENAI, null, data);
+    checkError(OPENAI, 0, f, null);
+    if (f.refusal != null && !f.refusal.isEmpty()) {
+      throw new LlmSafetyBlockedException(OPENAI, "refusal");
+    }
+    return new LlmReply(f.text.toString(), f.finishReason);
+  }
+
+  /**
+   * The JSON object a {@link ToneVariantsPrompt} reply carries, as one text per tone in
+   * {@code tones} order. Keys match case-insensitively; a missing or blank tone fails the whole
+   * reply, since the caller stores all variants or none.
+   */
+  public Map<String, String> readVariants(String provider, String replyText, List<String> tones) {
+    String json = stripCodeFence(replyText);
+    Map<String, String> byKey = new HashMap<>();
+    try (JsonParser p = jsonFactory.createParser(json)) {
+      if (p.nextToken() != JsonToken.START_OBJECT) {
+        throw new LlmProviderException(provider, 0, provider + " variants reply is not a JSON object");
+      }
+      readObject(p, field -> {
+        if (p.currentToken() == JsonToken.VALUE_STRING) {
+          byKey.put(field.toLowerCase(Locale.ROOT), p.getText());
+        } else {
+          p.skipChildren();
+        }
+      });
+    } catch (IOException e) {
+      throw new LlmProviderException(provider, 0, "Malformed " + provider + " variants reply", e);
+    }
+
+    Map<String, String> variants = new LinkedHashMap<>();
+    for (String tone : tones) {
+      String text = byKey.get(tone.toLowerCase(Locale.ROOT));
+      if (text == null || text.isBlank()) {
+        throw new LlmProviderException(provider, 0, provider + " variants reply has no '" + tone + "' reply");
+      }
+      variants.put(tone, text.strip());
+    }
+    return variants;
+  }
+
+  /**
+   * Turns an HTTP error response into the matching exception. Bodies that are not the
+   * provider's JSON error format still produce an {@link LlmProviderException} with the status.
+   */
+  public LlmProviderException readError(String provider, int status, byte[] body, HttpHeaders headers) {
+    Fields f;
+    try {
+      f = parse(provider, null, new String(body, StandardCharsets.UTF_8));
+    } catch (LlmProviderException e) {
+      f = new Fields();
+    }
+    f.error = true;
+    try {
+      checkError(provider, status, f, headers);
+      throw new IllegalStateException("unreachable: checkError throws for every error");
+    } catch (LlmProviderException e) {
+      return e;
+    }
+  }
+
+  /**
+   * Throws when a finished reply has no text: safety finish reasons and prompt blocks become
+   * {@link LlmSafetyBlockedException}, anything else {@link LlmEmptyResponseException}.
+   */
+  public void requireText(String provider, String text, String finishReason, String blockReason) {
+    if (blockReason != null && !blockReason.isEmpty()) {
+      throw new LlmSafetyBlockedException(provider, blockReason);
+    }
+    if (text != null && !text.isBlank()) {
+      return;
+    }
+    if (finishReason != null && SAFETY_FINISH_REASONS.contains(finishReason)) {
+      throw new LlmSafetyBlockedException(provider, finishReason);
+    }
+    throw new LlmEmptyResponseException(provider, finishReason);
+  }
+
+  private Fields parse(String provider, InputStream in, String data) {
+    Fields f = new Fields();
+    try (JsonParser p = in != null ? jsonFactory.createParser(in) : jsonFactory.createParser(data)) {
+      if (p.nextToken() != JsonToken.START_OBJECT) {
+        throw new LlmProviderException(provider, 0, "Malformed " + provider + " response: not a JSON object");
+      }
+      readObject(p, field -> {
+        switch (field) {
+          case "candidates", "choices" -> readFirst(p, () -> readCandidate(p, f));
+          case "promptFeedback" -> readObject(p, name -> {
+            if (name.equals("blockReason")) {
+              f.blockReason = p.getValueAsString();
+            } else {
+              p.skipChildren();
+            }
+          });
+          case "error" -> readErrorObject(p, f);
+          default -> p.skipChildren();
+        }
+      });
+    } catch (IOException e) {
+      throw new LlmProviderException(provider, 0, "Malformed " + provider + " response", e);
+    }
+    return f;
+  }
+
+  /**
+   * Gemini: {@code content.parts[*].text}, {@code finishReason}. OpenAI: {@code message} or
+   * {@code delta} with {@code content}/{@code refusal}, {@code finish_reason}.
+   */
+  private void readCandidate(JsonParser p, Fields f) throws IOException {
+    readObject(p, field -> {
+      switch (field) {
+        case "content" -> readObject(p, name -> {
+          if (name.equals("parts")) {
+            readAll(p, () -> readObject(p, partField -> {
+              if (partField.equals("text")) {
+                appendText(p, f);
+              } else {
+                p.skipChildren();
+              }
+            }));
+          } else {
+            p.skipChildren();
+          }
+        });
+        case "message", "delta" -> readObject(p, name -> {
+          switch (name) {
+            case "content" -> appendText(p, f);
+            case "refusal" -> f.refusal = p.getValueAsString();
+            default -> p.skipChildren();
+          }
+        });
+        case "finishReason", "finish_reason" -> f.finishReason = p.getValueAsString();
+        default -> p.skipChildren();
+      }
+    });
+  }
+
+  private void readErrorObject(JsonParser p, Fields f) throws IOException {
+    if (p.currentToken() != JsonToken.START_OBJECT) {
+      f.error = p.currentToken() != JsonToken.VALUE_NULL;
+      f.errorMessage = p.getValueAsString();
+      p.skipChildren();
+      return;
+    }
+    f.error = true;
+    readObject(p, name -> {
+      switch (name) {
+        case "code" -> f.errorCode = p.getValueAsString();
+        case "status", "type" -> f.errorStatus = p.getValueAsString();
+        case "message" -> f.errorMessage = p.getValueAsString();
+        default -> p.skipChildren();
+      }
+    });
+  }
+
+  private static void checkError(String provider, int status, Fields f, HttpHeaders headers) {
+    if (!f.error) {
+      return;
+    }
+    int code = status;
+    if (code == 0 && f.errorCode != null) {
+      try {
+        code = Integer.parseInt(f.errorCode);
+      } catch (NumberFormatException e) {
+        // OpenAI uses string codes such as "insufficient_quota"
+      }
+    }
+    String message = provider + " error"
+        + (code != 0 ? " " + code : "")
+        + (f.errorStatus != null ? " " + f.errorStatus : "")
+        + (f.errorMessage != null ? ": " + f.errorMessage : "");
+
+    String kind = (f.errorStatus + " " + f.errorCode).toLowerCase(Locale.ROOT);
+    if (code == 429 || kind.contains("resource_exhausted") || kind.contains("quota")
+        || kind.contains("rate_limit")) {
+      throw new LlmQuotaExceededException(provider, code, message, retryAfter(headers));
+    }
+    if (kind.contains("content_filter") || kind.contains("content_policy")) {
+      throw new LlmSafetyBlockedException(provider, f.errorStatus != null ? f.errorStatus : f.errorCode);
+    }
+    throw new LlmProviderException(provider, code, message);
+  }
+
+  private static Duration retryAfter(HttpHeaders headers) {
+    String value = headers == null ? null : headers.getFirst(HttpHeaders.RETRY_AFTER);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Duration.ofSeconds(Long.parseLong(value.trim()));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** JSON mode should return bare JSON, but a fenced block is accepted too. */
+  private static String stripCodeFence(String text) {
+    String t = text.strip();
+    if (t.startsWith("```")) {
+      int start = t.indexOf('\n');
+      int end = t.lastIndexOf("```");
+      if (start > 0 && end > start) {
+        return t.substring(start + 1, end);
+      }
+    }
+    return t;
+  }
+
+  private static void appendText(JsonParser p, Fields f) throws IOException {
+    if (p.currentToken() == JsonToken.VALUE_STRING) {
+      f.text.append(p.getTextCharacters(), p.getTextOffset(), p.getTextLength());
+    } else {
+      p.skipChildren();
+    }
+  }
+
+  /** Calls {@code reader} for each field of the object at the current token; null is skipped. */
+  private static void readObject(JsonParser p, FieldReader reader) throws IOException {
+    if (p.currentToken() != JsonToken.START_OBJECT) {
+      p.skipChildren();
+      return;
+    }
+    while (p.nextToken() == JsonToken.FIELD_NAME) {
+      String field = p.currentName();
+      p.nextToken();
+      reader.read(field);
+    }
+  }
+
+  /** Reads the first element of the array at the current token and skips the rest. */
+  private static void readFirst(JsonParser p, ElementReader reader) throws IOException {
+    if (p.currentToken() != JsonToken.START_ARRAY) {
+      p.skipChildren();
+      return;
+    }
+    if (p.nextToken() == JsonToken.END_ARRAY) {
+      return;
+    }
+    reader.read();
+    while (p.nextToken() != JsonToken.END_ARRAY) {
+      p.skipChildren();
+    }
+  }
+
+  private static void readAll(JsonParser p, ElementReader reader) throws IOException {
+    if (p.currentToken() != JsonToken.START_ARRAY) {
+      p.skipChildren();
+      return;
+    }
+    while (p.nextToken() != JsonToken.END_ARRAY) {
+      reader.read();
+    }
+  }
+}
@@ -0,0 +1,19 @@
+package com.sp.demo.service.llm;
+
+/**
+ * The provider refused the prompt or withheld the reply for safety or policy reasons. Retrying
+ * the same input will not help; the provider itself is healthy.
+ */
+public class LlmSafetyBlockedException extends LlmProviderException {
+
+  private final String reason;
+
+  public LlmSafetyBlockedException(String provider, String reason) {
+    super(provider, 0, provider + " blocked the reply (" + reason + ")");
+    this.reason = reason;
+  }
+
+  public String getReason() {
+    return reason;
+  }
+}
@@ -0,0 +1,33 @@
+package com.sp.demo.service.llm;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+/**
+ * Body of {@code /v1/chat/completions}. {@code stream} and {@code response_format} are left out
+ * unless set.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record OpenAiRequest(
+    String model,
+    List<Message> messages,
+    Boolean stream,
+    @JsonProperty("response_format") ResponseFormat responseFormat
+) {
+
+  public record Message(String role, String content) {
+  }
+
+  public record ResponseFormat(String type) {
+  }
+
+  public static OpenAiRequest ofPrompt(String model, String prompt, boolean stream) {
+    return new OpenAiRequest(model, List.of(new Message("user", prompt)), stream ? Boolean.TRUE : null, null);
+  }
+
+  /** JSON mode: the reply is a single JSON object. The prompt itself must ask for JSON. */
+  public static OpenAiRequest ofJsonPrompt(String model, String prompt) {
+    return new OpenAiRequest(model, List.of(new Message("user", prompt)), null, new ResponseFormat("json_object"));
+  }
+}
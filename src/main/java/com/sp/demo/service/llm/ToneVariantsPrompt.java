@@ -0,0 +1,24 @@
+package com.sp.demo.service.llm;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The prompt for several tone variants of one reply, answered as a JSON object keyed by tone.
+ * Read the reply with {@link LlmResponseCodec#readVariants}.
+ */
+public final class ToneVariantsPrompt {
+
+  private ToneVariantsPrompt() {
+  }
+
+  public static String of(String emailContent, List<String> tones) {
+    String keys = tones.stream().map(t -> "\"" + t + "\"").collect(Collectors.joining(", "));
+    return "Write a reply to the email below once for each of these tones: "
+        + String.join(", ", tones) + ".\n"
+        + "Answer with a JSON object whose keys are exactly " + keys
+        + ". Each value is the complete email reply in that tone, as plain text without a subject line.\n\n"
+        + "Email:\n\n"
+        + emailContent;
+  }
+}
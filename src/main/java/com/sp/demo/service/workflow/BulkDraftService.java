@@ -0,0 +1,393 @@
+package com.sp.demo.service.workflow;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sp.demo.api.request.BulkGenerateDraftsRequest;
+import com.sp.demo.api.response.BulkDraftResultResponse;
+import com.sp.demo.api.response.BulkDraftSummaryResponse;
+import com.sp.demo.domain.entity.Draft;
+import com.sp.demo.domain.entity.DraftLog;
+import com.sp.demo.domain.entity.GmailEmail;
+import com.sp.demo.domain.entity.User;
+import com.sp.demo.domain.entity.UserPreference;
+import com.sp.demo.domain.enums.Actor;
+import com.sp.demo.domain.enums.DraftAction;
+import com.sp.demo.domain.enums.DraftStatus;
+import com.sp.demo.repository.DraftLogRepository;
+import com.sp.demo.repository.DraftRepository;
+import com.sp.demo.repository.GmailEmailRepository;
+import com.sp.demo.repository.UserPreferenceRepository;
+import com.sp.demo.repository.UserRepository;
+import com.sp.demo.service.AiGeneration;
+import com.sp.demo.service.AiService;
+import com.sp.demo.service.GmailMessageBodyService;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Generates drafts for many inbox emails in one request.
+ *
+ * <p>All GENERATING rows are inserted in one transaction. Bodies are loaded (from
+ * {@code gmail_email} or Gmail) and replies generated on a shared pool of
+ * {@code draft.bulk.workers} threads, with at most {@code concurrency} emails of one request in
+ * flight, so wall-clock time tracks the slowest reply rather than the sum. Finished results are
+ * stored in batches, one transaction for whatever has completed since the last write, and
+ * reported through {@code onResult} right after. A failed email fails only its own draft, and a
+ * failed batch write fails only that batch. If the request stops early, or no email finishes
+ * within {@code draft.bulk.idle-timeout-ms}, every draft not yet stored is failed and queued emails
+ * skip the model call.
+ */
+@Slf4j
+@Service
+public class BulkDraftService {
+
+  private record Target(GmailEmail email, Draft draft) {
+  }
+
+  private record Outcome(Target target, AiGeneration generation, String error) {
+  }
+
+  private final DraftRepository draftRepository;
+  private final DraftLogRepository draftLogRepository;
+  private final GmailEmailRepository gmailEmailRepository;
+  private final UserRepository userRepository;
+  private final UserPreferenceRepository userPreferenceRepository;
+  private final GmailMessageBodyService gmailMessageBodyService;
+  private final AiService aiService;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectMapper objectMapper;
+
+  private final ExecutorService pool;
+  private final int workers;
+  private final int defaultConcurrency;
+  private final int maxEmails;
+  private final int batchSize;
+  private final long idleTimeoutMs;
+
+  public BulkDraftService(DraftRepository draftRepository,
+      DraftLogRepository draftLogRepository,
+      GmailEmailRepository gmailEmailRepository,
+      UserRepository userRepository,
+      UserPreferenceRepository userPreferenceRepository,
+      GmailMessageBodyService gmailMessageBodyService,
+      AiService aiService,
+      TransactionTemplate transactionTemplate,
+      ObjectMapper objectMapper,
+      @Value("${draft.bulk.workers:16}") int workers,
+      @Value("${draft.bulk.concurrency:8}") int defaultConcurrency,
+      @Value("${draft.bulk.max-emails:500}") int maxEmails,
+      @Value("${draft.bulk.batch-size:25}") int batchSize,
+      @Value("${draft.bulk.idle-timeout-ms:120000}") long idleTimeoutMs) {
+    this.draftRepository = draftRepository;
+    this.draftLogRepository = draftLogRepository;
+    this.gmailEmailRepository = gmailEmailRepository;
+    this.userRepository = userRepository;
+    this.userPreferenceRepository = userPreferenceRepository;
+    this.gmailMessageBodyService = gmailMessageBodyService;
+    this.aiService = aiService;
+    this.transactionTemplate = transactionTemplate;
+    this.objectMapper = objectMapper;
+    this.workers = workers;
+    this.defaultConcurrency = defaultConcurrency;
+    this.maxEmails = maxEmails;
+    this.batchSize = batchSize;
+    this.idleTimeoutMs = idleTimeoutMs;
+    this.pool = Executors.newFixedThreadPool(workers, new CustomizableThreadFactory("draft-bulk-"));
+  }
+
+  public BulkDraftSummaryResponse generate(BulkGenerateDraftsRequest request, Consumer<BulkDraftResultResponse> onResult) {
+    long startedAt = System.nanoTime();
+    List<Target> targets = start(request);
+    int concurrency = Math.max(1, Math.min(
+        request.getConcurrency() != null ? request.getConcurrency() : defaultConcurrency, workers));
+    String signature = signatureOf(request.getUserId());
+
+    LinkedBlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+    AtomicBoolean abandoned = new AtomicBoolean();
+    Set<UUID> stored = new HashSet<>();
+    int submitted = 0;
+    int generated = 0;
+    int failed = 0;
+    long slowestMs = 0;
+    boolean finished = false;
+    try {
+      while (submitted < Math.min(concurrency, targets.size())) {
+        submit(targets.get(submitted++), request, signature, outcomes, abandoned);
+      }
+
+      for (int done = 0; done < targets.size(); ) {
+        List<Outcome> batch = new ArrayList<>(batchSize);
+        Outcome next = outcomes.poll(idleTimeoutMs, TimeUnit.MILLISECONDS);
+        if (next == null) {
+          throw new IllegalStateException("No bulk draft finished within " + idleTimeoutMs + " ms after "
+              + (generated + failed) + " of " + targets.size() + " emails");
+        }
+        batch.add(next);
+        outcomes.drainTo(batch, batchSize - 1);
+        done += batch.size();
+
+        // refill the window before writing, so the pool never idles on the database
+        for (int i = 0; i < batch.size() && submitted < targets.size(); i++) {
+          submit(targets.get(submitted++), request, signature, outcomes, abandoned);
+        }
+
+        Map<UUID, DraftStatus> statuses;
+        try {
+          statuses = complete(batch);
+        } catch (DataAccessException | TransactionException e) {
+          log.warn("Could not store a batch of {} bulk drafts: {}", batch.size(), e.getMessage());
+          String error = "Could not store the generated draft: " + e.getMessage();
+          batch = batch.stream().map(o -> new Outcome(o.target(), null, error)).toList();
+          statuses = fail(batch.stream().map(o -> o.target().draft().getId()).toList(), error);
+        }
+        for (Outcome o : batch) {
+          stored.add(o.target().draft().getId());
+          if (o.error() == null) {
+            generated++;
+            slowestMs = Math.max(slowestMs, o.generation().latencyMs());
+          } else {
+            failed++;
+          }
+          onResult.accept(result(o, statuses.get(o.target().draft().getId())));
+        }
+      }
+      finished = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Bulk generation interrupted after " + (generated + failed) + " emails", e);
+    } finally {
+      if (!finished) {
+        // queued tasks see the flag and skip the model call; nothing stores their results now
+        abandoned.set(true);
+        fail(targets.stream().map(t -> t.draft().getId()).filter(id -> !stored.contains(id)).toList(),
+            "Bulk generation stopped before this draft was stored");
+      }
+    }
+
+    return BulkDraftSummaryResponse.builder()
+        .requested(targets.size())
+        .generated(generated)
+        .failed(failed)
+        .elapsedMs((System.nanoTime() - startedAt) / 1_000_000)
+        .slowestMs(slowestMs)
+        .build();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * Picks the emails and inserts a GENERATING draft for each, in one transaction.
+   */
+  private List<Target> start(BulkGenerateDraftsRequest request) {
+    return transactionTemplate.execute(status -> {
+      UUID userId = request.getUserId();
+      User user = userRepository.findById(userId)
+          .orElseThrow(() -> new RuntimeException("User not found"));
+
+      List<GmailEmail> emails;
+      if (request.getEmailIds() != null && !request.getEmailIds().isEmpty()) {
+        emails = gmailEmailRepository.findAllById(request.getEmailIds().stream().limit(maxEmails).toList())
+            .stream()
+            .filter(e -> e.getUser().getId().equals(userId))
+            .toList();
+      } else {
+        int limit = request.getLimit() != null ? Math.min(request.getLimit(), maxEmails) : maxEmails;
+        emails = gmailEmailRepository.findUnreadInboxWithoutDraft(userId, limit);
+      }
+
+      String tone = request.getTone();
+      if (tone == null || tone.isBlank()) {
+        UserPreference preference = userPreferenceRepository.findByUserId(userId).orElse(null);
+        tone = preference != null && preference.getDefaultTone() != null ? preference.getDefaultTone() : "formal";
+      }
+
+      List<Draft> drafts = new ArrayList<>(emails.size());
+      for (GmailEmail email : emails) {
+        drafts.add(Draft.builder()
+            .user(user)
+            .gmailMessageId(email.getGmailMessageId())
+            .threadId(email.getThreadId())
+            .tone(tone)
+            .status(DraftStatus.GENERATING)
+            .attempts(0)
+            .maxAttempts(3)
+            .build());
+      }
+      draftRepository.saveAll(drafts);
+
+      List<Target> targets = new ArrayList<>(emails.size());
+      for (int i = 0; i < emails.size(); i++) {
+        targets.add(new Target(emails.get(i), drafts.get(i)));
+      }
+      return targets;
+    });
+  }
+
+  private void submit(Target target, BulkGenerateDraftsRequest request, String signature,
+      LinkedBlockingQueue<Outcome> outcomes, AtomicBoolean abandoned) {
+    pool.execute(() -> {
+      if (abandoned.get()) {
+        return;
+      }
+      try {
+        String body = target.email().getBodyText();
+        if (body == null) {
+          body = gmailMessageBodyService.loadBody(request.getUserId(), target.email().getGmailMessageId());
+        }
+        AiGeneration generation = aiService.generate(body, target.draft().getTone(), request.isRegenerate());
+        if (signature != null && !signature.isBlank()) {
+          generation = generation.withText(generation.text() + "\n\n" + signature);
+        }
+        outcomes.add(new Outcome(target, generation, null));
+      } catch (Throwable e) {
+        // every task reports, or generate() waits on it until the idle timeout
+        outcomes.add(new Outcome(target, null, e.getMessage() != null ? e.getMessage() : e.toString()));
+        if (e instanceof Error error) {
+          throw error;
+        }
+      }
+    });
+  }
+
+  /**
+   * Stores one batch of finished generations. Drafts rejected while they were generating are
+   * left alone. Returns the status each draft ended up with.
+   */
+  private Map<UUID, DraftStatus> complete(List<Outcome> batch) {
+    Map<UUID, Outcome> byDraft = batch.stream()
+        .collect(Collectors.toMap(o -> o.target().draft().getId(), Function.identity()));
+
+    return transactionTemplate.execute(status -> {
+      List<Draft> drafts = draftRepository.findAllById(byDraft.keySet());
+      List<DraftLog> logs = new ArrayList<>(drafts.size());
+      for (Draft draft : drafts) {
+        if (draft.getStatus() != DraftStatus.GENERATING) {
+          continue;
+        }
+        Outcome o = byDraft.get(draft.getId());
+        if (o.error() == null) {
+          AiGeneration g = o.generation();
+          draft.setDraftText(g.text());
+          draft.setStatus(DraftStatus.PENDING);
+          draft.setAiProvider(g.provider());
+          draft.setAiModel(g.model());
+          draft.setAiRoute(g.route());
+          draft.setAiLatencyMs(g.latencyMs());
+          logs.add(log(draft, DraftAction.GENERATED, g.meta()));
+        } else {
+          draft.setStatus(DraftStatus.GENERATION_FAILED);
+          draft.setLastError(o.error());
+          logs.add(log(draft, DraftAction.GENERATION_FAILED, Map.of()));
+        }
+      }
+      draftRepository.saveAll(drafts);
+      draftLogRepository.saveAll(logs);
+      return statuses(drafts);
+    });
+  }
+
+  /**
+   * Fails the drafts that are still GENERATING. Best effort: if this write fails too, the stale
+   * generation sweep picks them up later.
+   */
+  private Map<UUID, DraftStatus> fail(List<UUID> draftIds, String error) {
+    if (draftIds.isEmpty()) {
+      return Map.of();
+    }
+    try {
+      return transactionTemplate.execute(status -> {
+        List<Draft> drafts = draftRepository.findAllById(draftIds);
+        List<DraftLog> logs = new ArrayList<>(drafts.size());
+        for (Draft draft : drafts) {
+          if (draft.getStatus() == DraftStatus.GENERATING) {
+            draft.setStatus(DraftStatus.GENERATION_FAILED);
+            draft.setLastError(error);
+            logs.add(log(draft, DraftAction.GENERATION_FAILED, Map.of()));
+          }
+        }
+        draftRepository.saveAll(drafts);
+        draftLogRepository.saveAll(logs);
+        return statuses(drafts);
+      });
+    } catch (DataAccessException | TransactionException e) {
+      log.warn("Could not fail {} bulk drafts, leaving them to the stale sweep: {}", draftIds.size(), e.getMessage());
+      return Map.of();
+    }
+  }
+
+  private static Map<UUID, DraftStatus> statuses(List<Draft> drafts) {
+    Map<UUID, DraftStatus> statuses = new HashMap<>();
+    for (Draft draft : drafts) {
+      statuses.put(draft.getId(), draft.getStatus());
+    }
+    return statuses;
+  }
+
+  private DraftLog log(Draft draft, DraftAction action, Map<String, Object> meta) {
+    String json;
+    try {
+      json = objectMapper.writeValueAsString(meta);
+    } catch (JsonProcessingException e) {
+      json = "{}";
+    }
+    return DraftLog.builder()
+        .draft(draft)
+        .actor(Actor.SYSTEM)
+        .action(action)
+        .meta(json)
+        .build();
+  }
+
+  private String signatureOf(UUID userId) {
+    return userPreferenceRepository.findByUserId(userId)
+        .map(UserPreference::getSignature)
+        .orElse(null);
+  }
+
+  /**
+   * Reports the stored status; a draft the user rejected mid-generation shows as REJECTED, not
+   * as the outcome that was dropped.
+   */
+  private static BulkDraftResultResponse result(Outcome o, DraftStatus stored) {
+    BulkDraftResultResponse.BulkDraftResultResponseBuilder b = BulkDraftResultResponse.builder()
+        .emailId(o.target().email().getId())
+        .gmailMessageId(o.target().email().getGmailMessageId())
+        .draftId(o.target().draft().getId());
+    DraftStatus expected = o.error() != null ? DraftStatus.GENERATION_FAILED : DraftStatus.PENDING;
+    if (stored != null && stored != expected) {
+      return b.status(stored.name()).build();
+    }
+    if (o.error() != null) {
+      return b.status(DraftStatus.GENERATION_FAILED.name()).error(o.error()).build();
+    }
+    return b.status(DraftStatus.PENDING.name())
+        .provider(o.generation().provider())
+        .route(o.generation().route())
+        .latencyMs(o.generation().latencyMs())
+        .build();
+  }
+}
@@ -0,0 +1,115 @@
+package com.sp.demo.service.workflow;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded pool for LLM calls made on behalf of {@code POST /api/drafts/generate}.
+ *
+ * <p>{@code draft.generation.workers} calls run at once and up to
+ * {@code draft.generation.queue-capacity} wait. When the queue is full,
+ * {@code draft.generation.rejection} decides: {@code reject} fails the request with
+ * {@link DraftGenerationRejectedException}; {@code caller-runs} runs the call on the request
+ * thread instead. Streamed generations are always rejected, see {@link #submitDetached}.
+ */
+@Component
+public class DraftGenerationExecutor {
+
+  /**
+   * Pool state plus time to first token for streamed generations, the latency a user watching
+   * the stream actually feels.
+   */
+  public record GenerationStats(int active, int queued, int queueCapacity, long completed, long rejected,
+      long streams, double avgTimeToFirstTokenMs, double maxTimeToFirstTokenMs) {
+  }
+
+  private final ThreadPoolExecutor pool;
+  private final int queueCapacity;
+  private final boolean callerRuns;
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong streams = new AtomicLong();
+  private final AtomicLong ttftTotalNanos = new AtomicLong();
+  private final AtomicLong ttftMaxNanos = new AtomicLong();
+
+  public DraftGenerationExecutor(
+      @Value("${draft.generation.workers:8}") int workers,
+      @Value("${draft.generation.queue-capacity:100}") int queueCapacity,
+      @Value("${draft.generation.rejection:reject}") String rejection) {
+    this.queueCapacity = queueCapacity;
+    this.callerRuns = callerRuns(rejection);
+    this.pool = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("draft-gen-"));
+  }
+
+  public void submit(Runnable task) {
+    if (!tryExecute(task)) {
+      if (callerRuns) {
+        task.run();
+        return;
+      }
+      throw rejection();
+    }
+  }
+
+  /**
+   * Like {@link #submit}, but never runs {@code task} on the calling thread. For callers that
+   * must return before the task finishes, such as a stream whose emitter is handed back to the
+   * client only after this returns.
+   */
+  public void submitDetached(Runnable task) {
+    if (!tryExecute(task)) {
+      throw rejection();
+    }
+  }
+
+  public void recordTimeToFirstToken(long nanos) {
+    streams.incrementAndGet();
+    ttftTotalNanos.addAndGet(nanos);
+    ttftMaxNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  public GenerationStats stats() {
+    long streamCount = streams.get();
+    return new GenerationStats(pool.getActiveCount(), pool.getQueue().size(), queueCapacity,
+        pool.getCompletedTaskCount(), rejected.get(), streamCount,
+        streamCount == 0 ? 0 : ttftTotalNanos.get() / 1e6 / streamCount,
+        ttftMaxNanos.get() / 1e6);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  private boolean tryExecute(Runnable task) {
+    try {
+      pool.execute(task);
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  private DraftGenerationRejectedException rejection() {
+    rejected.incrementAndGet();
+    return new DraftGenerationRejectedException(
+        "Draft generation queue is full (" + queueCapacity + " waiting), try again shortly");
+  }
+
+  private static boolean callerRuns(String rejection) {
+    return switch (rejection.trim().toLowerCase(Locale.ROOT)) {
+      case "reject" -> false;
+      case "caller-runs" -> true;
+      default -> throw new IllegalStateException(
+          "draft.generation.rejection must be reject or caller-runs, not " + rejection);
+    };
+  }
+}
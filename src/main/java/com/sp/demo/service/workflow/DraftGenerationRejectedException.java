@@ -0,0 +1,11 @@
+package com.sp.demo.service.workflow;
+
+/**
+ * The generation queue is full and {@code draft.generation.rejection} is {@code reject}.
+ */
+public class DraftGenerationRejectedException extends RuntimeException {
+
+  public DraftGenerationRejectedException(String message) {
+    super(message);
+  }
+}
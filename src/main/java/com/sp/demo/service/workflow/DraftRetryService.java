@@ -3,8 +3,10 @@ package com.sp.demo.service.workflow;
 import com.sp.demo.domain.entity.Draft;
 import com.sp.demo.domain.enums.DraftStatus;
 import com.sp.demo.repository.DraftRepository;
+import java.time.Instant;
 import java.util.List;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
@@ -15,6 +17,9 @@ public class DraftRetryService {
   private final DraftRepository draftRepository;
   private final DraftWorkflowService draftWorkflowService;
 
+  @Value("${draft.generation.stale-after-ms:600000}")
+  private long generationStaleAfterMs;
+
   @Scheduled(fixedDelay = 15000) // dev frequency: 15s; increase later
   public void retryFailedDrafts() {
 
@@ -44,5 +49,13 @@ public class DraftRetryService {
     }
   }
 
+  /**
+   * Drafts whose generation never finished (restart, lost worker) would otherwise stay
+   * GENERATING forever.
+   */
+  @Scheduled(fixedDelay = 60000)
+  public void failStaleGenerations() {
+    draftRepository.failStaleGenerations(
+        Instant.now().minusMillis(generationStaleAfterMs), "Generation did not finish");
+  }
 }
-
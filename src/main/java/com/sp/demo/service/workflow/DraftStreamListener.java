@@ -0,0 +1,20 @@
+package com.sp.demo.service.workflow;
+
+import com.sp.demo.domain.entity.Draft;
+import java.util.UUID;
+
+/**
+ * Callbacks for {@link DraftWorkflowService#generateDraftStreaming}. {@link #onStarted} runs on
+ * the request thread; the others run on a generation worker.
+ */
+public interface DraftStreamListener {
+
+  void onStarted(Draft draft);
+
+  void onToken(String text);
+
+  /** The reply has been stored; {@code draft} is the reloaded row. */
+  void onCompleted(Draft draft);
+
+  void onFailed(UUID draftId, Exception error);
+}
@@ -1,7 +1,11 @@
 package com.sp.demo.service.workflow;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sp.demo.domain.entity.Draft;
 import com.sp.demo.domain.entity.DraftLog;
+import com.sp.demo.domain.entity.GmailEmail;
+import com.sp.demo.domain.entity.OAuthToken;
 import com.sp.demo.domain.entity.SendAttempt;
 import com.sp.demo.domain.entity.SentMessage;
 import com.sp.demo.domain.entity.User;
@@ -12,22 +16,44 @@ import com.sp.demo.domain.enums.DraftAction;
 import com.sp.demo.domain.enums.DraftStatus;
 import com.sp.demo.domain.enums.SendStatus;
 import com.sp.demo.external.gmail.GmailClient;
+import com.sp.demo.external.gmail.GmailClient.ReplyEnvelope;
+import com.sp.demo.external.gmail.GmailErrorClassifier;
+import com.sp.demo.external.gmail.GmailRateLimitedException;
+import com.sp.demo.external.google.AccessTokenCache;
+import com.sp.demo.external.google.GoogleGrantRevokedException;
 import com.sp.demo.external.google.TokenRefreshService;
 import com.sp.demo.repository.DraftLogRepository;
 import com.sp.demo.repository.DraftRepository;
+import com.sp.demo.repository.GmailEmailRepository;
 import com.sp.demo.repository.OAuthTokenRepository;
 import com.sp.demo.repository.SendAttemptRepository;
 import com.sp.demo.repository.SentMessageRepository;
 import com.sp.demo.repository.UserRepository;
 import com.sp.demo.repository.UserPreferenceRepository;
+import com.sp.demo.service.AiGeneration;
 import com.sp.demo.service.AiService;
+import com.sp.demo.service.GmailMessageBodyService;
+import com.sp.demo.service.UnreadSnapshotCache;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class DraftWorkflowService {
@@ -38,63 +64,437 @@ public class DraftWorkflowService {
   private final SentMessageRepository sentMessageRepository;
   private final UserRepository userRepository;
   private final UserPreferenceRepository userPreferenceRepository;
+  private final GmailEmailRepository gmailEmailRepository;
 
   private final AiService aiService;
   private final GmailClient gmailClient;
   private final OAuthTokenRepository tokenRepository;
   private final TokenRefreshService tokenRefreshService;
+  private final AccessTokenCache accessTokenCache;
+  private final GmailMessageBodyService gmailMessageBodyService;
+  private final UnreadSnapshotCache unreadSnapshotCache;
+  private final DraftGenerationExecutor draftGenerationExecutor;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectMapper objectMapper;
+
+  private static final Pattern TONE = Pattern.compile("[A-Za-z][A-Za-z -]{0,49}");
+
+  @Value("${draft.variants.max-tones:4}")
+  private int maxVariantTones;
+
+  /**
+   * Everything a generation needs once its GENERATING row exists, so the LLM call can run
+   * without a transaction or an open persistence context.
+   */
+  private record GenerationJob(
+      Draft draft,
+      UUID userId,
+      String gmailMessageId,
+      String emailContent,
+      String tone,
+      String signature,
+      boolean regenerate
+  ) {
+  }
 
+  /**
+   * A set of GENERATING sibling drafts, one per tone, filled from a single provider call.
+   */
+  private record VariantsJob(
+      List<Draft> drafts,
+      UUID userId,
+      String gmailMessageId,
+      String emailContent,
+      String signature,
+      boolean regenerate
+  ) {
 
-  @Transactional
+    List<String> tones() {
+      return drafts.stream().map(Draft::getTone).toList();
+    }
+  }
+
+  /**
+   * Generates a draft on the calling thread and returns it once the reply is stored. The LLM
+   * call runs outside any transaction, like the asynchronous path. {@code regenerate} skips the
+   * AI reply cache in this and the other generate methods.
+   */
   public Draft generateDraft(UUID userId,
       String gmailMessageId,
       String threadId,
       String emailContent,
-      String tone) {
+      String tone,
+      boolean regenerate) {
 
-    User user = userRepository.findById(userId)
-        .orElseThrow(() -> new RuntimeException("User not found"));
+    GenerationJob job = startGeneration(userId, gmailMessageId, threadId, emailContent, tone, regenerate);
+    runGeneration(job, true);
+    return getDraft(job.draft().getId());
+  }
 
-    UserPreference preference = userPreferenceRepository
-        .findByUserId(userId)
-        .orElse(null);
+  /**
+   * Creates a GENERATING draft and hands the LLM call to {@link DraftGenerationExecutor}.
+   * Poll the draft until it is PENDING (text ready) or GENERATION_FAILED.
+   *
+   * @throws DraftGenerationRejectedException when the generation queue is full
+   */
+  public Draft generateDraftAsync(UUID userId,
+      String gmailMessageId,
+      String threadId,
+      String emailContent,
+      String tone,
+      boolean regenerate) {
 
-    String effectiveTone = tone;
-    if (effectiveTone == null || effectiveTone.isBlank()) {
-      effectiveTone = preference != null && preference.getDefaultTone() != null
-          ? preference.getDefaultTone()
-          : "formal";
+    GenerationJob job = startGeneration(userId, gmailMessageId, threadId, emailContent, tone, regenerate);
+    try {
+      draftGenerationExecutor.submit(() -> runGeneration(job, false));
+    } catch (DraftGenerationRejectedException e) {
+      failGeneration(job.draft().getId(), e.getMessage());
+      throw e;
     }
+    return job.draft();
+  }
 
-    String reply = aiService.generateReply(emailContent, effectiveTone);
+  /**
+   * Creates a GENERATING draft and streams the reply to {@code listener} as the provider produces
+   * it. The draft text is written once, when the stream completes.
+   *
+   * @throws DraftGenerationRejectedException when the generation queue is full
+   */
+  public Draft generateDraftStreaming(UUID userId,
+      String gmailMessageId,
+      String threadId,
+      String emailContent,
+      String tone,
+      boolean regenerate,
+      DraftStreamListener listener) {
 
-    if (preference != null && preference.getSignature() != null && !preference.getSignature().isBlank()) {
-      reply = reply + "\n\n" + preference.getSignature();
+    GenerationJob job = startGeneration(userId, gmailMessageId, threadId, emailContent, tone, regenerate);
+    listener.onStarted(job.draft());
+    UUID draftId = job.draft().getId();
+    try {
+      // never caller-runs: the emitter only reaches the client once this returns
+      draftGenerationExecutor.submitDetached(() -> {
+        long startedAt = System.nanoTime();
+        boolean[] first = {true};
+        try {
+          runGeneration(job, true, text -> {
+            if (first[0]) {
+              first[0] = false;
+              draftGenerationExecutor.recordTimeToFirstToken(System.nanoTime() - startedAt);
+            }
+            listener.onToken(text);
+          });
+        } catch (RuntimeException e) {
+          listener.onFailed(draftId, e);
+          return;
+        }
+        listener.onCompleted(getDraft(draftId));
+      });
+    } catch (DraftGenerationRejectedException e) {
+      failGeneration(draftId, e.getMessage());
+      throw e;
     }
+    return job.draft();
+  }
 
-    Draft draft = Draft.builder()
-        .user(user)
-        .gmailMessageId(gmailMessageId)
-        .threadId(threadId)
-        .tone(effectiveTone)
-        .draftText(reply)
-        .status(DraftStatus.PENDING)
-        .attempts(0)
-        .maxAttempts(3)
-        .build();
+  /**
+   * Generates one draft per tone from a single provider call and returns them, in {@code tones}
+   * order, once stored. The drafts are siblings sharing a {@code variantGroupId}, so switching
+   * tone afterwards is a read of {@link #listVariants} instead of another generation.
+   *
+   * @throws IllegalArgumentException when no tone, more than {@code draft.variants.max-tones}
+   *     tones or a malformed tone is given
+   */
+  public List<Draft> generateVariants(UUID userId,
+      String gmailMessageId,
+      String threadId,
+      String emailContent,
+      List<String> tones,
+      boolean regenerate) {
+
+    VariantsJob job = startVariants(userId, gmailMessageId, threadId, emailContent, tones, regenerate);
+    runVariants(job, true);
+    return job.drafts().stream().map(d -> getDraft(d.getId())).toList();
+  }
+
+  /**
+   * Like {@link #generateVariants}, but returns the GENERATING drafts right away and runs the
+   * provider call on {@link DraftGenerationExecutor}. All siblings become PENDING together, or
+   * all GENERATION_FAILED.
+   *
+   * @throws DraftGenerationRejectedException when the generation queue is full
+   */
+  public List<Draft> generateVariantsAsync(UUID userId,
+      String gmailMessageId,
+      String threadId,
+      String emailContent,
+      List<String> tones,
+      boolean regenerate) {
 
+    VariantsJob job = startVariants(userId, gmailMessageId, threadId, emailContent, tones, regenerate);
+    try {
+      draftGenerationExecutor.submit(() -> runVariants(job, false));
+    } catch (DraftGenerationRejectedException e) {
+      job.drafts().forEach(d -> failGeneration(d.getId(), e.getMessage()));
+      throw e;
+    }
+    return job.drafts();
+  }
+
+  /**
+   * The drafts generated together with {@code draftId} as tone variants, including itself; just
+   * the draft for one generated on its own.
+   */
+  @Transactional(readOnly = true)
+  public List<Draft> listVariants(UUID draftId) {
+    Draft draft = draftRepository.findById(draftId)
+        .orElseThrow(() -> new RuntimeException("Draft not found"));
+
+    if (draft.getVariantGroupId() == null) {
+      return List.of(draft);
+    }
+    return draftRepository.findByVariantGroupIdOrderByCreatedAtAsc(draft.getVariantGroupId());
+  }
+
+  private VariantsJob startVariants(UUID userId,
+      String gmailMessageId,
+      String threadId,
+      String emailContent,
+      List<String> tones,
+      boolean regenerate) {
+
+    List<String> variantTones = variantTones(tones);
+
+    return transactionTemplate.execute(status -> {
+      User user = userRepository.findById(userId)
+          .orElseThrow(() -> new RuntimeException("User not found"));
+
+      UserPreference preference = userPreferenceRepository
+          .findByUserId(userId)
+          .orElse(null);
+
+      UUID variantGroupId = UUID.randomUUID();
+      List<Draft> drafts = new ArrayList<>(variantTones.size());
+      for (String tone : variantTones) {
+        drafts.add(Draft.builder()
+            .user(user)
+            .gmailMessageId(gmailMessageId)
+            .threadId(threadId)
+            .tone(tone)
+            .variantGroupId(variantGroupId)
+            .status(DraftStatus.GENERATING)
+            .attempts(0)
+            .maxAttempts(3)
+            .build());
+      }
+
+      draftRepository.saveAll(drafts);
+
+      return new VariantsJob(drafts, userId, gmailMessageId, emailContent,
+          preference != null ? preference.getSignature() : null, regenerate);
+    });
+  }
+
+  /** Trimmed, de-duplicated ignoring case, in request order. */
+  private List<String> variantTones(List<String> tones) {
+    List<String> result = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+    if (tones != null) {
+      for (String tone : tones) {
+        if (tone == null || tone.isBlank()) {
+          continue;
+        }
+        String t = tone.trim();
+        if (!TONE.matcher(t).matches()) {
+          throw new IllegalArgumentException("Invalid tone: " + t);
+        }
+        if (seen.add(t.toLowerCase(Locale.ROOT))) {
+          result.add(t);
+        }
+      }
+    }
+
+    if (result.isEmpty()) {
+      throw new IllegalArgumentException("At least one tone is required");
+    }
+    if (result.size() > maxVariantTones) {
+      throw new IllegalArgumentException("At most " + maxVariantTones + " tones per request");
+    }
+    return result;
+  }
+
+  private GenerationJob startGeneration(UUID userId,
+      String gmailMessageId,
+      String threadId,
+      String emailContent,
+      String tone,
+      boolean regenerate) {
+
+    return transactionTemplate.execute(status -> {
+      User user = userRepository.findById(userId)
+          .orElseThrow(() -> new RuntimeException("User not found"));
+
+      UserPreference preference = userPreferenceRepository
+          .findByUserId(userId)
+          .orElse(null);
+
+      String effectiveTone = tone;
+      if (effectiveTone == null || effectiveTone.isBlank()) {
+        effectiveTone = preference != null && preference.getDefaultTone() != null
+            ? preference.getDefaultTone()
+            : "formal";
+      }
+
+      Draft draft = Draft.builder()
+          .user(user)
+          .gmailMessageId(gmailMessageId)
+          .threadId(threadId)
+          .tone(effectiveTone)
+          .status(DraftStatus.GENERATING)
+          .attempts(0)
+          .maxAttempts(3)
+          .build();
+
+      draftRepository.save(draft);
+
+      return new GenerationJob(draft, userId, gmailMessageId, emailContent, effectiveTone,
+          preference != null ? preference.getSignature() : null, regenerate);
+    });
+  }
+
+  private void runGeneration(GenerationJob job, boolean rethrow) {
+    runGeneration(job, rethrow, null);
+  }
+
+  /**
+   * @param onToken receives the reply piece by piece, signature last; {@code null} uses the
+   *     blocking provider call
+   */
+  private void runGeneration(GenerationJob job, boolean rethrow, Consumer<String> onToken) {
+    UUID draftId = job.draft().getId();
+    AiGeneration generation;
+    try {
+      String content = job.emailContent();
+      if ((content == null || content.isBlank()) && job.gmailMessageId() != null && !job.gmailMessageId().isBlank()) {
+        content = loadBody(job.userId(), job.gmailMessageId());
+      }
+
+      generation = onToken == null
+          ? aiService.generate(content, job.tone(), job.regenerate())
+          : aiService.stream(content, job.tone(), job.regenerate(), onToken);
+
+      if (job.signature() != null && !job.signature().isBlank()) {
+        String suffix = "\n\n" + job.signature();
+        generation = generation.withText(generation.text() + suffix);
+        if (onToken != null) {
+          onToken.accept(suffix);
+        }
+      }
+    } catch (RuntimeException e) {
+      failGeneration(draftId, e.getMessage());
+      if (rethrow) {
+        throw e;
+      }
+      return;
+    }
+
+    AiGeneration result = generation;
+    transactionTemplate.executeWithoutResult(status -> completeGeneration(draftId, result, result.meta()));
+  }
+
+  private void runVariants(VariantsJob job, boolean rethrow) {
+    Map<String, AiGeneration> variants;
+    try {
+      String content = job.emailContent();
+      if ((content == null || content.isBlank()) && job.gmailMessageId() != null && !job.gmailMessageId().isBlank()) {
+        content = loadBody(job.userId(), job.gmailMessageId());
+      }
+
+      variants = aiService.generateVariants(content, job.tones(), job.regenerate());
+    } catch (RuntimeException e) {
+      job.drafts().forEach(d -> failGeneration(d.getId(), e.getMessage()));
+      if (rethrow) {
+        throw e;
+      }
+      return;
+    }
+
+    String suffix = job.signature() != null && !job.signature().isBlank() ? "\n\n" + job.signature() : "";
+    transactionTemplate.executeWithoutResult(status -> {
+      for (Draft d : job.drafts()) {
+        AiGeneration result = variants.get(d.getTone());
+        result = result.withText(result.text() + suffix);
+
+        Map<String, Object> meta = new LinkedHashMap<>(result.meta());
+        meta.put("variantGroupId", d.getVariantGroupId());
+        meta.put("variants", job.drafts().size());
+        completeGeneration(d.getId(), result, meta);
+      }
+    });
+  }
+
+  /** Stores the reply on a GENERATING draft and logs it; call inside a transaction. */
+  private void completeGeneration(UUID draftId, AiGeneration result, Map<String, Object> meta) {
+    Draft draft = draftRepository.findById(draftId).orElse(null);
+    if (draft == null || draft.getStatus() != DraftStatus.GENERATING) {
+      // rejected or removed while the LLM call was running
+      return;
+    }
+
+    draft.setDraftText(result.text());
+    draft.setStatus(DraftStatus.PENDING);
+    draft.setAiProvider(result.provider());
+    draft.setAiModel(result.model());
+    draft.setAiRoute(result.route());
+    draft.setAiLatencyMs(result.latencyMs());
     draftRepository.save(draft);
 
-    DraftLog log = DraftLog.builder()
-        .draft(draft)
-        .actor(Actor.SYSTEM)
-        .action(DraftAction.GENERATED)
-        .meta("{}")
-        .build();
+    draftLogRepository.save(
+        DraftLog.builder()
+            .draft(draft)
+            .actor(Actor.SYSTEM)
+            .action(DraftAction.GENERATED)
+            .meta(toJson(meta))
+            .build()
+    );
+  }
 
-    draftLogRepository.save(log);
+  private String toJson(Map<String, Object> meta) {
+    try {
+      return objectMapper.writeValueAsString(meta);
+    } catch (JsonProcessingException e) {
+      return "{}";
+    }
+  }
 
-    return draft;
+  private void failGeneration(UUID draftId, String error) {
+    transactionTemplate.executeWithoutResult(status -> {
+      Draft draft = draftRepository.findById(draftId).orElse(null);
+      if (draft == null || draft.getStatus() != DraftStatus.GENERATING) {
+        return;
+      }
+
+      draft.setStatus(DraftStatus.GENERATION_FAILED);
+      draft.setLastError(error);
+      draftRepository.save(draft);
+
+      draftLogRepository.save(
+          DraftLog.builder()
+              .draft(draft)
+              .actor(Actor.SYSTEM)
+              .action(DraftAction.GENERATION_FAILED)
+              .meta("{}")
+              .build()
+      );
+    });
+  }
+
+  private String loadBody(UUID userId, String gmailMessageId) {
+    try {
+      return gmailMessageBodyService.loadBody(userId, gmailMessageId);
+    } catch (Exception e) {
+      throw new RuntimeException("Could not load email body for " + gmailMessageId, e);
+    }
   }
 
   @Transactional(readOnly = true)
@@ -160,8 +560,16 @@ public class DraftWorkflowService {
     );
   }
 
-  @Transactional
+  /**
+   * A Gmail metadata fetch, when the envelope is not cached, runs before the approval
+   * transaction, so no database connection is held while Gmail answers.
+   */
   public void approveDraft(UUID draftId) {
+    ReplyEnvelope fetched = fetchMissingEnvelope(draftId);
+    transactionTemplate.executeWithoutResult(status -> approve(draftId, fetched));
+  }
+
+  private void approve(UUID draftId, ReplyEnvelope fetched) {
 
     Draft draft = draftRepository.findById(draftId)
         .orElseThrow(() -> new RuntimeException("Draft not found"));
@@ -180,6 +588,7 @@ public class DraftWorkflowService {
 
     draft.setStatus(DraftStatus.APPROVED);
     draft.setApprovedAt(Instant.now());
+    captureEnvelope(draft, fetched);
 
     DraftLog log = DraftLog.builder()
         .draft(draft)
@@ -191,7 +600,98 @@ public class DraftWorkflowService {
     draftLogRepository.save(log);
   }
 
-  @Transactional
+  /**
+   * Stores the reply recipient, subject and threading headers on the draft, so sending is a
+   * single messages.send call. Uses the gmail_email cache, else the envelope fetched up front.
+   */
+  private void captureEnvelope(Draft draft, ReplyEnvelope fetched) {
+    if (draft.getGmailMessageId() == null || draft.getGmailMessageId().isBlank()
+        || storedEnvelope(draft) != null) {
+      return;
+    }
+    ReplyEnvelope cached = cachedEnvelope(draft);
+    if (cached != null) {
+      applyEnvelope(draft, cached);
+    } else if (fetched != null) {
+      applyEnvelope(draft, fetched);
+    }
+  }
+
+  /**
+   * The envelope from Gmail for an approvable draft that has none stored or cached, else null.
+   * A failed fetch is not fatal: sendDraft fetches the headers itself when they are missing.
+   */
+  private ReplyEnvelope fetchMissingEnvelope(UUID draftId) {
+    Draft draft = transactionTemplate.execute(status -> draftRepository.findById(draftId)
+        .filter(d -> d.getStatus() == DraftStatus.PENDING || d.getStatus() == DraftStatus.EDITED)
+        .filter(d -> d.getGmailMessageId() != null && !d.getGmailMessageId().isBlank())
+        .filter(d -> storedEnvelope(d) == null && cachedEnvelope(d) == null)
+        .orElse(null));
+    if (draft == null) {
+      return null;
+    }
+
+    try {
+      return fetchEnvelope(tokenRefreshService.validTokenFor(draft.getUser().getId()), draft);
+    } catch (Exception e) {
+      log.warn("Could not fetch reply headers for draft {} at approval: {}", draftId, e.getMessage());
+      return null;
+    }
+  }
+
+  private ReplyEnvelope cachedEnvelope(Draft draft) {
+    GmailEmail cached = gmailEmailRepository
+        .findByUserIdAndGmailMessageId(draft.getUser().getId(), draft.getGmailMessageId())
+        .orElse(null);
+    if (cached == null || cached.getFromAddress() == null || cached.getMessageIdHeader() == null) {
+      return null;
+    }
+    return ReplyEnvelope.of(new GmailClient.GmailMessageDetails(
+        cached.getGmailMessageId(),
+        cached.getThreadId(),
+        cached.getFromAddress(),
+        cached.getSubject(),
+        cached.getMessageIdHeader(),
+        cached.getReferencesHeader(),
+        null,
+        cached.getSnippet(),
+        List.of(),
+        cached.getReceivedAt()));
+  }
+
+  private ReplyEnvelope fetchEnvelope(OAuthToken token, Draft draft) throws Exception {
+    GmailClient.GmailMessageDetails original =
+        gmailClient.getMessageMetadata(token, List.of(draft.getGmailMessageId())).get(0);
+    return ReplyEnvelope.of(original);
+  }
+
+  private ReplyEnvelope storedEnvelope(Draft draft) {
+    if (draft.getReplyTo() == null || draft.getReplyTo().isBlank()) {
+      return null;
+    }
+    return new ReplyEnvelope(
+        draft.getReplyTo(),
+        draft.getReplySubject(),
+        draft.getReplyInReplyTo(),
+        draft.getReplyReferences(),
+        draft.getThreadId());
+  }
+
+  private void applyEnvelope(Draft draft, ReplyEnvelope envelope) {
+    draft.setReplyTo(envelope.to());
+    draft.setReplySubject(envelope.subject());
+    draft.setReplyInReplyTo(envelope.inReplyTo());
+    draft.setReplyReferences(envelope.references());
+    if (envelope.threadId() != null && !envelope.threadId().isBlank()) {
+      draft.setThreadId(envelope.threadId());
+    }
+  }
+
+  /**
+   * A rate-limited send is not counted as an attempt: the draft goes back to its previous status
+   * and the {@link GmailRateLimitedException} is rethrown so the caller can retry later.
+   */
+  @Transactional(noRollbackFor = GmailRateLimitedException.class)
   public void sendDraft(UUID draftId) {
 
     Draft draft = draftRepository.findById(draftId)
@@ -211,6 +711,8 @@ public class DraftWorkflowService {
       throw new RuntimeException("Draft not eligible for sending");
     }
 
+    DraftStatus previousStatus = draft.getStatus();
+
     // mark sending early to avoid duplicate parallel sends
     draft.setStatus(DraftStatus.SENDING);
     draft.setAttempts(draft.getAttempts() + 1);
@@ -237,20 +739,19 @@ public class DraftWorkflowService {
     sendAttemptRepository.save(attempt);
 
     try {
-      var token = tokenRepository
-          .findByUserIdAndProvider(
-              draft.getUser().getId(),
-              AuthProvider.GOOGLE)
-          .orElseThrow(() -> new RuntimeException("OAuth token not found"));
-
-      // ensure valid token (refresh if needed)
-      token = tokenRefreshService.ensureValidToken(token);
+      // cached, or refreshed ahead of expiry by TokenRefreshScheduler
+      var token = tokenRefreshService.validTokenFor(draft.getUser().getId());
 
       String gmailMessageId;
       if (draft.getGmailMessageId() != null && !draft.getGmailMessageId().isBlank()) {
-        GmailClient.GmailMessageDetails original =
-            gmailClient.getMessageDetails(token, draft.getGmailMessageId());
-        gmailMessageId = gmailClient.sendReply(token, original, draft.getDraftText());
+        ReplyEnvelope envelope = storedEnvelope(draft);
+        if (envelope == null) {
+          // approved before the envelope was captured, or cache was empty: fetch once and keep it
+          envelope = fetchEnvelope(token, draft);
+          applyEnvelope(draft, envelope);
+          draftRepository.save(draft);
+        }
+        gmailMessageId = gmailClient.sendReply(token, envelope, draft.getDraftText());
       } else {
         gmailMessageId = gmailClient.sendEmail(
             token,
@@ -277,6 +778,9 @@ public class DraftWorkflowService {
       draft.setSentAt(Instant.now());
       draftRepository.save(draft);
 
+      // the original is now read/replied to; the next unread listing must not reuse the snapshot
+      unreadSnapshotCache.invalidate(draft.getUser().getId());
+
       draftLogRepository.save(
           DraftLog.builder()
               .draft(draft)
@@ -288,8 +792,23 @@ public class DraftWorkflowService {
 
     } catch (Exception e) {
 
-      if (e.getMessage() != null &&
-          e.getMessage().contains("invalid_grant")) {
+      if (GmailErrorClassifier.isRateLimited(e)) {
+        attempt.setStatus(SendStatus.FAILED);
+        attempt.setErrorCode("RATE_LIMITED");
+        attempt.setErrorMessage(e.getMessage());
+        attempt.setFinishedAt(Instant.now());
+        sendAttemptRepository.save(attempt);
+
+        draft.setStatus(previousStatus);
+        draft.setAttempts(draft.getAttempts() - 1);
+        draftRepository.save(draft);
+
+        throw e instanceof GmailRateLimitedException rle
+            ? rle
+            : new GmailRateLimitedException("Gmail rate limit reached, retry later", Duration.ofSeconds(1));
+      }
+
+      if (e instanceof GoogleGrantRevokedException) {
 
         var token = tokenRepository
             .findByUserIdAndProvider(
@@ -299,6 +818,7 @@ public class DraftWorkflowService {
 
         token.setRevokedAt(Instant.now());
         tokenRepository.save(token);
+        accessTokenCache.evict(draft.getUser().getId());
       }
 
       attempt.setStatus(SendStatus.FAILED);
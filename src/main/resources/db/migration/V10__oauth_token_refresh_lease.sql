@@ -0,0 +1,2 @@
+-- one node at a time may refresh a token; others wait for the row to change (see TokenRefreshService)
+ALTER TABLE oauth_token ADD COLUMN IF NOT EXISTS refresh_lease_until TIMESTAMP WITH TIME ZONE;
@@ -0,0 +1,11 @@
+-- per-user Gmail history cursor for incremental inbox sync
+CREATE TABLE IF NOT EXISTS gmail_sync_state (
+  user_id UUID PRIMARY KEY REFERENCES app_user(id) ON DELETE CASCADE,
+  history_id NUMERIC(20, 0) NOT NULL, -- last Gmail historyId applied to gmail_email
+  last_full_sync_at TIMESTAMP WITH TIME ZONE,
+  last_sync_at TIMESTAMP WITH TIME ZONE,
+  created_at TIMESTAMP WITH TIME ZONE DEFAULT now(),
+  updated_at TIMESTAMP WITH TIME ZONE DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_gmail_email_user_labels ON gmail_email USING GIN (label_ids);
@@ -0,0 +1,5 @@
+-- threading headers captured by the metadata listing, and the lazily loaded body
+ALTER TABLE gmail_email ADD COLUMN IF NOT EXISTS message_id_header TEXT;
+ALTER TABLE gmail_email ADD COLUMN IF NOT EXISTS references_header TEXT;
+ALTER TABLE gmail_email ADD COLUMN IF NOT EXISTS body_text TEXT;          -- filled only when a draft needs it
+ALTER TABLE gmail_email ADD COLUMN IF NOT EXISTS body_fetched_at TIMESTAMP WITH TIME ZONE;
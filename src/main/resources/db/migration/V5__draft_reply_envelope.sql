@@ -0,0 +1,5 @@
+-- send-ready reply headers, captured at approval so sends and retries skip the Gmail re-fetch
+ALTER TABLE draft ADD COLUMN IF NOT EXISTS reply_to VARCHAR(512);
+ALTER TABLE draft ADD COLUMN IF NOT EXISTS reply_subject TEXT;
+ALTER TABLE draft ADD COLUMN IF NOT EXISTS reply_in_reply_to TEXT;
+ALTER TABLE draft ADD COLUMN IF NOT EXISTS reply_references TEXT;
@@ -0,0 +1,3 @@
+-- asynchronous generation: the draft row exists while the LLM call runs
+ALTER TYPE draft_status ADD VALUE IF NOT EXISTS 'GENERATING';
+ALTER TYPE draft_status ADD VALUE IF NOT EXISTS 'GENERATION_FAILED';
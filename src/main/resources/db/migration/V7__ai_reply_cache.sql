@@ -0,0 +1,12 @@
+-- shared tier of the AI reply cache (ai.reply-cache.persistent), keyed by a hash of the prompt inputs
+CREATE TABLE IF NOT EXISTS ai_reply_cache (
+  cache_key CHAR(64) PRIMARY KEY,     -- hex SHA-256 of provider, model, tone and normalized email
+  provider TEXT NOT NULL,
+  model TEXT NOT NULL,
+  reply TEXT NOT NULL,
+  latency_ms BIGINT NOT NULL,         -- how long the provider took, i.e. what a hit saves
+  created_at TIMESTAMP WITH TIME ZONE DEFAULT now(),
+  expires_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_ai_reply_cache_expires_at ON ai_reply_cache (expires_at);
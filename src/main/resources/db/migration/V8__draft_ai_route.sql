@@ -0,0 +1,5 @@
+-- how the reply was produced, written by the generation worker (see AiServiceRouter)
+ALTER TABLE draft ADD COLUMN IF NOT EXISTS ai_provider VARCHAR(32);
+ALTER TABLE draft ADD COLUMN IF NOT EXISTS ai_model VARCHAR(128);
+ALTER TABLE draft ADD COLUMN IF NOT EXISTS ai_route VARCHAR(16);     -- primary | failover | hedge | cache
+ALTER TABLE draft ADD COLUMN IF NOT EXISTS ai_latency_ms BIGINT;
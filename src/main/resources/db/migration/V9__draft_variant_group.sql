@@ -0,0 +1,4 @@
+-- drafts generated together as tone variants of one reply share a group id (see DraftWorkflowService.generateVariants)
+ALTER TABLE draft ADD COLUMN IF NOT EXISTS variant_group_id UUID;
+
+CREATE INDEX IF NOT EXISTS idx_draft_variant_group ON draft(variant_group_id) WHERE variant_group_id IS NOT NULL;
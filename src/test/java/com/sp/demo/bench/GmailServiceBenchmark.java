@@ -0,0 +1,195 @@
+package com.sp.demo.bench;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.ListMessagesResponse;
+import com.google.auth.http.HttpCredentialsAdapter;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.sp.demo.config.GmailConfig;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One Gmail {@code messages.list} call, executed for real against a local HTTPS stub: the old
+ * path (a new trusted transport and client on every call, so every call does its own TLS
+ * handshake) against the pooled keep-alive transport from {@link GmailConfig} that
+ * {@code GmailServiceFactory} shares between clients.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main GmailServiceBenchmark}.
+ * The stub answers at once over loopback, so the numbers are client-side cost plus handshakes;
+ * against Gmail each avoided handshake also saves its network round trips.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GmailServiceBenchmark {
+
+  private static final String STORE_PASSWORD = "benchmark";
+  private static final String LIST_BODY = "{\"messages\":[{\"id\":\"m1\",\"threadId\":\"t1\"}],\"resultSizeEstimate\":1}";
+  private static final byte[] LIST_RESPONSE = ("HTTP/1.1 200 OK\r\n"
+      + "Content-Type: application/json; charset=UTF-8\r\n"
+      + "Content-Length: " + LIST_BODY.length() + "\r\n"
+      + "\r\n"
+      + LIST_BODY).getBytes(StandardCharsets.UTF_8);
+
+  private Path keyStoreFile;
+  private KeyStore keyStore;
+  private ServerSocket server;
+  private ExecutorService serverThreads;
+  private String rootUrl;
+  private GoogleCredentials credentials;
+  private HttpTransport sharedTransport;
+  private Gmail sharedClient;
+
+  @Setup
+  public void setUp() throws Exception {
+    keyStoreFile = selfSignedKeyStore();
+    keyStore = KeyStore.getInstance("PKCS12");
+    try (InputStream in = Files.newInputStream(keyStoreFile)) {
+      keyStore.load(in, STORE_PASSWORD.toCharArray());
+    }
+
+    KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    keyManagers.init(keyStore, STORE_PASSWORD.toCharArray());
+    SSLContext serverTls = SSLContext.getInstance("TLS");
+    serverTls.init(keyManagers.getKeyManagers(), null, null);
+    server = serverTls.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    serverThreads = Executors.newCachedThreadPool();
+    serverThreads.execute(this::acceptConnections);
+    rootUrl = "https://localhost:" + server.getLocalPort() + "/";
+
+    credentials = GoogleCredentials.create(
+        new AccessToken("ya29.benchmark-token", Date.from(Instant.now().plusSeconds(3600))));
+
+    // the pooled transport uses the JVM's default trust store, so point that at the stub's cert
+    System.setProperty("javax.net.ssl.trustStore", keyStoreFile.toString());
+    System.setProperty("javax.net.ssl.trustStoreType", "PKCS12");
+    System.setProperty("javax.net.ssl.trustStorePassword", STORE_PASSWORD);
+    sharedTransport = new GmailConfig().gmailHttpTransport(100, 20, 30);
+    sharedClient = client(sharedTransport);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    sharedTransport.shutdown();
+    server.close();
+    serverThreads.shutdownNow();
+    Files.deleteIfExists(keyStoreFile);
+  }
+
+  @Benchmark
+  public ListMessagesResponse perCallTransport() throws Exception {
+    // what GoogleNetHttpTransport.newTrustedTransport() builds, trusting the stub instead of Google
+    HttpTransport transport = new NetHttpTransport.Builder().trustCertificates(keyStore).build();
+    return client(transport).users().messages().list("me").setMaxResults(1L).execute();
+  }
+
+  @Benchmark
+  public ListMessagesResponse sharedPooledTransport() throws Exception {
+    return sharedClient.users().messages().list("me").setMaxResults(1L).execute();
+  }
+
+  private Gmail client(HttpTransport transport) {
+    return new Gmail.Builder(transport, GsonFactory.getDefaultInstance(), new HttpCredentialsAdapter(credentials))
+        .setApplicationName("draftly-ai")
+        .setRootUrl(rootUrl)
+        .build();
+  }
+
+  /**
+   * The stub: answers every request on a connection with the same list response and keeps the
+   * connection open, like Gmail does. Requests are GETs, so reading up to the blank line after
+   * the headers reads the whole request.
+   */
+  private void acceptConnections() {
+    while (!server.isClosed()) {
+      Socket socket;
+      try {
+        socket = server.accept();
+      } catch (IOException closed) {
+        return;
+      }
+      serverThreads.execute(() -> serve(socket));
+    }
+  }
+
+  private static void serve(Socket socket) {
+    try (socket) {
+      socket.setTcpNoDelay(true);
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      OutputStream out = socket.getOutputStream();
+      while (skipRequest(in)) {
+        out.write(LIST_RESPONSE);
+        out.flush();
+      }
+    } catch (IOException e) {
+      // the client closed the connection
+    }
+  }
+
+  private static boolean skipRequest(InputStream in) throws IOException {
+    int matched = 0;
+    int b;
+    while ((b = in.read()) != -1) {
+      matched = b == "\r\n\r\n".charAt(matched) ? matched + 1 : (b == '\r' ? 1 : 0);
+      if (matched == 4) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A throwaway certificate for localhost, made with the JDK's keytool.
+   */
+  private static Path selfSignedKeyStore() throws Exception {
+    Path file = Files.createTempFile("gmail-bench", ".p12");
+    Files.delete(file);
+    Path keytool = Path.of(System.getProperty("java.home"), "bin", "keytool");
+    Process process = new ProcessBuilder(keytool.toString(), "-genkeypair",
+        "-alias", "localhost", "-keyalg", "EC", "-groupname", "secp256r1", "-validity", "1",
+        "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1",
+        "-storetype", "PKCS12", "-keystore", file.toString(),
+        "-storepass", STORE_PASSWORD, "-keypass", STORE_PASSWORD)
+        .redirectErrorStream(true)
+        .start();
+    String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+    if (process.waitFor() != 0) {
+      throw new IllegalStateException("keytool failed: " + output);
+    }
+    return file;
+  }
+}
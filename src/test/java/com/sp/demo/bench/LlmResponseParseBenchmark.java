@@ -0,0 +1,113 @@
+package com.sp.demo.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sp.demo.service.llm.LlmReply;
+import com.sp.demo.service.llm.LlmResponseCodec;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing a provider reply: the old path ({@code readValue(..., Map.class)} and casts down to
+ * the text) against {@link LlmResponseCodec}. Bodies carry the safety ratings, usage and
+ * logprobs the providers send back, which the Map path materializes and the codec skips.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main LlmResponseParseBenchmark -prof gc}
+ * to see {@code gc.alloc.rate.norm}, the bytes allocated per response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LlmResponseParseBenchmark {
+
+  private static final String REPLY =
+      "Hi Priya,\\n\\nThanks for the update on the Q3 rollout. Thursday at 10am works for me; "
+          + "I'll bring the migration checklist and the open items from the last review. "
+          + "If the staging numbers hold, we can plan the cutover for the following week.\\n\\n"
+          + "Best regards,\\nSam";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private LlmResponseCodec codec;
+  private byte[] gemini;
+  private byte[] openAi;
+
+  @Setup
+  public void setUp() {
+    codec = new LlmResponseCodec(objectMapper);
+
+    StringBuilder ratings = new StringBuilder();
+    for (String category : List.of("HARM_CATEGORY_HATE_SPEECH", "HARM_CATEGORY_DANGEROUS_CONTENT",
+        "HARM_CATEGORY_HARASSMENT", "HARM_CATEGORY_SEXUALLY_EXPLICIT")) {
+      if (ratings.length() > 0) {
+        ratings.append(',');
+      }
+      ratings.append("{\"category\":\"").append(category)
+          .append("\",\"probability\":\"NEGLIGIBLE\",\"probabilityScore\":0.0421,"
+              + "\"severity\":\"HARM_SEVERITY_NEGLIGIBLE\",\"severityScore\":0.0187}");
+    }
+    gemini = ("{\"candidates\":[{\"content\":{\"parts\":[{\"text\":\"" + REPLY + "\"}],\"role\":\"model\"},"
+        + "\"finishReason\":\"STOP\",\"avgLogprobs\":-0.2817,\"safetyRatings\":[" + ratings + "]}],"
+        + "\"usageMetadata\":{\"promptTokenCount\":412,\"candidatesTokenCount\":78,\"totalTokenCount\":490,"
+        + "\"promptTokensDetails\":[{\"modality\":\"TEXT\",\"tokenCount\":412}],"
+        + "\"candidatesTokensDetails\":[{\"modality\":\"TEXT\",\"tokenCount\":78}]},"
+        + "\"modelVersion\":\"gemini-2.5-flash\",\"responseId\":\"mq3xZ8ajHcOb1MkPqLyDmAk\"}")
+        .getBytes(StandardCharsets.UTF_8);
+
+    openAi = ("{\"id\":\"chatcmpl-9xYzAbCdEfGhIjKlMnOpQrStUv\",\"object\":\"chat.completion\","
+        + "\"created\":1723456789,\"model\":\"gpt-4o-mini-2024-07-18\",\"choices\":[{\"index\":0,"
+        + "\"message\":{\"role\":\"assistant\",\"content\":\"" + REPLY + "\",\"refusal\":null},"
+        + "\"logprobs\":null,\"finish_reason\":\"stop\"}],"
+        + "\"usage\":{\"prompt_tokens\":402,\"completion_tokens\":80,\"total_tokens\":482,"
+        + "\"prompt_tokens_details\":{\"cached_tokens\":0,\"audio_tokens\":0},"
+        + "\"completion_tokens_details\":{\"reasoning_tokens\":0,\"audio_tokens\":0,"
+        + "\"accepted_prediction_tokens\":0,\"rejected_prediction_tokens\":0}},"
+        + "\"system_fingerprint\":\"fp_0ba0d124f1\"}")
+        .getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public String mapGemini() throws Exception {
+    Map response = objectMapper.readValue(gemini, Map.class);
+    List candidates = (List) response.get("candidates");
+    Map first = (Map) candidates.get(0);
+    Map content = (Map) first.get("content");
+    List parts = (List) content.get("parts");
+    Map textPart = (Map) parts.get(0);
+    return (String) textPart.get("text");
+  }
+
+  @Benchmark
+  public LlmReply codecGemini() {
+    return codec.readGemini(new ByteArrayInputStream(gemini));
+  }
+
+  @Benchmark
+  public String mapOpenAi() throws Exception {
+    Map response = objectMapper.readValue(openAi, Map.class);
+    List choices = (List) response.get("choices");
+    Map firstChoice = (Map) choices.get(0);
+    Map message = (Map) firstChoice.get("message");
+    return (String) message.get("content");
+  }
+
+  @Benchmark
+  public LlmReply codecOpenAi() {
+    return codec.readOpenAi(new ByteArrayInputStream(openAi));
+  }
+}
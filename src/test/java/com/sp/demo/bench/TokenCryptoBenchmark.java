@@ -0,0 +1,144 @@
+package com.sp.demo.bench;
+
+import com.sp.demo.service.TokenCryptoService;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Refresh-token encryption: the old per-call path (decode the key, {@code Cipher.getInstance}
+ * on every call) against {@link TokenCryptoService}, with and without its decrypted-value cache.
+ * The {@code contended*} variants run the same work on 8 threads.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main TokenCryptoBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenCryptoBenchmark {
+
+  private static final String REFRESH_TOKEN = "1//0gExampleRefreshTokenValue-abcdefghijklmnopqrstuvwxyz0123456789";
+
+  private final SecureRandom secureRandom = new SecureRandom();
+
+  private String base64Key;
+  private TokenCryptoService uncached;
+  private TokenCryptoService cached;
+  private String encrypted;
+
+  @Setup
+  public void setUp() {
+    byte[] keyBytes = new byte[32];
+    secureRandom.nextBytes(keyBytes);
+    base64Key = Base64.getEncoder().encodeToString(keyBytes);
+
+    uncached = new TokenCryptoService(base64Key, "", "", 0, 0);
+    cached = new TokenCryptoService(base64Key, "", "", 1000, 300);
+    encrypted = uncached.encrypt(REFRESH_TOKEN);
+  }
+
+  @Benchmark
+  public String perCallEncrypt() throws Exception {
+    return legacyEncrypt(REFRESH_TOKEN);
+  }
+
+  @Benchmark
+  public String perCallDecrypt() throws Exception {
+    return legacyDecrypt(encrypted);
+  }
+
+  @Benchmark
+  public String serviceEncrypt() {
+    return uncached.encrypt(REFRESH_TOKEN);
+  }
+
+  @Benchmark
+  public String serviceDecrypt() {
+    return uncached.decrypt(encrypted);
+  }
+
+  @Benchmark
+  public String serviceDecryptCached() {
+    return cached.decrypt(encrypted);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public String contendedPerCallEncrypt() throws Exception {
+    return legacyEncrypt(REFRESH_TOKEN);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public String contendedPerCallDecrypt() throws Exception {
+    return legacyDecrypt(encrypted);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public String contendedServiceEncrypt() {
+    return uncached.encrypt(REFRESH_TOKEN);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public String contendedServiceDecrypt() {
+    return uncached.decrypt(encrypted);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public String contendedServiceDecryptCached() {
+    return cached.decrypt(encrypted);
+  }
+
+  // the implementation TokenCryptoService replaced, kept here as the baseline
+
+  private String legacyEncrypt(String plaintext) throws Exception {
+    SecretKey key = new SecretKeySpec(Base64.getDecoder().decode(base64Key), "AES");
+    byte[] iv = new byte[12];
+    secureRandom.nextBytes(iv);
+
+    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+    byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+
+    ByteBuffer buffer = ByteBuffer.allocate(iv.length + ciphertext.length);
+    buffer.put(iv);
+    buffer.put(ciphertext);
+    return Base64.getEncoder().encodeToString(buffer.array());
+  }
+
+  private String legacyDecrypt(String value) throws Exception {
+    ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(value));
+    byte[] iv = new byte[12];
+    buffer.get(iv);
+    byte[] ciphertext = new byte[buffer.remaining()];
+    buffer.get(ciphertext);
+
+    SecretKey key = new SecretKeySpec(Base64.getDecoder().decode(base64Key), "AES");
+    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, iv));
+    return new String(cipher.doFinal(ciphertext), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,29 @@
+package com.sp.demo.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.mapping.GrantedAuthoritiesMapper;
+import org.springframework.security.oauth2.core.user.OAuth2UserAuthority;
+
+class SecurityConfigTests {
+
+  @Test
+  void grantsAdminOnlyToListedAccounts() {
+    GrantedAuthoritiesMapper mapper = SecurityConfig.adminAuthorities(List.of(" Ops@Example.com", ""));
+
+    assertThat(mapper.mapAuthorities(List.of(new OAuth2UserAuthority(Map.of("email", "ops@example.com")))))
+        .extracting(GrantedAuthority::getAuthority)
+        .contains("ROLE_ADMIN", "OAUTH2_USER");
+    assertThat(mapper.mapAuthorities(List.of(new OAuth2UserAuthority(Map.of("email", "someone@example.com")))))
+        .extracting(GrantedAuthority::getAuthority)
+        .doesNotContain("ROLE_ADMIN");
+    assertThat(SecurityConfig.adminAuthorities(List.of())
+        .mapAuthorities(List.of(new OAuth2UserAuthority(Map.of("email", "ops@example.com")))))
+        .extracting(GrantedAuthority::getAuthority)
+        .doesNotContain("ROLE_ADMIN");
+  }
+}
@@ -0,0 +1,60 @@
+package com.sp.demo.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sp.demo.domain.entity.Draft;
+import com.sp.demo.domain.enums.DraftStatus;
+import com.sp.demo.repository.UserRepository;
+import com.sp.demo.service.workflow.BulkDraftService;
+import com.sp.demo.service.workflow.DraftStreamListener;
+import com.sp.demo.service.workflow.DraftWorkflowService;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+class DraftControllerTests {
+
+  private final DraftWorkflowService workflowService = mock(DraftWorkflowService.class);
+
+  @Test
+  void streamedTokensKeepTheirLeadingSpacesOnTheWire() throws Exception {
+    Draft draft = Draft.builder().id(UUID.randomUUID()).status(DraftStatus.PENDING).build();
+    when(workflowService.generateDraftStreaming(any(), any(), any(), any(), any(), anyBoolean(), any()))
+        .thenAnswer(inv -> {
+          DraftStreamListener listener = inv.getArgument(6);
+          listener.onStarted(draft);
+          listener.onToken("Hi");
+          listener.onToken(" there");
+          listener.onCompleted(draft);
+          return draft;
+        });
+
+    DraftController controller = new DraftController(workflowService, mock(UserRepository.class),
+        mock(BulkDraftService.class), new ObjectMapper());
+    ReflectionTestUtils.setField(controller, "streamTimeoutMs", 5_000L);
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+    MvcResult result = mockMvc.perform(post("/api/drafts/generate/stream")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"tone\":\"friendly\"}"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    result.getAsyncResult(5_000);
+
+    String wire = result.getResponse().getContentAsString();
+    assertThat(wire).contains("event:token\ndata:{\"text\":\"Hi\"}\n\n");
+    assertThat(wire).contains("event:token\ndata:{\"text\":\" there\"}\n\n");
+    assertThat(wire).contains("event:done\n");
+  }
+}
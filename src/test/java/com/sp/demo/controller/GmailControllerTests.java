@@ -0,0 +1,69 @@
+package com.sp.demo.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sp.demo.domain.entity.OAuthToken;
+import com.sp.demo.domain.entity.User;
+import com.sp.demo.external.gmail.GmailClient;
+import com.sp.demo.external.google.TokenRefreshService;
+import com.sp.demo.repository.GmailEmailRepository;
+import com.sp.demo.repository.UserRepository;
+import com.sp.demo.service.GmailEmailCacheService;
+import com.sp.demo.service.GmailMessageBodyService;
+import com.sp.demo.service.GmailSyncService;
+import com.sp.demo.service.UnreadSnapshotCache;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.OAuth2User;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+class GmailControllerTests {
+
+  private final GmailClient gmailClient = mock(GmailClient.class);
+  private final TokenRefreshService tokenRefreshService = mock(TokenRefreshService.class);
+  private final UserRepository userRepository = mock(UserRepository.class);
+  private final GmailController controller = new GmailController(gmailClient, tokenRefreshService, userRepository,
+      mock(GmailEmailRepository.class), mock(GmailEmailCacheService.class), mock(GmailSyncService.class),
+      mock(GmailMessageBodyService.class), mock(UnreadSnapshotCache.class), new ObjectMapper());
+
+  @Test
+  void rejectsANonPositiveStreamLimit() {
+    ResponseEntity<StreamingResponseBody> response = controller.streamUnread(mock(OAuth2AuthenticationToken.class), 0, 100);
+
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    verifyNoInteractions(tokenRefreshService, gmailClient);
+  }
+
+  @Test
+  void capsTheStreamLimitAtTheConfiguredMaximum() throws Exception {
+    ReflectionTestUtils.setField(controller, "streamMaxLimit", 3);
+    User user = User.builder().id(UUID.randomUUID()).email("me@example.com").build();
+    OAuth2User principal = mock(OAuth2User.class);
+    when(principal.getAttribute("email")).thenReturn("me@example.com");
+    OAuth2AuthenticationToken authentication = mock(OAuth2AuthenticationToken.class);
+    when(authentication.getPrincipal()).thenReturn(principal);
+    when(userRepository.findByEmail("me@example.com")).thenReturn(Optional.of(user));
+    OAuthToken token = OAuthToken.builder().accessToken("t").build();
+    when(tokenRefreshService.validTokenFor(user.getId())).thenReturn(token);
+    when(gmailClient.fetchUnreadPage(any(), any(), anyLong())).thenReturn(new GmailClient.UnreadPage(List.of(), null));
+
+    ResponseEntity<StreamingResponseBody> response = controller.streamUnread(authentication, 1_000_000, 100);
+    response.getBody().writeTo(new ByteArrayOutputStream());
+
+    verify(gmailClient).fetchUnreadPage(token, null, 3);
+  }
+}
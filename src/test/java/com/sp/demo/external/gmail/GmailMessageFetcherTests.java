@@ -0,0 +1,130 @@
+package com.sp.demo.external.gmail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.Message;
+import com.sp.demo.external.gmail.GmailMessageFetcher.MessageView;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class GmailMessageFetcherTests {
+
+  private static final Pattern BATCHED_ID = Pattern.compile("GET \\S*/messages/([^?\\s]+)");
+  private static final Pattern SINGLE_ID = Pattern.compile("/messages/([^?]+)");
+  private static final List<String> IDS = List.of("m1", "m2", "m3", "m4", "m5");
+
+  /** Answers messages.get with {"id": ...}, or 404 for {@code missing}; single gets answer slowest-first. */
+  private static final class StubGmail extends MockHttpTransport {
+
+    private final String missing;
+    private final AtomicInteger batches = new AtomicInteger();
+
+    StubGmail(String missing) {
+      this.missing = missing;
+    }
+
+    @Override
+    public LowLevelHttpRequest buildRequest(String method, String url) {
+      return new MockLowLevelHttpRequest(url) {
+        @Override
+        public LowLevelHttpResponse execute() throws IOException {
+          if (url.endsWith("/batch")) {
+            batches.incrementAndGet();
+            return batchResponse(getContentAsString());
+          }
+          Matcher m = SINGLE_ID.matcher(url);
+          m.find();
+          String id = m.group(1);
+          try {
+            // later ids answer first, so completion order is the reverse of the request order
+            Thread.sleep(30L * (IDS.size() - IDS.indexOf(id)));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return id.equals(missing)
+              ? new MockLowLevelHttpResponse().setStatusCode(404).setContentType("application/json")
+                  .setContent(notFound())
+              : new MockLowLevelHttpResponse().setContentType("application/json").setContent(message(id));
+        }
+      };
+    }
+
+    private MockLowLevelHttpResponse batchResponse(String request) {
+      StringBuilder body = new StringBuilder();
+      Matcher m = BATCHED_ID.matcher(request);
+      for (int part = 1; m.find(); part++) {
+        String id = m.group(1);
+        boolean found = !id.equals(missing);
+        body.append("--END\r\nContent-Type: application/http\r\nContent-ID: <response-").append(part)
+            .append(">\r\n\r\nHTTP/1.1 ").append(found ? "200 OK" : "404 Not Found")
+            .append("\r\nContent-Type: application/json; charset=UTF-8\r\n\r\n")
+            .append(found ? message(id) : notFound()).append("\r\n");
+      }
+      body.append("--END--\r\n");
+      return new MockLowLevelHttpResponse().setContentType("multipart/mixed; boundary=END")
+          .setContent(body.toString());
+    }
+
+    private static String message(String id) {
+      return "{\"id\":\"" + id + "\",\"threadId\":\"t-" + id + "\"}";
+    }
+
+    private static String notFound() {
+      return "{\"error\":{\"code\":404,\"message\":\"Requested entity was not found.\"}}";
+    }
+
+    Gmail gmail() {
+      return new Gmail.Builder(this, GsonFactory.getDefaultInstance(), null)
+          .setApplicationName("test")
+          .build();
+    }
+  }
+
+  @Test
+  void batchModeSplitsIntoBatchesAndKeepsIdOrder() throws IOException {
+    StubGmail stub = new StubGmail(null);
+    GmailMessageFetcher fetcher = new GmailMessageFetcher("batch", 2, 4);
+
+    List<Message> messages = fetcher.fetch(stub.gmail(), IDS, MessageView.METADATA);
+    fetcher.shutdown();
+
+    assertThat(messages).extracting(Message::getId).containsExactlyElementsOf(IDS);
+    assertThat(stub.batches.get()).isEqualTo(3);
+  }
+
+  @Test
+  void parallelModeKeepsIdOrderWhateverAnswersFirst() throws IOException {
+    GmailMessageFetcher fetcher = new GmailMessageFetcher("parallel", 50, 5);
+
+    List<Message> messages = fetcher.fetch(new StubGmail(null).gmail(), IDS, MessageView.FULL);
+    fetcher.shutdown();
+
+    assertThat(messages).extracting(Message::getId).containsExactlyElementsOf(IDS);
+  }
+
+  @Test
+  void oneMissingMessageFailsTheFetchWithItsStatusInEveryMode() {
+    for (String mode : List.of("batch", "parallel", "sequential")) {
+      GmailMessageFetcher fetcher = new GmailMessageFetcher(mode, 50, 5);
+
+      assertThatThrownBy(() -> fetcher.fetch(new StubGmail("m3").gmail(), IDS, MessageView.METADATA))
+          .as(mode)
+          .isInstanceOfSatisfying(GoogleJsonResponseException.class,
+              e -> assertThat(e.getStatusCode()).isEqualTo(404));
+      fetcher.shutdown();
+    }
+  }
+}
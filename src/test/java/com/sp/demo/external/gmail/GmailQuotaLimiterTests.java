@@ -0,0 +1,38 @@
+package com.sp.demo.external.gmail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class GmailQuotaLimiterTests {
+
+  @Test
+  void failsFastWhenTheUserBucketWouldWaitTooLong() {
+    GmailQuotaLimiter limiter = new GmailQuotaLimiter(100, 1_000_000, 50, 0);
+    UUID user = UUID.randomUUID();
+
+    limiter.acquire(user, GmailOperation.MESSAGES_SEND);
+
+    assertThatThrownBy(() -> limiter.acquire(user, GmailOperation.MESSAGES_SEND))
+        .isInstanceOf(GmailRateLimitedException.class);
+    // other users have their own bucket
+    limiter.acquire(UUID.randomUUID(), GmailOperation.MESSAGES_SEND);
+  }
+
+  @Test
+  void retryAfterBlocksOnlyThatUser() {
+    GmailQuotaLimiter limiter = new GmailQuotaLimiter(1000, 1_000_000, 100, 0);
+    UUID user = UUID.randomUUID();
+
+    limiter.backoff(user, Duration.ofSeconds(5));
+
+    assertThat(limiter.snapshot(user).blockedForMs()).isGreaterThan(4000);
+    assertThatThrownBy(() -> limiter.acquire(user, GmailOperation.HISTORY_LIST))
+        .isInstanceOf(GmailRateLimitedException.class)
+        .satisfies(e -> assertThat(((GmailRateLimitedException) e).getRetryAfter()).isGreaterThan(Duration.ofSeconds(4)));
+    limiter.acquire(UUID.randomUUID(), GmailOperation.HISTORY_LIST);
+  }
+}
@@ -0,0 +1,123 @@
+package com.sp.demo.external.gmail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.sp.demo.domain.entity.OAuthToken;
+import com.sp.demo.external.google.TokenRefreshService;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class GmailRetryExecutorTests {
+
+  private final TokenRefreshService tokenRefreshService = mock(TokenRefreshService.class);
+  private final GmailRetryExecutor executor = new GmailRetryExecutor(tokenRefreshService, 3, 1, 2);
+  private final OAuthToken token = new OAuthToken();
+
+  @Test
+  void unauthorizedRefreshesOnceAndRetriesWithTheNewToken() throws Exception {
+    OAuthToken refreshed = new OAuthToken();
+    when(tokenRefreshService.refreshToken(any())).thenReturn(refreshed);
+
+    String result = executor.execute(token, t -> {
+      if (t == token) {
+        throw new RuntimeException(status(401));
+      }
+      return "ok";
+    });
+
+    assertThat(result).isEqualTo("ok");
+    verify(tokenRefreshService, times(1)).refreshToken(token);
+  }
+
+  @Test
+  void notFoundFailsFastWithoutRefreshing() {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThatThrownBy(() -> executor.execute(token, t -> {
+      calls.incrementAndGet();
+      throw new RuntimeException(status(404));
+    })).hasCauseInstanceOf(GoogleJsonResponseException.class);
+
+    assertThat(calls).hasValue(1);
+    verify(tokenRefreshService, never()).refreshToken(any());
+    assertThat(executor.stats().errors().get(GmailErrorCategory.PERMANENT)).isEqualTo(1);
+  }
+
+  @Test
+  void transientErrorsAreRetriedForReadsButNotForSends() throws Exception {
+    AtomicInteger reads = new AtomicInteger();
+    String result = executor.execute(token, t -> {
+      if (reads.incrementAndGet() < 3) {
+        throw new RuntimeException(new SocketTimeoutException("read timed out"));
+      }
+      return "ok";
+    });
+    assertThat(result).isEqualTo("ok");
+
+    AtomicInteger sends = new AtomicInteger();
+    assertThatThrownBy(() -> executor.executeNonIdempotent(token, t -> {
+      sends.incrementAndGet();
+      throw new RuntimeException(status(503));
+    })).isInstanceOf(RuntimeException.class);
+    assertThat(sends).hasValue(1);
+  }
+
+  @Test
+  void localQuotaRejectionIsNotRetried() {
+    AtomicInteger calls = new AtomicInteger();
+
+    assertThatThrownBy(() -> executor.execute(token, t -> {
+      calls.incrementAndGet();
+      throw new GmailRateLimitedException("quota", Duration.ofSeconds(1));
+    })).isInstanceOf(GmailRateLimitedException.class);
+
+    assertThat(calls).hasValue(1);
+  }
+
+  @Test
+  void forbiddenRateLimitIsRetriedAfterABackoff() throws Exception {
+    GmailRetryExecutor slow = new GmailRetryExecutor(tokenRefreshService, 3, 40, 1_000);
+    AtomicInteger calls = new AtomicInteger();
+    long startedAt = System.nanoTime();
+
+    String result = slow.execute(token, t -> {
+      if (calls.incrementAndGet() < 3) {
+        throw new RuntimeException(forbidden("userRateLimitExceeded"));
+      }
+      return "ok";
+    });
+
+    assertThat(result).isEqualTo("ok");
+    assertThat(calls).hasValue(3);
+    // at least half of 40 ms, then half of 80 ms
+    assertThat(Duration.ofNanos(System.nanoTime() - startedAt)).isGreaterThanOrEqualTo(Duration.ofMillis(60));
+    assertThat(slow.stats().errors().get(GmailErrorCategory.RATE_LIMITED)).isEqualTo(2);
+  }
+
+  private static GoogleJsonResponseException forbidden(String reason) {
+    GoogleJsonError.ErrorInfo info = new GoogleJsonError.ErrorInfo();
+    info.setReason(reason);
+    GoogleJsonError details = new GoogleJsonError();
+    details.setCode(403);
+    details.setErrors(List.of(info));
+    return new GoogleJsonResponseException(new HttpResponseException.Builder(403, null, new HttpHeaders()), details);
+  }
+
+  private static GoogleJsonResponseException status(int code) {
+    return new GoogleJsonResponseException(new HttpResponseException.Builder(code, null, new HttpHeaders()), null);
+  }
+}
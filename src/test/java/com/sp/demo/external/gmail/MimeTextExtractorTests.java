@@ -0,0 +1,63 @@
+package com.sp.demo.external.gmail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.api.services.gmail.model.MessagePart;
+import com.google.api.services.gmail.model.MessagePartBody;
+import com.google.api.services.gmail.model.MessagePartHeader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class MimeTextExtractorTests {
+
+  private final MimeTextExtractor extractor = new MimeTextExtractor(20_000);
+
+  @Test
+  void htmlDropsTagsScriptsStylesAndComments() {
+    String html = "<html><head><style>p { color: red; }</style><script>if (a < b) alert('x');</script></head>"
+        + "<body><!-- tracking --><p>Hi&nbsp;Bob,</p><p>Price is 5 &lt; 6 &amp; ok &#8212; <b>thanks</b></p>"
+        + "<div>Line<br>two</div></body></html>";
+
+    String text = extractor.extract(part("text/html; charset=UTF-8", html, StandardCharsets.UTF_8));
+
+    assertThat(text).isEqualTo("Hi Bob,\n\nPrice is 5 < 6 & ok — thanks\n\nLine\ntwo");
+  }
+
+  @Test
+  void honoursDeclaredCharset() {
+    String text = extractor.extract(part("text/plain; charset=\"ISO-8859-1\"", "Grüße, René",
+        Charset.forName("ISO-8859-1")));
+
+    assertThat(text).isEqualTo("Grüße, René");
+  }
+
+  @Test
+  void prefersFirstTextPartInMultipart() {
+    MessagePart root = new MessagePart()
+        .setMimeType("multipart/alternative")
+        .setParts(List.of(
+            part("text/plain; charset=UTF-8", "plain body", StandardCharsets.UTF_8),
+            part("text/html; charset=UTF-8", "<p>html body</p>", StandardCharsets.UTF_8)));
+
+    assertThat(extractor.extract(root)).isEqualTo("plain body");
+  }
+
+  @Test
+  void stopsAtConfiguredCap() {
+    MimeTextExtractor capped = new MimeTextExtractor(10);
+
+    String text = capped.extract(part("text/html", "<p>" + "word ".repeat(10_000) + "</p>", StandardCharsets.UTF_8));
+
+    assertThat(text).hasSizeLessThanOrEqualTo(10).startsWith("word word");
+  }
+
+  private MessagePart part(String contentType, String content, Charset charset) {
+    return new MessagePart()
+        .setMimeType(contentType.split(";")[0])
+        .setHeaders(List.of(new MessagePartHeader().setName("Content-Type").setValue(contentType)))
+        .setBody(new MessagePartBody().setData(Base64.getUrlEncoder().encodeToString(content.getBytes(charset))));
+  }
+}
@@ -0,0 +1,31 @@
+package com.sp.demo.external.google;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.api.client.testing.http.MockHttpTransport;
+import org.junit.jupiter.api.Test;
+
+class PubSubPushVerifierTests {
+
+  @Test
+  void rejectsEverythingWhenNothingIsConfigured() {
+    PubSubPushVerifier verifier = new PubSubPushVerifier(new MockHttpTransport(), "", "", "");
+
+    assertThat(verifier.configured()).isFalse();
+    assertThat(verifier.verify(null, null)).isFalse();
+    assertThat(verifier.verify("", "Bearer x")).isFalse();
+  }
+
+  @Test
+  void requiresTheTokenAndTheOidcJwtWhenBothAreConfigured() {
+    PubSubPushVerifier tokenOnly = new PubSubPushVerifier(new MockHttpTransport(), "s3cret", "", "");
+    PubSubPushVerifier both = new PubSubPushVerifier(new MockHttpTransport(), "s3cret",
+        "https://draftly.example/api/gmail/push", "");
+
+    assertThat(tokenOnly.verify("s3cret", null)).isTrue();
+    assertThat(tokenOnly.verify("wrong", null)).isFalse();
+    assertThat(tokenOnly.verify(null, null)).isFalse();
+    assertThat(both.verify("s3cret", null)).isFalse();
+    assertThat(both.verify("s3cret", "Bearer not-a-jwt")).isFalse();
+  }
+}
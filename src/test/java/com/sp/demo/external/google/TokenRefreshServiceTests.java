@@ -0,0 +1,207 @@
+package com.sp.demo.external.google;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.sp.demo.domain.entity.OAuthToken;
+import com.sp.demo.domain.enums.AuthProvider;
+import com.sp.demo.external.gmail.GmailServiceFactory;
+import com.sp.demo.external.http.OutboundHttpClients;
+import com.sp.demo.repository.OAuthTokenRepository;
+import com.sp.demo.service.TokenCryptoService;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+class TokenRefreshServiceTests {
+
+  private final UUID tokenId = UUID.randomUUID();
+  private final OAuthTokenRepository tokenRepository = mock(OAuthTokenRepository.class);
+  private final AccessTokenCache accessTokenCache = mock(AccessTokenCache.class);
+  private final OutboundHttpClients outboundHttpClients = mock(OutboundHttpClients.class);
+  private final RestTemplate google = mock(RestTemplate.class);
+  private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+  private final TokenRefreshService service = new TokenRefreshService(tokenRepository,
+      mock(TokenCryptoService.class), mock(GmailServiceFactory.class), accessTokenCache,
+      jdbcTemplate, mock(PlatformTransactionManager.class), outboundHttpClients);
+
+  // the oauth_token row as the database holds it
+  private volatile String storedAccessToken = "old";
+  private volatile Instant storedExpiresAt = Instant.now().minusSeconds(10);
+  private final AtomicBoolean leased = new AtomicBoolean();
+
+  @Test
+  void concurrentRefreshesOfOneTokenMakeOneCall() throws Exception {
+    stubDatabase();
+    AtomicInteger calls = new AtomicInteger();
+    when(google.postForObject(anyString(), any(), eq(Map.class))).thenAnswer(inv -> {
+      calls.incrementAndGet();
+      Thread.sleep(300);
+      return Map.of("access_token", "new", "expires_in", 3600);
+    });
+
+    List<Future<OAuthToken>> results = refreshConcurrently(8);
+
+    for (Future<OAuthToken> f : results) {
+      assertThat(f.get(5, TimeUnit.SECONDS).getAccessToken()).isEqualTo("new");
+    }
+    assertThat(calls).hasValue(1);
+    assertThat(storedAccessToken).isEqualTo("new");
+    assertThat(leased).isFalse();
+  }
+
+  @Test
+  void aFailedRefreshReachesEveryWaiterAndReleasesTheLease() throws Exception {
+    stubDatabase();
+    when(google.postForObject(anyString(), any(), eq(Map.class))).thenAnswer(inv -> {
+      Thread.sleep(300);
+      throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+    });
+
+    List<Future<OAuthToken>> results = refreshConcurrently(8);
+
+    for (Future<OAuthToken> f : results) {
+      assertThatThrownBy(() -> f.get(5, TimeUnit.SECONDS))
+          .hasCauseInstanceOf(HttpClientErrorException.class);
+    }
+    assertThat(leased).isFalse();
+  }
+
+  @Test
+  void aNodeThatFindsTheLeaseTakenUsesTheTokenTheHolderStores() {
+    stubDatabase();
+    leased.set(true);
+    new Thread(() -> {
+      sleep(250);
+      storedExpiresAt = Instant.now().plusSeconds(3600);
+      storedAccessToken = "from-other-node";
+      leased.set(false);
+    }).start();
+
+    OAuthToken refreshed = service.refreshToken(token());
+
+    assertThat(refreshed.getAccessToken()).isEqualTo("from-other-node");
+    verify(google, never()).postForObject(anyString(), any(), eq(Map.class));
+  }
+
+  @Test
+  void theBackgroundRefresherSkipsATokenLeasedElsewhere() {
+    stubDatabase();
+    leased.set(true);
+
+    assertThat(service.refreshIfUnclaimed(token())).isFalse();
+    verify(google, never()).postForObject(anyString(), any(), eq(Map.class));
+  }
+
+  @Test
+  void anInvalidGrantAnswerIsReportedAsARevokedGrant() {
+    stubDatabase();
+    HttpClientErrorException invalidGrant = HttpClientErrorException.create(HttpStatus.BAD_REQUEST, "Bad Request",
+        HttpHeaders.EMPTY, "{\"error\":\"invalid_grant\"}".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    invalidGrant.setBodyConvertFunction(type -> Map.of("error", "invalid_grant"));
+    when(google.postForObject(anyString(), any(), eq(Map.class))).thenThrow(invalidGrant);
+
+    assertThatThrownBy(() -> service.refreshIfUnclaimed(token()))
+        .isInstanceOf(GoogleGrantRevokedException.class)
+        .hasCause(invalidGrant);
+    assertThat(leased).isFalse();
+  }
+
+  @Test
+  void doesNotRefreshARevokedGrant() {
+    UUID userId = UUID.randomUUID();
+    when(accessTokenCache.get(any(), any())).thenReturn(null);
+    when(tokenRepository.findByUserIdAndProvider(userId, AuthProvider.GOOGLE)).thenReturn(Optional.of(
+        OAuthToken.builder().id(UUID.randomUUID()).accessToken("old").revokedAt(Instant.now()).build()));
+
+    assertThatThrownBy(() -> service.validTokenFor(userId))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageContaining("revoked");
+    verifyNoInteractions(outboundHttpClients);
+  }
+
+  private List<Future<OAuthToken>> refreshConcurrently(int callers) {
+    ExecutorService pool = Executors.newFixedThreadPool(callers);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<OAuthToken>> results = new ArrayList<>();
+    for (int i = 0; i < callers; i++) {
+      results.add(pool.submit(() -> {
+        start.await();
+        return service.refreshToken(token());
+      }));
+    }
+    start.countDown();
+    pool.shutdown();
+    return results;
+  }
+
+  private OAuthToken token() {
+    return OAuthToken.builder().id(tokenId).accessToken("old").refreshTokenEncrypted("enc").build();
+  }
+
+  private void stubDatabase() {
+    ReflectionTestUtils.setField(service, "leaseMs", 2_000L);
+    when(outboundHttpClients.restTemplate("google-oauth")).thenReturn(google);
+
+    when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<Object>>any(), eq(tokenId)))
+        .thenAnswer(inv -> {
+          ResultSet rs = mock(ResultSet.class);
+          when(rs.getString("access_token")).thenReturn(storedAccessToken);
+          when(rs.getTimestamp("expires_at")).thenReturn(Timestamp.from(storedExpiresAt));
+          when(rs.getString("refresh_token_encrypted")).thenReturn("enc");
+          RowMapper<Object> mapper = inv.getArgument(1);
+          return List.of(mapper.mapRow(rs, 0));
+        });
+    when(jdbcTemplate.update(anyString(), any(Object[].class))).thenAnswer(inv -> {
+      String sql = inv.getArgument(0);
+      if (sql.contains("SET refresh_lease_until = now()")) {
+        return leased.compareAndSet(false, true) ? 1 : 0;
+      }
+      if (sql.contains("SET access_token")) {
+        storedAccessToken = inv.getArgument(1);
+        storedExpiresAt = ((Timestamp) inv.getArgument(2)).toInstant();
+      }
+      leased.set(false);
+      return 1;
+    });
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
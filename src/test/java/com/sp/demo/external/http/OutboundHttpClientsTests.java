@@ -0,0 +1,66 @@
+package com.sp.demo.external.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.client.ResourceAccessException;
+
+class OutboundHttpClientsTests {
+
+  @Test
+  void rejectsRequestsBeyondMaxInFlightAndReleasesSlotsOnClose() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/slow", exchange -> {
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    server.start();
+
+    try {
+      OutboundHttpClients clients = new OutboundHttpClients(new MockEnvironment()
+          .withProperty("http.outbound.targets.test.max-in-flight", "1")
+          .withProperty("http.outbound.targets.test.acquire-timeout-ms", "50"));
+      String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/slow";
+
+      CompletableFuture<String> first = CompletableFuture.supplyAsync(
+          () -> clients.restTemplate("test").getForObject(url, String.class));
+      while (clients.stats().isEmpty() || clients.stats().get(0).inFlight() == 0) {
+        Thread.sleep(5);
+      }
+
+      assertThatThrownBy(() -> clients.restTemplate("test").getForObject(url, String.class))
+          .isInstanceOf(ResourceAccessException.class)
+          .hasMessageContaining("saturated");
+
+      release.countDown();
+      assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+      assertThat(clients.restTemplate("test").getForObject(url, String.class)).isEqualTo("ok");
+
+      OutboundHttpClients.TargetStats stats = clients.stats().get(0);
+      assertThat(stats.inFlight()).isZero();
+      assertThat(stats.peakInFlight()).isEqualTo(1);
+      assertThat(stats.rejected()).isEqualTo(1);
+      assertThat(stats.requests()).isEqualTo(3);
+    } finally {
+      server.stop(0);
+    }
+  }
+}
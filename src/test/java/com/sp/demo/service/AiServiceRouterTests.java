@@ -0,0 +1,156 @@
+package com.sp.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.sp.demo.service.compaction.PromptCompactor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+class AiServiceRouterTests {
+
+  private final GeminiService gemini = mock(GeminiService.class);
+  private final OpenAiService openAi = mock(OpenAiService.class);
+
+  @Test
+  void failsOverToTheOtherProviderAndOpensTheBreaker() {
+    when(gemini.generateReply(anyString(), anyString())).thenThrow(new IllegalStateException("503"));
+    when(openAi.generateReply(anyString(), anyString())).thenReturn("from openai");
+    AiServiceRouter router = router(false, 2);
+
+    AiGeneration first = router.generate("email", "formal", false);
+    assertThat(first.text()).isEqualTo("from openai");
+    assertThat(first.provider()).isEqualTo("openai");
+    assertThat(first.route()).isEqualTo(AiGeneration.FAILOVER);
+
+    router.generate("email", "formal", false);
+    AiGeneration third = router.generate("email", "formal", false);
+    // two consecutive Gemini failures opened its breaker: OpenAI is primary now
+    assertThat(third.route()).isEqualTo(AiGeneration.PRIMARY);
+    assertThat(router.stats().get(0).breaker()).isEqualTo("OPEN");
+  }
+
+  @Test
+  void hedgesPastP95AndReturnsTheFasterAnswer() {
+    when(gemini.generateReply(anyString(), anyString())).thenReturn("fast gemini");
+    when(openAi.generateReply(anyString(), anyString())).thenReturn("from openai");
+    AiServiceRouter router = router(true, 5);
+    for (int i = 0; i < 20; i++) {
+      assertThat(router.generate("email", "formal", false).hedged()).isFalse();
+    }
+    verify(openAi, never()).generateReply(anyString(), anyString());
+
+    when(gemini.generateReply(anyString(), anyString())).thenAnswer(inv -> {
+      Thread.sleep(5_000);
+      return "slow gemini";
+    });
+    long startedAt = System.nanoTime();
+    AiGeneration hedged = router.generate("email", "formal", false);
+
+    assertThat(hedged.text()).isEqualTo("from openai");
+    assertThat(hedged.route()).isEqualTo(AiGeneration.HEDGE);
+    assertThat(hedged.hedged()).isTrue();
+    assertThat(System.nanoTime() - startedAt).isLessThan(2_000_000_000L);
+  }
+
+  @Test
+  void aHalfOpenFallbackKeepsItsProbeUntilItIsActuallyCalled() {
+    when(gemini.generateReply(anyString(), anyString()))
+        .thenThrow(new IllegalStateException("503"))
+        .thenReturn("from gemini")
+        .thenThrow(new IllegalStateException("503"));
+    when(openAi.generateReply(anyString(), anyString()))
+        .thenThrow(new IllegalStateException("503"))
+        .thenReturn("from openai");
+    // one failure opens a breaker, and it is half-open right away
+    AiServiceRouter router = router(false, 1, new ReplyCache(mock(JdbcTemplate.class), false, false, 10, 60), 0);
+    assertThatThrownBy(() -> router.generate("email", "formal", false)).hasMessage("503");
+
+    // Gemini's probe succeeds; OpenAI was not needed, so its probe is still free
+    assertThat(router.generate("email", "formal", false).text()).isEqualTo("from gemini");
+
+    AiGeneration failover = router.generate("email", "formal", false);
+    assertThat(failover.text()).isEqualTo("from openai");
+    assertThat(failover.route()).isEqualTo(AiGeneration.FAILOVER);
+  }
+
+  @Test
+  void aStreamThatGoesQuietIsCancelledAndFailsOver() {
+    when(gemini.streamReply(anyString(), anyString(), any())).thenAnswer(inv -> {
+      Thread.sleep(5_000);
+      return "late gemini";
+    });
+    when(openAi.streamReply(anyString(), anyString(), any())).thenAnswer(inv -> {
+      inv.<Consumer<String>>getArgument(2).accept("from openai");
+      return "from openai";
+    });
+    AiServiceRouter router = router(false, 5);
+    List<String> tokens = new ArrayList<>();
+
+    long startedAt = System.nanoTime();
+    AiGeneration streamed = router.stream("email", "formal", false, tokens::add);
+
+    assertThat(streamed.route()).isEqualTo(AiGeneration.FAILOVER);
+    assertThat(tokens).containsExactly("from openai");
+    assertThat(System.nanoTime() - startedAt).isLessThan(2_000_000_000L);
+    assertThat(router.stats().get(0).timeouts()).isEqualTo(1);
+  }
+
+  @Test
+  void generatesMissingToneVariantsInOneCallAndCachesEachTone() {
+    List<String> tones = List.of("formal", "friendly", "concise");
+    when(gemini.generateReply("email", "formal")).thenReturn("cached formal");
+    when(gemini.generateReplies(anyString(), anyList())).thenThrow(new IllegalStateException("503"));
+    when(openAi.generateReplies("email", List.of("friendly", "concise")))
+        .thenReturn(Map.of("friendly", "hi!", "concise", "ok."));
+    AiServiceRouter router = router(false, 5,
+        new ReplyCache(mock(JdbcTemplate.class), true, false, 10, 60));
+    router.generate("email", "formal", false);
+
+    Map<String, AiGeneration> variants = router.generateVariants("email", tones, false);
+
+    assertThat(variants.keySet()).containsExactlyElementsOf(tones);
+    assertThat(variants.get("formal").route()).isEqualTo(AiGeneration.CACHE);
+    assertThat(variants.get("friendly").text()).isEqualTo("hi!");
+    assertThat(variants.get("friendly").route()).isEqualTo(AiGeneration.FAILOVER);
+    assertThat(variants.get("concise").provider()).isEqualTo("openai");
+    // each variant was cached under its own tone
+    assertThat(router.generate("email", "concise", false).route()).isEqualTo(AiGeneration.CACHE);
+    verify(openAi, times(1)).generateReplies(anyString(), anyList());
+  }
+
+  private AiServiceRouter router(boolean hedge, int failureThreshold) {
+    return router(hedge, failureThreshold, new ReplyCache(mock(JdbcTemplate.class), false, false, 10, 60));
+  }
+
+  private AiServiceRouter router(boolean hedge, int failureThreshold, ReplyCache replyCache) {
+    return router(hedge, failureThreshold, replyCache, 60_000);
+  }
+
+  @SuppressWarnings("unchecked")
+  private AiServiceRouter router(boolean hedge, int failureThreshold, ReplyCache replyCache, long openMs) {
+    ObjectProvider<GeminiService> geminiProvider = mock(ObjectProvider.class);
+    ObjectProvider<OpenAiService> openAiProvider = mock(ObjectProvider.class);
+    when(geminiProvider.getIfAvailable()).thenReturn(gemini);
+    when(openAiProvider.getIfAvailable()).thenReturn(openAi);
+    when(gemini.model()).thenReturn("gemini-test");
+    when(openAi.model()).thenReturn("openai-test");
+
+    return new AiServiceRouter(geminiProvider, openAiProvider, replyCache,
+        new PromptCompactor(List.of(), true),
+        "gemini", -1, 10_000, -1, 10_000, hedge, 100, 50, failureThreshold, 20, openMs, 500);
+  }
+}
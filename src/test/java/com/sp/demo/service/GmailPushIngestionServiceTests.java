@@ -0,0 +1,66 @@
+package com.sp.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.sp.demo.domain.entity.User;
+import com.sp.demo.repository.GmailSyncStateRepository;
+import com.sp.demo.repository.UserRepository;
+import java.math.BigInteger;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class GmailPushIngestionServiceTests {
+
+  private final GmailSyncService syncService = mock(GmailSyncService.class);
+  private final UserRepository userRepository = mock(UserRepository.class);
+  private final GmailSyncStateRepository syncStateRepository = mock(GmailSyncStateRepository.class);
+  private final UUID userId = UUID.randomUUID();
+
+  private GmailPushIngestionService service;
+
+  @BeforeEach
+  void setUp() {
+    when(userRepository.findByEmailIgnoreCase("someone@example.com"))
+        .thenReturn(Optional.of(User.builder().id(userId).email("someone@example.com").build()));
+    when(syncStateRepository.findById(any())).thenReturn(Optional.empty());
+  }
+
+  @AfterEach
+  void tearDown() {
+    service.shutdown();
+  }
+
+  @Test
+  void burstOfNotificationsForOneMailboxRunsOneSync() throws Exception {
+    service = new GmailPushIngestionService(syncService, userRepository, syncStateRepository, 0, 10_000, 2, 10);
+
+    for (int i = 0; i < 25; i++) {
+      service.accept("Someone@Example.com", BigInteger.valueOf(100 + i));
+    }
+    service.drain();
+
+    verify(syncService, timeout(2_000).times(1)).sync(userId);
+    assertThat(service.stats().received()).isEqualTo(25);
+    assertThat(service.stats().coalesced()).isEqualTo(24);
+  }
+
+  @Test
+  void notificationsStayPendingUntilTheMailboxIsQuiet() throws Exception {
+    service = new GmailPushIngestionService(syncService, userRepository, syncStateRepository, 60_000, 60_000, 2, 10);
+
+    service.accept("someone@example.com", BigInteger.TEN);
+    service.drain();
+
+    verify(syncService, times(0)).sync(any());
+    assertThat(service.stats().pendingMailboxes()).isEqualTo(1);
+  }
+}
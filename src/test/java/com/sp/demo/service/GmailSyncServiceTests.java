@@ -0,0 +1,119 @@
+package com.sp.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.sp.demo.domain.entity.GmailEmail;
+import com.sp.demo.domain.entity.GmailSyncState;
+import com.sp.demo.domain.entity.OAuthToken;
+import com.sp.demo.domain.entity.User;
+import com.sp.demo.external.gmail.GmailClient;
+import com.sp.demo.external.gmail.GmailClient.GmailHistoryChanges;
+import com.sp.demo.external.gmail.GmailClient.GmailMessageDetails;
+import com.sp.demo.external.gmail.GmailHistoryExpiredException;
+import com.sp.demo.external.google.TokenRefreshService;
+import com.sp.demo.repository.GmailEmailRepository;
+import com.sp.demo.repository.GmailSyncStateRepository;
+import com.sp.demo.repository.UserRepository;
+import com.sp.demo.service.GmailEmailCacheService.CacheChanges;
+import com.sp.demo.service.GmailEmailCacheService.CacheDelta;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class GmailSyncServiceTests {
+
+  private final UUID userId = UUID.randomUUID();
+  private final User user = User.builder().id(userId).build();
+  private final OAuthToken token = new OAuthToken();
+
+  private final GmailClient gmailClient = mock(GmailClient.class);
+  private final GmailEmailCacheService cacheService = mock(GmailEmailCacheService.class);
+  private final GmailEmailRepository gmailEmailRepository = mock(GmailEmailRepository.class);
+  private final GmailSyncStateRepository syncStateRepository = mock(GmailSyncStateRepository.class);
+  private final UnreadSnapshotCache unreadSnapshotCache = mock(UnreadSnapshotCache.class);
+  private GmailSyncService service;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    UserRepository userRepository = mock(UserRepository.class);
+    when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+    TokenRefreshService tokenRefreshService = mock(TokenRefreshService.class);
+    when(tokenRefreshService.validTokenFor(userId)).thenReturn(token);
+    when(cacheService.apply(eq(user), any(), any(), anyBoolean())).thenReturn(new CacheChanges(1, 1, 1));
+
+    service = new GmailSyncService(gmailClient, cacheService, gmailEmailRepository, syncStateRepository,
+        tokenRefreshService, userRepository, unreadSnapshotCache, 100);
+  }
+
+  @Test
+  void appliesOnlyTheHistoryDeltaSinceTheStoredCursor() throws Exception {
+    when(syncStateRepository.findById(userId)).thenReturn(Optional.of(
+        GmailSyncState.builder().userId(userId).historyId(BigInteger.valueOf(100)).build()));
+    Map<String, List<String>> labels = new LinkedHashMap<>();
+    labels.put("cached", List.of("INBOX"));
+    labels.put("new", List.of("INBOX", "UNREAD"));
+    labels.put("sent", List.of("SENT"));
+    when(gmailClient.listHistory(token, BigInteger.valueOf(100))).thenReturn(new GmailHistoryChanges(
+        BigInteger.valueOf(120), Set.of("new", "sent"), Set.of("gone"), labels));
+    when(gmailEmailRepository.findByUserIdAndGmailMessageIdIn(eq(userId), any()))
+        .thenReturn(List.of(GmailEmail.builder().gmailMessageId("cached").build()));
+    List<GmailMessageDetails> fetched = List.of(details("new"));
+    when(gmailClient.getMessageMetadata(token, List.of("new"))).thenReturn(fetched);
+
+    GmailSyncService.SyncResult result = service.sync(userId);
+
+    assertThat(result.mode()).isEqualTo(GmailSyncService.SyncMode.INCREMENTAL);
+    assertThat(result.historyId()).isEqualTo(BigInteger.valueOf(120));
+    ArgumentCaptor<CacheDelta> delta = ArgumentCaptor.forClass(CacheDelta.class);
+    verify(cacheService).apply(eq(user), delta.capture(), eq(BigInteger.valueOf(120)), eq(false));
+    assertThat(delta.getValue().upserts()).isEqualTo(fetched);
+    assertThat(delta.getValue().labelUpdates()).containsOnlyKeys("cached");
+    assertThat(delta.getValue().removals()).containsExactly("gone");
+    verify(gmailClient, never()).listMessageIds(any(), any(), any(Integer.class));
+    verify(unreadSnapshotCache).invalidate(userId);
+  }
+
+  @Test
+  void fallsBackToAFullSyncWhenTheCursorHasExpired() throws Exception {
+    when(syncStateRepository.findById(userId)).thenReturn(Optional.of(
+        GmailSyncState.builder().userId(userId).historyId(BigInteger.valueOf(5)).build()));
+    when(gmailClient.listHistory(token, BigInteger.valueOf(5)))
+        .thenThrow(new GmailHistoryExpiredException(BigInteger.valueOf(5), null));
+    when(gmailClient.currentHistoryId(token)).thenReturn(BigInteger.valueOf(900));
+    when(gmailClient.listMessageIds(token, "is:unread in:inbox", 100))
+        .thenReturn(new ArrayList<>(List.of("a", "b")));
+    when(gmailClient.getMessageMetadata(token, List.of("a", "b")))
+        .thenReturn(List.of(details("a"), details("b")));
+    when(gmailEmailRepository.findUnreadMessageIds(userId)).thenReturn(List.of("a", "read-elsewhere"));
+
+    GmailSyncService.SyncResult result = service.sync(userId);
+
+    assertThat(result.mode()).isEqualTo(GmailSyncService.SyncMode.FULL);
+    assertThat(result.historyId()).isEqualTo(BigInteger.valueOf(900));
+    ArgumentCaptor<CacheDelta> delta = ArgumentCaptor.forClass(CacheDelta.class);
+    verify(cacheService).apply(eq(user), delta.capture(), eq(BigInteger.valueOf(900)), eq(true));
+    assertThat(delta.getValue().upserts()).extracting(GmailMessageDetails::gmailMessageId)
+        .containsExactly("a", "b");
+    assertThat(delta.getValue().noLongerUnread()).containsExactly("read-elsewhere");
+  }
+
+  private static GmailMessageDetails details(String id) {
+    return new GmailMessageDetails(id, "t-" + id, "a@example.com", "Subject", null, null, null, "snippet",
+        List.of("INBOX", "UNREAD"), null);
+  }
+}
@@ -0,0 +1,110 @@
+package com.sp.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sp.demo.external.http.OutboundHttpClients;
+import com.sp.demo.service.llm.LlmQuotaExceededException;
+import com.sp.demo.service.llm.LlmResponseCodec;
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class OpenAiServiceTests {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final AtomicReference<JsonNode> lastRequest = new AtomicReference<>();
+  private final AtomicReference<String> lastAuthorization = new AtomicReference<>();
+  private final AtomicInteger status = new AtomicInteger(200);
+  private final AtomicReference<String> response = new AtomicReference<>();
+
+  private HttpServer server;
+  private OpenAiService service;
+
+  @BeforeEach
+  void startServer() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/v1/chat/completions", exchange -> {
+      lastRequest.set(objectMapper.readTree(exchange.getRequestBody()));
+      lastAuthorization.set(exchange.getRequestHeaders().getFirst("Authorization"));
+      byte[] body = response.get().getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type",
+          response.get().startsWith("data:") ? "text/event-stream" : "application/json");
+      exchange.sendResponseHeaders(status.get(), body.length);
+      exchange.getResponseBody().write(body);
+      exchange.close();
+    });
+    server.start();
+
+    service = new OpenAiService(new OutboundHttpClients(new MockEnvironment()), objectMapper,
+        new LlmResponseCodec(objectMapper));
+    ReflectionTestUtils.setField(service, "url",
+        "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions");
+    ReflectionTestUtils.setField(service, "apiKey", "sk-test");
+    ReflectionTestUtils.setField(service, "model", "gpt-test");
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void sendsANonStreamingRequestAndReadsTheReply() {
+    response.set("{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\"Thanks!\"},"
+        + "\"finish_reason\":\"stop\"}],\"usage\":{\"total_tokens\":9}}");
+
+    assertThat(service.generateReply("Can we meet?", "friendly")).isEqualTo("Thanks!");
+
+    JsonNode request = lastRequest.get();
+    assertThat(request.path("model").asText()).isEqualTo("gpt-test");
+    assertThat(request.has("stream")).isFalse();
+    assertThat(request.has("response_format")).isFalse();
+    assertThat(request.path("messages").path(0).path("content").asText()).contains("friendly", "Can we meet?");
+    assertThat(lastAuthorization.get()).isEqualTo("Bearer sk-test");
+  }
+
+  @Test
+  void streamsDeltasUntilDone() {
+    response.set("data: {\"choices\":[{\"delta\":{\"content\":\"Hi\"}}]}\n\n"
+        + "data: {\"choices\":[{\"delta\":{\"content\":\" there\"},\"finish_reason\":\"stop\"}]}\n\n"
+        + "data: [DONE]\n\n");
+    List<String> tokens = new ArrayList<>();
+
+    assertThat(service.streamReply("Hello", "formal", tokens::add)).isEqualTo("Hi there");
+    assertThat(tokens).containsExactly("Hi", " there");
+    assertThat(lastRequest.get().path("stream").asBoolean()).isTrue();
+  }
+
+  @Test
+  void asksForAllTonesInOneJsonModeCall() {
+    response.set("{\"choices\":[{\"message\":{\"content\":"
+        + "\"{\\\"formal\\\":\\\"Dear Ann,\\\",\\\"concise\\\":\\\"OK.\\\"}\"},\"finish_reason\":\"stop\"}]}");
+
+    Map<String, String> replies = service.generateReplies("Lunch?", List.of("formal", "concise"));
+
+    assertThat(replies).containsExactly(Map.entry("formal", "Dear Ann,"), Map.entry("concise", "OK."));
+    assertThat(lastRequest.get().path("response_format").path("type").asText()).isEqualTo("json_object");
+  }
+
+  @Test
+  void mapsA429ToQuotaExceeded() {
+    status.set(429);
+    response.set("{\"error\":{\"message\":\"Rate limit reached\",\"type\":\"requests\",\"code\":\"rate_limit_exceeded\"}}");
+
+    assertThatThrownBy(() -> service.generateReply("Hello", "formal"))
+        .isInstanceOf(LlmQuotaExceededException.class);
+  }
+}
@@ -0,0 +1,54 @@
+package com.sp.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class ProviderHealthTests {
+
+  @Test
+  void halfOpenLetsOneProbeThroughAndClosingClearsTheWindow() {
+    // open for 0 ms: half-open as soon as it opens
+    ProviderHealth health = new ProviderHealth(10, 3, 4, 0);
+    health.recordFailure(100);
+    health.recordFailure(100);
+    health.recordFailure(100);
+    assertThat(health.state()).isEqualTo(ProviderHealth.BreakerState.HALF_OPEN);
+
+    assertThat(health.tryAcquire(60_000)).isTrue();
+    assertThat(health.tryAcquire(60_000)).isFalse();
+    assertThat(health.allowsRequests()).isFalse();
+
+    health.recordSuccess(100);
+    assertThat(health.state()).isEqualTo(ProviderHealth.BreakerState.CLOSED);
+    assertThat(health.samples()).isEqualTo(1);
+
+    // the three failures before the close no longer count towards the error rate
+    health.recordFailure(100);
+    assertThat(health.state()).isEqualTo(ProviderHealth.BreakerState.CLOSED);
+    assertThat(health.tryAcquire(60_000)).isTrue();
+    assertThat(health.tryAcquire(60_000)).isTrue();
+  }
+
+  @Test
+  void aProbeThatNeverReportsFreesTheSlotAfterItsLease() throws InterruptedException {
+    ProviderHealth health = new ProviderHealth(10, 1, 4, 0);
+    health.recordFailure(100);
+
+    assertThat(health.tryAcquire(20)).isTrue();
+    assertThat(health.tryAcquire(20)).isFalse();
+    Thread.sleep(40);
+    assertThat(health.tryAcquire(20)).isTrue();
+  }
+
+  @Test
+  void aReleasedProbeFreesTheSlotAtOnce() {
+    ProviderHealth health = new ProviderHealth(10, 1, 4, 0);
+    health.recordFailure(100);
+
+    assertThat(health.tryAcquire(60_000)).isTrue();
+    health.release();
+    assertThat(health.tryAcquire(60_000)).isTrue();
+    assertThat(health.tryAcquire(60_000)).isFalse();
+  }
+}
@@ -0,0 +1,57 @@
+package com.sp.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+class ReplyCacheTests {
+
+  @Test
+  void keyIgnoresWhitespaceNoiseButNotWordingOrModel() {
+    String key = ReplyCache.key("gemini", "gemini-2.5-flash", "Hi team,\r\n\r\n\r\nThe build   is red.  \n", "Formal");
+
+    assertThat(ReplyCache.key("GEMINI", "gemini-2.5-flash", "  Hi team,\n\nThe build is red.", " formal"))
+        .isEqualTo(key);
+    assertThat(ReplyCache.key("gemini", "gemini-2.5-flash", "Hi team,\n\nThe build is green.", "formal"))
+        .isNotEqualTo(key);
+    assertThat(ReplyCache.key("gemini", "gemini-2.5-pro", "Hi team,\n\nThe build is red.", "formal"))
+        .isNotEqualTo(key);
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedAndCountsSavedLatency() {
+    ReplyCache cache = new ReplyCache(mock(JdbcTemplate.class), true, false, 2, 60);
+
+    cache.put("a", "gemini", "m", "reply a", 800);
+    cache.put("b", "gemini", "m", "reply b", 500);
+    assertThat(cache.get("a")).isEqualTo("reply a");
+    cache.put("c", "gemini", "m", "reply c", 300);
+
+    assertThat(cache.get("b")).isNull();
+    assertThat(cache.get("c")).isEqualTo("reply c");
+
+    ReplyCache.CacheStats stats = cache.stats();
+    assertThat(stats.memoryHits()).isEqualTo(2);
+    assertThat(stats.misses()).isEqualTo(1);
+    assertThat(stats.evictions()).isEqualTo(1);
+    assertThat(stats.savedLatencyMs()).isEqualTo(1100);
+  }
+
+  @Test
+  void multiKeyLookupReturnsTheFirstHitAndCountsOnce() {
+    ReplyCache cache = new ReplyCache(mock(JdbcTemplate.class), true, false, 10, 60);
+    cache.put("openai", "openai", "m", "reply from openai", 400);
+
+    ReplyCache.Hit hit = cache.get(List.of("gemini", "openai"));
+    assertThat(hit.key()).isEqualTo("openai");
+    assertThat(hit.reply()).isEqualTo("reply from openai");
+    assertThat(cache.get(List.of("gemini", "other"))).isNull();
+
+    ReplyCache.CacheStats stats = cache.stats();
+    assertThat(stats.memoryHits()).isEqualTo(1);
+    assertThat(stats.misses()).isEqualTo(1);
+  }
+}
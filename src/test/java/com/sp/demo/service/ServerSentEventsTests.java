@@ -0,0 +1,28 @@
+package com.sp.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ServerSentEventsTests {
+
+  @Test
+  void dispatchesDataAtBlankLinesAndIgnoresOtherFields() throws Exception {
+    String stream = ": keep-alive\n"
+        + "data: {\"a\":1}\n\n"
+        + "event: message\n"
+        + "data:first\n"
+        + "data: second\n\n"
+        + "data: [DONE]";
+
+    List<String> events = new ArrayList<>();
+    ServerSentEvents.forEachData(
+        new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8)), events::add);
+
+    assertThat(events).containsExactly("{\"a\":1}", "first\nsecond", "[DONE]");
+  }
+}
@@ -0,0 +1,57 @@
+package com.sp.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.jupiter.api.Test;
+
+class TokenCryptoServiceTests {
+
+  private static final byte[] KEY = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+  private static final String BASE64_KEY = Base64.getEncoder().encodeToString(KEY);
+
+  @Test
+  void roundTripsWithAndWithoutTheDecryptCache() {
+    for (TokenCryptoService service : new TokenCryptoService[] {
+        new TokenCryptoService(BASE64_KEY, "", "", 0, 0), new TokenCryptoService(BASE64_KEY, "", "", 10, 60)}) {
+      String encrypted = service.encrypt("refresh-token-ü");
+
+      assertThat(encrypted).isNotEqualTo("refresh-token-ü");
+      assertThat(service.decrypt(encrypted)).isEqualTo("refresh-token-ü");
+      assertThat(service.decrypt(encrypted)).isEqualTo("refresh-token-ü");
+    }
+  }
+
+  @Test
+  void decryptsValuesWrittenByThePreviousImplementation() throws Exception {
+    byte[] iv = new byte[12];
+    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"), new GCMParameterSpec(128, iv));
+    byte[] ciphertext = cipher.doFinal("stored-before".getBytes(StandardCharsets.UTF_8));
+    String stored = Base64.getEncoder().encodeToString(
+        ByteBuffer.allocate(iv.length + ciphertext.length).put(iv).put(ciphertext).array());
+
+    assertThat(new TokenCryptoService(BASE64_KEY, "", "", 0, 0).decrypt(stored)).isEqualTo("stored-before");
+  }
+
+  @Test
+  void rotationKeepsOldValuesReadableAndMovesThemToTheActiveKey() {
+    String newKey = Base64.getEncoder().encodeToString("fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.US_ASCII));
+    TokenCryptoService before = new TokenCryptoService(BASE64_KEY, "", "", 0, 0);
+    TokenCryptoService after = new TokenCryptoService(BASE64_KEY, "k2:" + newKey, "k2", 0, 0);
+
+    String old = before.encrypt("refresh");
+    assertThat(TokenCryptoService.keyIdOf(old)).isEqualTo(TokenCryptoService.DEFAULT_KEY_ID);
+    assertThat(after.decrypt(old)).isEqualTo("refresh");
+
+    String rotated = after.reencrypt(old);
+    assertThat(TokenCryptoService.keyIdOf(rotated)).isEqualTo("k2");
+    assertThat(after.decrypt(rotated)).isEqualTo("refresh");
+    assertThat(after.reencrypt(rotated)).isNull();
+  }
+}
@@ -0,0 +1,100 @@
+package com.sp.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.sp.demo.service.TokenReencryptionService.JobState;
+import com.sp.demo.service.TokenReencryptionService.ReencryptionProgress;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+class TokenReencryptionServiceTests {
+
+  private static final String OLD_KEY = Base64.getEncoder().encodeToString(
+      "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII));
+  private static final String NEW_KEY = Base64.getEncoder().encodeToString(
+      "fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.US_ASCII));
+
+  @Test
+  void pagesByIdAndCountsReencryptedCurrentAndConflictingRows() throws Exception {
+    TokenCryptoService before = new TokenCryptoService(OLD_KEY, "", "", 0, 0);
+    TokenCryptoService after = new TokenCryptoService(OLD_KEY, "k2:" + NEW_KEY, "k2", 0, 0);
+
+    TreeMap<UUID, String> table = new TreeMap<>();
+    for (int i = 1; i <= 5; i++) {
+      table.put(new UUID(0, i), i == 3 ? after.encrypt("refresh-" + i) : before.encrypt("refresh-" + i));
+    }
+    // row 4 is rewritten by a login between the scan and the batch update
+    UUID raced = new UUID(0, 4);
+
+    JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    List<UUID> cursors = Collections.synchronizedList(new ArrayList<>());
+    when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<Object>>any(), any(), any())).thenAnswer(inv -> {
+      RowMapper<?> mapper = inv.getArgument(1);
+      UUID cursor = inv.getArgument(2);
+      int limit = inv.getArgument(3);
+      cursors.add(cursor);
+
+      List<Object> rows = new ArrayList<>();
+      for (Map.Entry<UUID, String> row : table.tailMap(cursor, false).entrySet()) {
+        if (rows.size() == limit) {
+          break;
+        }
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getObject(1, UUID.class)).thenReturn(row.getKey());
+        when(rs.getString(2)).thenReturn(row.getValue());
+        rows.add(mapper.mapRow(rs, rows.size()));
+      }
+      return rows;
+    });
+    when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(inv -> {
+      List<Object[]> updates = inv.getArgument(1);
+      int[] counts = new int[updates.size()];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = raced.equals(updates.get(i)[1]) ? 0 : 1;
+        assertThat(TokenCryptoService.keyIdOf((String) updates.get(i)[0])).isEqualTo("k2");
+      }
+      return counts;
+    });
+
+    TokenReencryptionService service = new TokenReencryptionService(jdbcTemplate, after, 2, 2, 0);
+    service.start();
+    ReencryptionProgress progress = awaitFinished(service);
+    service.shutdown();
+
+    assertThat(progress.state()).isEqualTo(JobState.COMPLETED);
+    assertThat(progress.scanned()).isEqualTo(5);
+    assertThat(progress.reencrypted()).isEqualTo(3);
+    assertThat(progress.alreadyCurrent()).isEqualTo(1);
+    assertThat(progress.conflicts()).isEqualTo(1);
+    assertThat(progress.failed()).isZero();
+    assertThat(progress.lastId()).isEqualTo(new UUID(0, 5));
+    assertThat(cursors).containsExactly(new UUID(0, 0), new UUID(0, 2), new UUID(0, 4), new UUID(0, 5));
+  }
+
+  private static ReencryptionProgress awaitFinished(TokenReencryptionService service) throws InterruptedException {
+    for (int i = 0; i < 200; i++) {
+      ReencryptionProgress progress = service.progress();
+      if (progress.state() != JobState.RUNNING) {
+        return progress;
+      }
+      Thread.sleep(10);
+    }
+    throw new AssertionError("re-encryption did not finish: " + service.progress());
+  }
+}
@@ -0,0 +1,111 @@
+package com.sp.demo.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.sp.demo.external.gmail.GmailClient.GmailMessageDetails;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class UnreadSnapshotCacheTests {
+
+  @Test
+  void concurrentRequestsShareOneFetch() throws Exception {
+    UnreadSnapshotCache cache = new UnreadSnapshotCache(60_000, 100);
+    UUID user = UUID.randomUUID();
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<List<GmailMessageDetails>>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(pool.submit(() -> cache.get(user, 10, () -> {
+          loads.incrementAndGet();
+          release.await(5, TimeUnit.SECONDS);
+          return messages(10);
+        })));
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      for (Future<List<GmailMessageDetails>> f : results) {
+        assertThat(f.get(5, TimeUnit.SECONDS)).hasSize(10);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    assertThat(loads).hasValue(1);
+    assertThat(cache.stats().misses()).isEqualTo(1);
+    assertThat(cache.stats().hits() + cache.stats().coalesced()).isEqualTo(7);
+  }
+
+  @Test
+  void smallerRequestsReuseTheSnapshotUntilInvalidated() throws Exception {
+    UnreadSnapshotCache cache = new UnreadSnapshotCache(60_000, 100);
+    UUID user = UUID.randomUUID();
+    AtomicInteger loads = new AtomicInteger();
+
+    cache.get(user, 10, () -> { loads.incrementAndGet(); return messages(10); });
+    assertThat(cache.get(user, 3, () -> { loads.incrementAndGet(); return messages(3); })).hasSize(3);
+    assertThat(loads).hasValue(1);
+
+    cache.invalidate(user);
+    cache.get(user, 3, () -> { loads.incrementAndGet(); return messages(3); });
+    assertThat(loads).hasValue(2);
+
+    // a larger request than the snapshot holds goes back to Gmail
+    cache.get(user, 20, () -> { loads.incrementAndGet(); return messages(20); });
+    assertThat(loads).hasValue(3);
+  }
+
+  @Test
+  void waitersAreReleasedWhenTheLoaderThrowsAnError() throws Exception {
+    UnreadSnapshotCache cache = new UnreadSnapshotCache(60_000, 100);
+    UUID user = UUID.randomUUID();
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      Future<List<GmailMessageDetails>> owner = pool.submit(() -> cache.get(user, 10, () -> {
+        loading.countDown();
+        release.await(5, TimeUnit.SECONDS);
+        throw new StackOverflowError("loader blew up");
+      }));
+      loading.await(5, TimeUnit.SECONDS);
+      Future<List<GmailMessageDetails>> waiter = pool.submit(() -> cache.get(user, 10, () -> messages(10)));
+      Thread.sleep(100);
+      release.countDown();
+
+      for (Future<List<GmailMessageDetails>> f : List.of(owner, waiter)) {
+        assertThatThrownBy(() -> f.get(5, TimeUnit.SECONDS))
+            .isInstanceOf(ExecutionException.class)
+            .hasCauseInstanceOf(StackOverflowError.class);
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+
+    // the failed load is not cached
+    assertThat(cache.get(user, 10, () -> messages(10))).hasSize(10);
+  }
+
+  private static List<GmailMessageDetails> messages(int n) {
+    List<GmailMessageDetails> list = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      list.add(new GmailMessageDetails("m" + i, "t" + i, null, "", null, null, null, "", List.of(), null));
+    }
+    return list;
+  }
+}
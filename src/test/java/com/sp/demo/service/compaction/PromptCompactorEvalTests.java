@@ -0,0 +1,65 @@
+package com.sp.demo.service.compaction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.InputStream;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the compaction pipeline over {@code compaction/corpus.json}, a sample of real-world mail
+ * shapes. Each case lists the facts a reply has to address ({@code mustKeep}) and the noise the
+ * pipeline should remove ({@code mustDrop}); keeping every fact is the quality bar, since the
+ * model cannot answer what it never sees.
+ */
+class PromptCompactorEvalTests {
+
+  record Case(String name, String email, List<String> mustKeep, List<String> mustDrop) {
+  }
+
+  private final PromptCompactor compactor = new PromptCompactor(List.of(
+      new QuotedHistoryStage(),
+      new SignatureStage(),
+      new WhitespaceUrlStage(),
+      new TokenBudgetStage(2000)), true);
+
+  @Test
+  void keepsEveryFactAndDropsTheNoise() throws Exception {
+    long before = 0;
+    long after = 0;
+    for (Case c : corpus()) {
+      PromptCompactor.CompactionResult result = compactor.compact(c.email());
+
+      assertThat(result.text()).as(c.name()).contains(c.mustKeep());
+      for (String noise : c.mustDrop()) {
+        assertThat(result.text()).as(c.name()).doesNotContain(noise);
+      }
+      before += result.originalTokens();
+      after += result.compactedTokens();
+    }
+
+    assertThat(after).isLessThan(before * 6 / 10);
+    assertThat(compactor.stats().stages())
+        .allSatisfy(s -> assertThat(s.tokensSaved()).isGreaterThanOrEqualTo(0));
+  }
+
+  @Test
+  void budgetCutsFromTheBottomAtALineBoundary() {
+    PromptCompactor small = new PromptCompactor(List.of(new TokenBudgetStage(40)), true);
+    String email = "First line keeps the ask.\n" + "filler words here\n".repeat(50);
+
+    PromptCompactor.CompactionResult result = small.compact(email);
+
+    assertThat(result.text()).startsWith("First line keeps the ask.").endsWith("[...]");
+    assertThat(result.compactedTokens()).isLessThanOrEqualTo(40);
+  }
+
+  private static List<Case> corpus() throws Exception {
+    try (InputStream in = PromptCompactorEvalTests.class.getResourceAsStream("/compaction/corpus.json")) {
+      return new ObjectMapper().readValue(in, new TypeReference<>() {
+      });
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.sp.demo.service.llm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+class LlmResponseCodecTests {
+
+  private final LlmResponseCodec codec = new LlmResponseCodec(new ObjectMapper());
+
+  @Test
+  void readsGeminiTextAcrossPartsAndSkipsEverythingElse() {
+    LlmReply reply = codec.readGemini(body("{\"candidates\":[{\"content\":{\"parts\":["
+        + "{\"text\":\"Hello \"},{\"inlineData\":{\"data\":\"x\"}},{\"text\":\"there\"}]},"
+        + "\"finishReason\":\"STOP\",\"safetyRatings\":[{\"category\":\"HARM_CATEGORY_HARASSMENT\"}]},"
+        + "{\"content\":{\"parts\":[{\"text\":\"ignored\"}]}}],"
+        + "\"usageMetadata\":{\"totalTokenCount\":12}}"));
+
+    assertThat(reply.text()).isEqualTo("Hello there");
+    assertThat(reply.finishReason()).isEqualTo("STOP");
+  }
+
+  @Test
+  void readsOpenAiMessageAndStreamDelta() {
+    LlmReply reply = codec.readOpenAi(body("{\"id\":\"c1\",\"choices\":[{\"message\":"
+        + "{\"role\":\"assistant\",\"content\":\"Sure.\",\"refusal\":null},\"finish_reason\":\"stop\"}],"
+        + "\"usage\":{\"total_tokens\":5}}"));
+    LlmReply chunk = codec.readOpenAiChunk("{\"choices\":[{\"delta\":{\"content\":\"Su\"},\"finish_reason\":null}]}");
+
+    assertThat(reply.text()).isEqualTo("Sure.");
+    assertThat(chunk.text()).isEqualTo("Su");
+    assertThat(chunk.finishReason()).isNull();
+  }
+
+  @Test
+  void mapsBlockedAndEmptyReplies() {
+    assertThatThrownBy(() -> codec.readGemini(body("{\"promptFeedback\":{\"blockReason\":\"SAFETY\"}}")))
+        .isInstanceOf(LlmSafetyBlockedException.class);
+    assertThatThrownBy(() -> codec.readGemini(body("{\"candidates\":[{\"finishReason\":\"SAFETY\"}]}")))
+        .isInstanceOf(LlmSafetyBlockedException.class);
+    assertThatThrownBy(() -> codec.readOpenAi(body("{\"choices\":[{\"message\":"
+        + "{\"content\":null,\"refusal\":\"I can't help with that.\"},\"finish_reason\":\"stop\"}]}")))
+        .isInstanceOf(LlmSafetyBlockedException.class);
+    assertThatThrownBy(() -> codec.readGemini(body("{\"candidates\":[{\"finishReason\":\"MAX_TOKENS\"}]}")))
+        .isInstanceOf(LlmEmptyResponseException.class);
+  }
+
+  @Test
+  void mapsErrorPayloads() {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, "30");
+
+    LlmProviderException quota = codec.readError(LlmResponseCodec.GEMINI, 429, bytes(
+        "{\"error\":{\"code\":429,\"message\":\"Quota exceeded\",\"status\":\"RESOURCE_EXHAUSTED\"}}"), headers);
+    LlmProviderException filtered = codec.readError(LlmResponseCodec.OPENAI, 400, bytes(
+        "{\"error\":{\"message\":\"rejected\",\"type\":\"invalid_request_error\",\"code\":\"content_filter\"}}"), null);
+    LlmProviderException other = codec.readError(LlmResponseCodec.OPENAI, 502, bytes("<html>Bad gateway</html>"), null);
+
+    assertThat(quota).isInstanceOf(LlmQuotaExceededException.class);
+    assertThat(((LlmQuotaExceededException) quota).getRetryAfter()).isEqualTo(Duration.ofSeconds(30));
+    assertThat(filtered).isInstanceOf(LlmSafetyBlockedException.class);
+    assertThat(other).isExactlyInstanceOf(LlmProviderException.class);
+    assertThat(other.getStatus()).isEqualTo(502);
+  }
+
+  @Test
+  void readsToneVariantsInRequestOrder() {
+    List<String> tones = List.of("formal", "Friendly");
+
+    Map<String, String> variants = codec.readVariants(LlmResponseCodec.OPENAI,
+        "```json\n{\"friendly\":\"Hey!\",\"formal\":\" Dear Sir, \",\"extra\":{\"x\":1}}\n```", tones);
+
+    assertThat(variants).containsExactly(Map.entry("formal", "Dear Sir,"), Map.entry("Friendly", "Hey!"));
+    assertThatThrownBy(() -> codec.readVariants(LlmResponseCodec.GEMINI, "{\"formal\":\"Dear Sir,\"}", tones))
+        .isInstanceOf(LlmProviderException.class)
+        .hasMessageContaining("Friendly");
+  }
+
+  private static ByteArrayInputStream body(String json) {
+    return new ByteArrayInputStream(bytes(json));
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+}
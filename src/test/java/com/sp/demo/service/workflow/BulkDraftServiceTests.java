@@ -0,0 +1,240 @@
+package com.sp.demo.service.workflow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sp.demo.api.request.BulkGenerateDraftsRequest;
+import com.sp.demo.api.response.BulkDraftResultResponse;
+import com.sp.demo.api.response.BulkDraftSummaryResponse;
+import com.sp.demo.domain.entity.Draft;
+import com.sp.demo.domain.entity.GmailEmail;
+import com.sp.demo.domain.entity.User;
+import com.sp.demo.domain.enums.DraftStatus;
+import com.sp.demo.repository.DraftLogRepository;
+import com.sp.demo.repository.DraftRepository;
+import com.sp.demo.repository.GmailEmailRepository;
+import com.sp.demo.repository.UserPreferenceRepository;
+import com.sp.demo.repository.UserRepository;
+import com.sp.demo.service.AiGeneration;
+import com.sp.demo.service.AiService;
+import com.sp.demo.service.GmailMessageBodyService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class BulkDraftServiceTests {
+
+  @Test
+  void runsEmailsInParallelAndKeepsGoingPastFailures() {
+    UUID userId = UUID.randomUUID();
+    User user = User.builder().id(userId).build();
+    List<GmailEmail> emails = IntStream.range(0, 10)
+        .mapToObj(i -> GmailEmail.builder().id(UUID.randomUUID()).user(user)
+            .gmailMessageId("m" + i).bodyText("body " + i).build())
+        .toList();
+
+    UserRepository userRepository = mock(UserRepository.class);
+    when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+    GmailEmailRepository gmailEmailRepository = mock(GmailEmailRepository.class);
+    when(gmailEmailRepository.findUnreadInboxWithoutDraft(eq(userId), anyInt())).thenReturn(emails);
+    UserPreferenceRepository preferences = mock(UserPreferenceRepository.class);
+    when(preferences.findByUserId(userId)).thenReturn(Optional.empty());
+
+    List<Draft> saved = Collections.synchronizedList(new ArrayList<>());
+    DraftRepository draftRepository = mock(DraftRepository.class);
+    when(draftRepository.saveAll(any())).thenAnswer(inv -> {
+      List<Draft> drafts = new ArrayList<>();
+      for (Draft d : inv.<Iterable<Draft>>getArgument(0)) {
+        if (d.getId() == null) {
+          d.setId(UUID.randomUUID());
+          saved.add(d);
+        }
+        drafts.add(d);
+      }
+      return drafts;
+    });
+    when(draftRepository.findAllById(any())).thenAnswer(inv -> {
+      List<UUID> ids = new ArrayList<>();
+      inv.<Iterable<UUID>>getArgument(0).forEach(ids::add);
+      return saved.stream().filter(d -> ids.contains(d.getId())).toList();
+    });
+
+    AiService aiService = mock(AiService.class);
+    when(aiService.generate(anyString(), anyString(), anyBoolean())).thenAnswer(inv -> {
+      String body = inv.getArgument(0);
+      Thread.sleep(300);
+      if (body.equals("body 3")) {
+        throw new IllegalStateException("provider down");
+      }
+      return new AiGeneration("reply to " + body, "gemini", "m", AiGeneration.PRIMARY, false, 300);
+    });
+
+    BulkDraftService service = new BulkDraftService(draftRepository, mock(DraftLogRepository.class),
+        gmailEmailRepository, userRepository, preferences, mock(GmailMessageBodyService.class), aiService,
+        new TransactionTemplate(mock(PlatformTransactionManager.class)), new ObjectMapper(), 16, 10, 500, 25, 120_000);
+
+    BulkGenerateDraftsRequest request = new BulkGenerateDraftsRequest();
+    request.setUserId(userId);
+    List<BulkDraftResultResponse> results = new ArrayList<>();
+    BulkDraftSummaryResponse summary = service.generate(request, results::add);
+    service.shutdown();
+
+    assertThat(results).hasSize(10);
+    assertThat(summary.getGenerated()).isEqualTo(9);
+    assertThat(summary.getFailed()).isEqualTo(1);
+    // ten 300 ms calls side by side, not one after another
+    assertThat(summary.getElapsedMs()).isLessThan(1500);
+    assertThat(results).filteredOn(r -> r.getError() != null)
+        .singleElement()
+        .satisfies(r -> assertThat(r.getGmailMessageId()).isEqualTo("m3"));
+    assertThat(saved).filteredOn(d -> "PENDING".equals(d.getStatus().name())).hasSize(9);
+  }
+
+  @Test
+  void failedBatchWriteFailsOnlyThatBatchAndRejectedDraftsReportTheirStatus() {
+    UUID userId = UUID.randomUUID();
+    User user = User.builder().id(userId).build();
+    List<GmailEmail> emails = IntStream.range(0, 3)
+        .mapToObj(i -> GmailEmail.builder().id(UUID.randomUUID()).user(user)
+            .gmailMessageId("m" + i).bodyText("body " + i).build())
+        .toList();
+
+    UserRepository userRepository = mock(UserRepository.class);
+    when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+    GmailEmailRepository gmailEmailRepository = mock(GmailEmailRepository.class);
+    when(gmailEmailRepository.findUnreadInboxWithoutDraft(eq(userId), anyInt())).thenReturn(emails);
+    UserPreferenceRepository preferences = mock(UserPreferenceRepository.class);
+    when(preferences.findByUserId(userId)).thenReturn(Optional.empty());
+
+    List<Draft> saved = Collections.synchronizedList(new ArrayList<>());
+    DraftRepository draftRepository = mock(DraftRepository.class);
+    when(draftRepository.saveAll(any())).thenAnswer(inv -> {
+      List<Draft> drafts = new ArrayList<>();
+      for (Draft d : inv.<Iterable<Draft>>getArgument(0)) {
+        if (d.getId() == null) {
+          d.setId(UUID.randomUUID());
+          saved.add(d);
+        }
+        drafts.add(d);
+      }
+      return drafts;
+    });
+    // the first batch write hits a dead connection; the retry that fails it goes through
+    when(draftRepository.findAllById(any()))
+        .thenThrow(new DataAccessResourceFailureException("connection reset"))
+        .thenAnswer(inv -> {
+          List<UUID> ids = new ArrayList<>();
+          inv.<Iterable<UUID>>getArgument(0).forEach(ids::add);
+          return saved.stream().filter(d -> ids.contains(d.getId())).toList();
+        });
+
+    AiService aiService = mock(AiService.class);
+    when(aiService.generate(anyString(), anyString(), anyBoolean())).thenAnswer(inv -> {
+      String body = inv.getArgument(0);
+      if (body.equals("body 2")) {
+        // the user rejects this draft while it is generating
+        saved.stream().filter(d -> d.getGmailMessageId().equals("m2"))
+            .forEach(d -> d.setStatus(DraftStatus.REJECTED));
+      }
+      return new AiGeneration("reply to " + body, "gemini", "m", AiGeneration.PRIMARY, false, 10);
+    });
+
+    BulkDraftService service = new BulkDraftService(draftRepository, mock(DraftLogRepository.class),
+        gmailEmailRepository, userRepository, preferences, mock(GmailMessageBodyService.class), aiService,
+        new TransactionTemplate(mock(PlatformTransactionManager.class)), new ObjectMapper(), 1, 1, 500, 1, 120_000);
+
+    BulkGenerateDraftsRequest request = new BulkGenerateDraftsRequest();
+    request.setUserId(userId);
+    List<BulkDraftResultResponse> results = new ArrayList<>();
+    BulkDraftSummaryResponse summary = service.generate(request, results::add);
+    service.shutdown();
+
+    assertThat(results).extracting(BulkDraftResultResponse::getGmailMessageId, BulkDraftResultResponse::getStatus)
+        .containsExactly(
+            tuple("m0", "GENERATION_FAILED"),
+            tuple("m1", "PENDING"),
+            tuple("m2", "REJECTED"));
+    assertThat(results.get(0).getError()).contains("connection reset");
+    assertThat(summary.getFailed()).isEqualTo(1);
+    assertThat(saved).extracting(Draft::getStatus)
+        .containsExactly(DraftStatus.GENERATION_FAILED, DraftStatus.PENDING, DraftStatus.REJECTED);
+  }
+
+  @Test
+  @Timeout(10)
+  void anErrorInATaskFailsOnlyThatDraftInsteadOfHangingTheRequest() {
+    UUID userId = UUID.randomUUID();
+    User user = User.builder().id(userId).build();
+    List<GmailEmail> emails = IntStream.range(0, 2)
+        .mapToObj(i -> GmailEmail.builder().id(UUID.randomUUID()).user(user)
+            .gmailMessageId("m" + i).bodyText("body " + i).build())
+        .toList();
+
+    UserRepository userRepository = mock(UserRepository.class);
+    when(userRepository.findById(userId)).thenReturn(Optional.of(user));
+    GmailEmailRepository gmailEmailRepository = mock(GmailEmailRepository.class);
+    when(gmailEmailRepository.findUnreadInboxWithoutDraft(eq(userId), anyInt())).thenReturn(emails);
+    UserPreferenceRepository preferences = mock(UserPreferenceRepository.class);
+    when(preferences.findByUserId(userId)).thenReturn(Optional.empty());
+
+    List<Draft> saved = Collections.synchronizedList(new ArrayList<>());
+    DraftRepository draftRepository = mock(DraftRepository.class);
+    when(draftRepository.saveAll(any())).thenAnswer(inv -> {
+      List<Draft> drafts = new ArrayList<>();
+      for (Draft d : inv.<Iterable<Draft>>getArgument(0)) {
+        if (d.getId() == null) {
+          d.setId(UUID.randomUUID());
+          saved.add(d);
+        }
+        drafts.add(d);
+      }
+      return drafts;
+    });
+    when(draftRepository.findAllById(any())).thenAnswer(inv -> {
+      List<UUID> ids = new ArrayList<>();
+      inv.<Iterable<UUID>>getArgument(0).forEach(ids::add);
+      return saved.stream().filter(d -> ids.contains(d.getId())).toList();
+    });
+
+    AiService aiService = mock(AiService.class);
+    when(aiService.generate(anyString(), anyString(), anyBoolean())).thenAnswer(inv -> {
+      String body = inv.getArgument(0);
+      if (body.equals("body 0")) {
+        throw new NoClassDefFoundError("com/example/Missing");
+      }
+      return new AiGeneration("reply to " + body, "gemini", "m", AiGeneration.PRIMARY, false, 10);
+    });
+
+    BulkDraftService service = new BulkDraftService(draftRepository, mock(DraftLogRepository.class),
+        gmailEmailRepository, userRepository, preferences, mock(GmailMessageBodyService.class), aiService,
+        new TransactionTemplate(mock(PlatformTransactionManager.class)), new ObjectMapper(), 2, 2, 500, 25, 120_000);
+
+    BulkGenerateDraftsRequest request = new BulkGenerateDraftsRequest();
+    request.setUserId(userId);
+    List<BulkDraftResultResponse> results = Collections.synchronizedList(new ArrayList<>());
+    BulkDraftSummaryResponse summary = service.generate(request, results::add);
+    service.shutdown();
+
+    assertThat(summary.getGenerated()).isEqualTo(1);
+    assertThat(summary.getFailed()).isEqualTo(1);
+    assertThat(results).filteredOn(r -> r.getError() != null)
+        .singleElement()
+        .satisfies(r -> assertThat(r.getError()).contains("com/example/Missing"));
+  }
+}
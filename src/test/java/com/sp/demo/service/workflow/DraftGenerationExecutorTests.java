@@ -0,0 +1,40 @@
+package com.sp.demo.service.workflow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class DraftGenerationExecutorTests {
+
+  @Test
+  void callerRunsAppliesToSubmitButDetachedTasksAreRejected() throws InterruptedException {
+    DraftGenerationExecutor executor = new DraftGenerationExecutor(1, 1, "caller-runs");
+    CountDownLatch release = new CountDownLatch(1);
+    try {
+      executor.submit(() -> await(release));
+      executor.submit(() -> await(release));
+
+      AtomicReference<Thread> ranOn = new AtomicReference<>();
+      executor.submit(() -> ranOn.set(Thread.currentThread()));
+      assertThat(ranOn.get()).isSameAs(Thread.currentThread());
+
+      assertThatThrownBy(() -> executor.submitDetached(() -> { }))
+          .isInstanceOf(DraftGenerationRejectedException.class);
+      assertThat(executor.stats().rejected()).isEqualTo(1);
+    } finally {
+      release.countDown();
+      executor.shutdown();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}